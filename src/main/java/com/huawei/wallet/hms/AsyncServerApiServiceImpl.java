@@ -0,0 +1,460 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import com.huawei.wallet.hms.ServerApiServiceImpl.WriteListener;
+import com.huawei.wallet.nsp.AdaptiveRateLimiter;
+import com.huawei.wallet.nsp.CircuitBreaker;
+import com.huawei.wallet.nsp.HttpTransport;
+import com.huawei.wallet.nsp.RetryPolicy;
+import com.huawei.wallet.nsp.TokenManager;
+import com.huawei.wallet.util.json.JsonCodecs;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPatch;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.UnknownHttpStatusCodeException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Implementation of invoking HMS wallet server APIs over a non-blocking HTTP client. A few I/O threads can keep
+ * thousands of requests in flight. Futures are completed on the I/O threads, so callers doing heavy work on a result
+ * should continue with the *Async methods of CompletableFuture. Requests go through the same retry policy, circuit
+ * breakers and rate limiters as ServerApiServiceImpl, drop a rejected access token the same way, and invalidate cached
+ * models and notify write listeners after writes.
+ *
+ * @since 2020-11-06
+ */
+public class AsyncServerApiServiceImpl implements AsyncServerApiService {
+    /**
+     * Parameter for appending tokens.
+     */
+    private static final String AUTHORIZATION_HEAD = "Bearer ";
+
+    private static final ContentType JSON_CONTENT_TYPE =
+        ContentType.APPLICATION_JSON.withCharset(StandardCharsets.UTF_8);
+
+    /**
+     * Delays requests waiting for a rate limit permit, and retries.
+     */
+    private static final ScheduledExecutorService DELAY_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+        runnable -> {
+            Thread thread = new Thread(runnable, "wallet-async-delay");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    private final WalletRegion region;
+
+    private final List<WriteListener> writeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructor. Requests are sent to the default region.
+     */
+    public AsyncServerApiServiceImpl() {
+        this(WalletRegions.getDefault());
+    }
+
+    /**
+     * Constructor. Requests are sent to the region of the developer account, e.g. "dre".
+     *
+     * @param region region name configured in release.config.properties.
+     */
+    public AsyncServerApiServiceImpl(String region) {
+        this(WalletRegions.get(region));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param region the region requests are sent to.
+     */
+    public AsyncServerApiServiceImpl(WalletRegion region) {
+        this.region = region;
+    }
+
+    @Override
+    public CompletableFuture<JSONObject> postToWalletServer(String urlSegment, String body) {
+        return written(urlSegment, execute(HttpMethod.POST, EndpointFamily.of(urlSegment), urlSegment, body));
+    }
+
+    @Override
+    public CompletableFuture<JSONObject> queryIssuerAndFlag(String urlSegment) {
+        return execute(HttpMethod.GET, EndpointFamily.of(urlSegment), urlSegment, null);
+    }
+
+    @Override
+    public CompletableFuture<JSONObject> getHwWalletObjectById(String urlSegment, String id) {
+        return execute(HttpMethod.GET, EndpointFamily.of(urlSegment), urlSegment + id, null);
+    }
+
+    @Override
+    public CompletableFuture<JSONArray> getModels(String urlSegment, Integer pageSize) {
+        EndpointFamily family = EndpointFamily.of(urlSegment);
+        if (pageSize == null) {
+            return getData(family, urlSegment, "Get models failed.");
+        }
+        CompletableFuture<JSONArray> future = new CompletableFuture<>();
+        getPages(family, urlSegment + "?pageSize=" + pageSize, "", new JSONArray(), future, "Get models failed.");
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<JSONArray> getInstances(String urlSegment, String modelId, Integer pageSize) {
+        EndpointFamily family = EndpointFamily.of(urlSegment);
+        String path = urlSegment + "?modelId=" + modelId;
+        if (pageSize == null) {
+            return getData(family, path, "Get instances failed.");
+        }
+        CompletableFuture<JSONArray> future = new CompletableFuture<>();
+        getPages(family, path + "&pageSize=" + pageSize, "", new JSONArray(), future, "Get instances failed.");
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<JSONObject> fullUpdateHwWalletObject(String urlSegment, String id, String body) {
+        return written(urlSegment, updateModel(urlSegment, id,
+            execute(HttpMethod.PUT, EndpointFamily.of(urlSegment), urlSegment + id, body)));
+    }
+
+    @Override
+    public CompletableFuture<JSONObject> partialUpdateHwWalletObject(String urlSegment, String id, String body) {
+        return written(urlSegment, updateModel(urlSegment, id,
+            execute(HttpMethod.PATCH, EndpointFamily.of(urlSegment), urlSegment + id, body)));
+    }
+
+    @Override
+    public CompletableFuture<JSONObject> addMessageToHwWalletObject(String urlSegment, String id, String body) {
+        return written(urlSegment, updateModel(urlSegment, id,
+            execute(HttpMethod.POST, EndpointFamily.ADD_MESSAGE, urlSegment + id + "/addMessage", body)));
+    }
+
+    @Override
+    public CompletableFuture<JSONObject> updateLinkedOffersToLoyaltyInstance(String urlSegment, String instanceId,
+        String body) {
+        return written(urlSegment,
+            execute(HttpMethod.PATCH, EndpointFamily.LINKED_OFFERS, urlSegment + instanceId + "/linkedoffers", body));
+    }
+
+    /**
+     * Register a listener of the models and instances returned by the writes of this service, e.g. an
+     * {@link InstanceMirror}. It's called on an I/O thread.
+     *
+     * @param listener the listener.
+     */
+    public void addWriteListener(WriteListener listener) {
+        writeListeners.add(listener);
+    }
+
+    /**
+     * Invalidate the cached model after a request that changes a model or instance, even if it failed, because the
+     * update may have taken effect.
+     *
+     * @param urlSegment model or instance URL segment.
+     * @param id model or instance ID.
+     * @param request the future of the request.
+     * @return the future of the request.
+     */
+    private CompletableFuture<JSONObject> updateModel(String urlSegment, String id,
+        CompletableFuture<JSONObject> request) {
+        ModelCache modelCache = ServerApiServiceImpl.getModelCache();
+        if (modelCache == null || EndpointFamily.of(urlSegment) != EndpointFamily.MODEL) {
+            return request;
+        }
+        return request.whenComplete(
+            (response, throwable) -> modelCache.invalidate(ServerApiServiceImpl.modelKey(region, urlSegment, id)));
+    }
+
+    /**
+     * Pass the response of a write to the write listeners.
+     *
+     * @param urlSegment model or instance URL segment.
+     * @param request the future of the write.
+     * @return the future of the write.
+     */
+    private CompletableFuture<JSONObject> written(String urlSegment, CompletableFuture<JSONObject> request) {
+        return request.thenApply(response -> {
+            if (response != null) {
+                for (WriteListener listener : writeListeners) {
+                    listener.onWrite(urlSegment, response);
+                }
+            }
+            return response;
+        });
+    }
+
+    private CompletableFuture<JSONArray> getData(EndpointFamily family, String path, String errorMessage) {
+        return execute(HttpMethod.GET, family, path, null).thenApply(batchQueryResult -> {
+            if (batchQueryResult == null) {
+                throw new IllegalStateException(errorMessage + " Get null response.");
+            }
+            return batchQueryResult.getJSONArray("data");
+        });
+    }
+
+    /**
+     * Fetch a page and request the next one when it arrives. Pages are requested from the completion callback instead
+     * of composing futures, so a long crawl does not build a deep chain of dependent futures.
+     *
+     * @param family endpoint family of the path.
+     * @param path path and query without session.
+     * @param session session of the page to fetch, empty for the first page.
+     * @param result the list collecting all pages.
+     * @param future the future to complete after the last page.
+     * @param errorMessage message prefix of exceptions.
+     */
+    private void getPages(EndpointFamily family, String path, String session, JSONArray result,
+        CompletableFuture<JSONArray> future, String errorMessage) {
+        String finalPath = session.isEmpty() ? path : path + "&session=" + session;
+        execute(HttpMethod.GET, family, finalPath, null).whenComplete((batchQueryResult, throwable) -> {
+            if (throwable != null) {
+                future.completeExceptionally(throwable);
+                return;
+            }
+            try {
+                if (batchQueryResult == null) {
+                    throw new IllegalStateException(errorMessage + " Get null response.");
+                }
+                JSONArray data = batchQueryResult.getJSONArray("data");
+                if (data == null) {
+                    throw new IllegalStateException(errorMessage + " Get null data.");
+                }
+                result.addAll(data);
+                JSONObject pageInfo = batchQueryResult.getJSONObject("pageInfo");
+                if (pageInfo == null) {
+                    throw new IllegalStateException(errorMessage + " Get null pageInfo.");
+                }
+                if (!pageInfo.containsKey("nextSession")) {
+                    future.complete(result);
+                    return;
+                }
+                getPages(family, path, pageInfo.getString("nextSession"), result, future, errorMessage);
+            } catch (RuntimeException e) {
+                // An exception thrown here would be lost and leave the future pending.
+                future.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * Send a request, retrying transient failures if the method is idempotent. The server of each attempt is selected
+     * when it's sent, so a retry can go to another server of the region.
+     *
+     * @param method the http method.
+     * @param family endpoint family of the path.
+     * @param path path and query of the request.
+     * @param body JSON body, or null if the request has no body.
+     * @return the future completed with the response body.
+     */
+    private CompletableFuture<JSONObject> execute(HttpMethod method, EndpointFamily family, String path,
+        String body) {
+        return RetryPolicy.getDefault().executeAsync(method,
+            () -> authorized(method, region.selectBaseUrl(family) + path, body), DELAY_SCHEDULER);
+    }
+
+    /**
+     * Send a request once with a valid access token. If wallet server rejects the token, e.g. because it was revoked
+     * before it expired, the token is dropped and the request is sent once more with a new one.
+     *
+     * @param method the http method.
+     * @param url the full request URL.
+     * @param body JSON body, or null if the request has no body.
+     * @return the future completed with the response body.
+     */
+    private CompletableFuture<JSONObject> authorized(HttpMethod method, String url, String body) {
+        TokenManager tokenManager = region.getTokenManager();
+        return tokenManager.getAccessTokenAsync().thenCompose(accessToken -> send(method, url, body, accessToken)
+            .handle((result, throwable) -> {
+                if (throwable == null) {
+                    return CompletableFuture.completedFuture(result);
+                }
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause() : throwable;
+                if (!(cause instanceof HttpClientErrorException)
+                    || ((HttpClientErrorException) cause).getStatusCode() != HttpStatus.UNAUTHORIZED) {
+                    CompletableFuture<JSONObject> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(cause);
+                    return failed;
+                }
+                tokenManager.invalidate(accessToken);
+                return tokenManager.getAccessTokenAsync().thenCompose(newToken -> send(method, url, body, newToken));
+            })
+            .thenCompose(Function.identity()));
+    }
+
+    /**
+     * Send a request once, when a rate limit permit is available, under the circuit breaker of its URL.
+     *
+     * @param method the http method.
+     * @param url the full request URL.
+     * @param body JSON body, or null if the request has no body.
+     * @param accessToken the access token.
+     * @return the future completed with the response body.
+     */
+    private CompletableFuture<JSONObject> send(HttpMethod method, String url, String body, String accessToken) {
+        HttpRequestBase request = createRequest(method, url);
+        AdaptiveRateLimiter rateLimiter = WalletRateLimiters.get(EndpointFamily.of(request.getURI().getPath()));
+        long waitNanos = rateLimiter.reserve();
+        CompletableFuture<Void> permit = new CompletableFuture<>();
+        if (waitNanos > 0) {
+            // Delay the request instead of blocking a thread while waiting for the permit.
+            DELAY_SCHEDULER.schedule(() -> permit.complete(null), waitNanos, TimeUnit.NANOSECONDS);
+        } else {
+            permit.complete(null);
+        }
+        return permit.thenCompose(ignored -> {
+            request.setHeader("Authorization", AUTHORIZATION_HEAD.concat(accessToken));
+            request.setHeader("Accept", "application/json;charset=utf-8");
+            if (body != null && request instanceof HttpEntityEnclosingRequestBase) {
+                ((HttpEntityEnclosingRequestBase) request).setEntity(new StringEntity(body, JSON_CONTENT_TYPE));
+            }
+            // Fail fast if the server or endpoint is degraded.
+            CircuitBreaker circuitBreaker = WalletCircuitBreakers.get(url);
+            circuitBreaker.acquirePermission();
+            CompletableFuture<JSONObject> future = new CompletableFuture<>();
+            long startNanos = System.nanoTime();
+            try {
+                HttpTransport.getAsyncHttpClient().execute(request, new FutureCallback<HttpResponse>() {
+                    @Override
+                    public void completed(HttpResponse response) {
+                        long durationNanos = System.nanoTime() - startNanos;
+                        int statusCode = response.getStatusLine().getStatusCode();
+                        if (statusCode >= 500) {
+                            region.recordFailure(url);
+                        } else {
+                            region.recordLatency(url, durationNanos);
+                        }
+                        if (WalletRateLimiters.isThrottled(statusCode)) {
+                            rateLimiter.onThrottle();
+                        } else if (statusCode < 300) {
+                            rateLimiter.onSuccess();
+                        }
+                        try {
+                            JSONObject result = readResponse(response);
+                            circuitBreaker.onSuccess(durationNanos);
+                            future.complete(result);
+                        } catch (RuntimeException e) {
+                            circuitBreaker.onError(e, durationNanos);
+                            future.completeExceptionally(e);
+                        }
+                    }
+
+                    @Override
+                    public void failed(Exception ex) {
+                        region.recordFailure(url);
+                        RuntimeException failure = ex instanceof RuntimeException ? (RuntimeException) ex
+                            : new ResourceAccessException("I/O error on " + method + " request for \"" + url
+                            + "\": " + ex.getMessage(), ex instanceof IOException ? (IOException) ex
+                            : new IOException(ex));
+                        circuitBreaker.onError(failure, System.nanoTime() - startNanos);
+                        future.completeExceptionally(failure);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        circuitBreaker.onError(new CancellationException(), System.nanoTime() - startNanos);
+                        future.cancel(false);
+                    }
+                });
+            } catch (RuntimeException e) {
+                // The request was not sent, e.g. because the client is shut down. Release the permit of the breaker.
+                circuitBreaker.onError(e, System.nanoTime() - startNanos);
+                future.completeExceptionally(e);
+            }
+            return future;
+        });
+    }
+
+    private static HttpRequestBase createRequest(HttpMethod method, String url) {
+        switch (method) {
+            case POST:
+                return new HttpPost(url);
+            case PUT:
+                return new HttpPut(url);
+            case PATCH:
+                return new HttpPatch(url);
+            default:
+                return new HttpGet(url);
+        }
+    }
+
+    /**
+     * Convert a response to its JSON body, or to the exception RestTemplate would throw for it.
+     *
+     * @param response the HTTP response.
+     * @return the JSON body, or null if the body is empty.
+     * @throws ResourceAccessException if reading the body fails.
+     */
+    private static JSONObject readResponse(HttpResponse response) {
+        byte[] body;
+        try {
+            body = response.getEntity() == null ? new byte[0] : EntityUtils.toByteArray(response.getEntity());
+        } catch (IOException e) {
+            throw new ResourceAccessException("I/O error reading response: " + e.getMessage(), e);
+        }
+        int statusCode = response.getStatusLine().getStatusCode();
+        if (statusCode >= 200 && statusCode < 300) {
+            return JsonCodecs.getDefault().parseObject(body);
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        for (Header header : response.getAllHeaders()) {
+            headers.add(header.getName(), header.getValue());
+        }
+        String statusText = response.getStatusLine().getReasonPhrase();
+        HttpStatus status = HttpStatus.resolve(statusCode);
+        if (status == null) {
+            throw new UnknownHttpStatusCodeException(statusCode, statusText, headers, body, StandardCharsets.UTF_8);
+        }
+        if (status.is4xxClientError()) {
+            throw HttpClientErrorException.create(status, statusText, headers, body, StandardCharsets.UTF_8);
+        }
+        if (status.is5xxServerError()) {
+            throw HttpServerErrorException.create(status, statusText, headers, body, StandardCharsets.UTF_8);
+        }
+        throw new UnknownHttpStatusCodeException(statusCode, statusText, headers, body, StandardCharsets.UTF_8);
+    }
+}
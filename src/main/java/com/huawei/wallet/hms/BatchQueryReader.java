@@ -0,0 +1,198 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import com.huawei.wallet.util.json.StreamingJsonCodec;
+
+import com.alibaba.fastjson.JSONObject;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a batch query result, {"data": [...], "pageInfo": {"nextSession": ...}}, incrementally from a response
+ * stream. Records of data are parsed one at a time when they are asked for, and other attributes are skipped, so
+ * only the record being returned is held on the heap, whatever the page size. pageInfo is picked out of the stream
+ * wherever it is, before or after data. Close the reader to release the response.
+ *
+ * @since 2020-12-09
+ */
+public class BatchQueryReader implements AutoCloseable {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final InputStream body;
+
+    /**
+     * Released by close: the HTTP response, or the body if the reader was given a stream.
+     */
+    private final Closeable response;
+
+    private final String errorMessage;
+
+    private JsonParser parser;
+
+    private boolean inData;
+
+    private boolean done;
+
+    private boolean pageInfoRead;
+
+    private JSONObject pageInfo;
+
+    private IOException closeFailure;
+
+    /**
+     * Constructor. Nothing is read until the first record is asked for.
+     *
+     * @param body the response body.
+     * @param errorMessage message prefix of exceptions, e.g. "Get instances failed.".
+     */
+    public BatchQueryReader(InputStream body, String errorMessage) {
+        this(body, body, errorMessage);
+    }
+
+    /**
+     * Constructor. Nothing is read until the first record is asked for. Closing the reader closes the response, which
+     * returns its connection to the pool.
+     *
+     * @param response the HTTP response.
+     * @param errorMessage message prefix of exceptions, e.g. "Get instances failed.".
+     * @throws IOException if the response body can't be opened.
+     */
+    public BatchQueryReader(ClientHttpResponse response, String errorMessage) throws IOException {
+        this(response.getBody(), response, errorMessage);
+    }
+
+    private BatchQueryReader(InputStream body, Closeable response, String errorMessage) {
+        this.body = body;
+        this.response = response;
+        this.errorMessage = errorMessage;
+    }
+
+    /**
+     * Read the next record of data.
+     *
+     * @return the record, or null after the last record, once the whole result has been read.
+     * @throws IllegalStateException if the response is empty, not a batch query result, or can't be read.
+     */
+    public JSONObject nextRecord() {
+        if (done) {
+            return null;
+        }
+        try {
+            if (parser == null) {
+                parser = JSON_FACTORY.createParser(body);
+                JsonToken first = parser.nextToken();
+                if (first == null) {
+                    throw new IllegalStateException(errorMessage + " Get null response.");
+                }
+                if (first != JsonToken.START_OBJECT) {
+                    throw new IllegalStateException(errorMessage + " Invalid response.");
+                }
+            }
+            while (true) {
+                if (inData) {
+                    JsonToken token = parser.nextToken();
+                    if (token == JsonToken.START_OBJECT) {
+                        return StreamingJsonCodec.readObject(parser);
+                    }
+                    if (token == JsonToken.END_ARRAY) {
+                        inData = false;
+                    } else if (token != JsonToken.VALUE_NULL) {
+                        throw new IllegalStateException(errorMessage + " Invalid record " + token + ".");
+                    }
+                    continue;
+                }
+                String name = parser.nextFieldName();
+                if (name == null) {
+                    done = true;
+                    return null;
+                }
+                JsonToken token = parser.nextToken();
+                if ("data".equals(name) && token == JsonToken.START_ARRAY) {
+                    inData = true;
+                } else if ("pageInfo".equals(name)) {
+                    pageInfoRead = true;
+                    pageInfo = token == JsonToken.START_OBJECT ? StreamingJsonCodec.readObject(parser) : null;
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(errorMessage + " Read response failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Return whether pageInfo has been read. It's known once all records have been read, or earlier if pageInfo comes
+     * before data in the response.
+     *
+     * @return true if pageInfo has been read.
+     */
+    public boolean isPageInfoRead() {
+        return pageInfoRead;
+    }
+
+    /**
+     * Return the session of the following page.
+     *
+     * @return pageInfo.nextSession, or null if this is the last page or pageInfo has not been read yet.
+     */
+    public String getNextSession() {
+        return pageInfo == null ? null : pageInfo.getString("nextSession");
+    }
+
+    /**
+     * Return the exception thrown while closing the response. close does not throw it, since every record wanted has
+     * been read by then, but the connection may not have been returned to the pool.
+     *
+     * @return the exception, or null if the reader is open or closed cleanly.
+     */
+    public IOException getCloseFailure() {
+        return closeFailure;
+    }
+
+    /**
+     * Stop reading and release the response. A failure is kept for {@link #getCloseFailure()}.
+     */
+    @Override
+    public void close() {
+        done = true;
+        if (parser != null) {
+            try {
+                parser.close();
+            } catch (IOException e) {
+                closeFailure = e;
+            }
+        }
+        try {
+            response.close();
+        } catch (IOException e) {
+            if (closeFailure == null) {
+                closeFailure = e;
+            } else {
+                closeFailure.addSuppressed(e);
+            }
+        }
+    }
+}
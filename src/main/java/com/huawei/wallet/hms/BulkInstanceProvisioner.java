@@ -0,0 +1,379 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import com.huawei.wallet.util.HwWalletObjectUtil;
+import com.huawei.wallet.util.json.JsonCodec;
+import com.huawei.wallet.util.json.JsonCodecs;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Creates instances in bulk from an NDJSON file, i.e. one JSON instance per line.
+ * <p>
+ * Records are validated and posted by a pool of workers. Each finished record appends a line to the result log:
+ * "lineNumber TAB serialNumber TAB SUCCESS|INVALID|FAILED TAB message". The checkpoint file holds the highest line
+ * number up to which every record has succeeded. A rerun with the same files skips the checkpointed lines and every
+ * line logged as SUCCESS, so only records that failed or never finished are posted again.
+ * <p>
+ * A failure that is not about a record, e.g. writing the result log, stops reading the input and is thrown by
+ * provision once the records being posted have finished. The checkpoint is written in any case.
+ *
+ * @since 2020-11-13
+ */
+public class BulkInstanceProvisioner {
+    private static final String SUCCESS = "SUCCESS";
+
+    private static final String INVALID = "INVALID";
+
+    private static final String FAILED = "FAILED";
+
+    /**
+     * The checkpoint file is rewritten after this many records finish.
+     */
+    private static final int CHECKPOINT_INTERVAL = 1000;
+
+    /**
+     * Reads and writes the JSON bodies, selected by json.codec in release.config.properties.
+     */
+    private static final JsonCodec JSON_CODEC = JsonCodecs.getDefault();
+
+    private final ServerApiService serverApiService;
+
+    private final String urlSegment;
+
+    private final int concurrency;
+
+    /**
+     * Constructor.
+     *
+     * @param serverApiService the service used to post instances.
+     * @param urlSegment instance URL segment, e.g. "/v1/loyalty/instance".
+     * @param concurrency number of records validated and posted at the same time.
+     */
+    public BulkInstanceProvisioner(ServerApiService serverApiService, String urlSegment, int concurrency) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency must be positive.");
+        }
+        this.serverApiService = serverApiService;
+        this.urlSegment = urlSegment;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Provision all records of an NDJSON file that have not succeeded in a previous run.
+     *
+     * @param ndjsonFile the input file.
+     * @param resultLog the per-record result log. It's appended to if it exists.
+     * @param checkpointFile the checkpoint file. It's created if it does not exist.
+     * @return counts of this run.
+     */
+    public Result provision(Path ndjsonFile, Path resultLog, Path checkpointFile) {
+        long checkpoint = readCheckpoint(checkpointFile);
+        BitSet succeeded = readSucceededLines(resultLog, checkpoint);
+        Progress progress = new Progress(checkpoint);
+        Result result = new Result();
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "wallet-bulk-provisioner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Bound the number of records read ahead of the workers, so the file is streamed.
+        Semaphore readAhead = new Semaphore(concurrency * 2);
+        AtomicReference<Throwable> workerFailure = new AtomicReference<>();
+        RuntimeException failure = null;
+        try (BufferedWriter logWriter = Files.newBufferedWriter(resultLog, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            try (BufferedReader reader = Files.newBufferedReader(ndjsonFile, StandardCharsets.UTF_8)) {
+                String line;
+                long lineNumber = 0;
+                while (workerFailure.get() == null && (line = reader.readLine()) != null) {
+                    lineNumber++;
+                    if (line.trim().isEmpty() || lineNumber <= checkpoint || succeeded.get(toIndex(lineNumber))) {
+                        progress.complete(lineNumber);
+                        result.skipped.incrementAndGet();
+                        continue;
+                    }
+                    readAhead.acquire();
+                    String record = line;
+                    long recordLineNumber = lineNumber;
+                    workers.execute(() -> {
+                        try {
+                            String status = provisionRecord(recordLineNumber, record, logWriter);
+                            if (SUCCESS.equals(status)) {
+                                progress.complete(recordLineNumber);
+                                result.succeeded.incrementAndGet();
+                            } else {
+                                result.failed.incrementAndGet();
+                            }
+                            if (progress.finished.incrementAndGet() % CHECKPOINT_INTERVAL == 0) {
+                                writeCheckpoint(checkpointFile, progress.getWatermark());
+                            }
+                        } catch (RuntimeException | Error e) {
+                            if (!workerFailure.compareAndSet(null, e)) {
+                                workerFailure.get().addSuppressed(e);
+                            }
+                        } finally {
+                            readAhead.release();
+                        }
+                    });
+                }
+            } finally {
+                // The workers write to the result log, so they must finish before it's closed.
+                awaitTermination(workers);
+            }
+            if (workerFailure.get() != null) {
+                failure = new IllegalStateException("Provision instances from " + ndjsonFile + " failed.",
+                    workerFailure.get());
+            }
+        } catch (IOException e) {
+            failure = new IllegalStateException("Provision instances from " + ndjsonFile + " failed.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = new IllegalStateException("Provisioning interrupted.", e);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        try {
+            writeCheckpoint(checkpointFile, progress.getWatermark());
+        } catch (RuntimeException e) {
+            if (failure == null) {
+                throw e;
+            }
+            // Keep the failure that stopped the run.
+            failure.addSuppressed(e);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return result;
+    }
+
+    /**
+     * Wait for the submitted records to finish. If the waiting thread is interrupted, records not started yet are
+     * dropped, but the running ones are still awaited.
+     */
+    private static void awaitTermination(ExecutorService workers) {
+        workers.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+                workers.shutdownNow();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Validate and post one record, then log its result.
+     *
+     * @return the logged status.
+     */
+    private String provisionRecord(long lineNumber, String record, BufferedWriter logWriter) {
+        String serialNumber = "";
+        String status;
+        String message = "";
+        try {
+            JSONObject instance = JSON_CODEC.parseObject(record);
+            serialNumber = instance.getString("serialNumber");
+            HwWalletObjectUtil.validateInstance(instance);
+        } catch (RuntimeException e) {
+            writeLog(logWriter, lineNumber, serialNumber, INVALID, e.getMessage());
+            return INVALID;
+        }
+        try {
+            // Post the line as it is, so the record is not parsed again.
+            serverApiService.postToWalletServer(urlSegment, record.getBytes(StandardCharsets.UTF_8));
+            status = SUCCESS;
+        } catch (RuntimeException e) {
+            status = FAILED;
+            message = e.getMessage();
+        }
+        writeLog(logWriter, lineNumber, serialNumber, status, message);
+        return status;
+    }
+
+    private static void writeLog(BufferedWriter logWriter, long lineNumber, String serialNumber, String status,
+        String message) {
+        String entry = lineNumber + "\t" + clean(serialNumber) + "\t" + status + "\t" + clean(message);
+        synchronized (logWriter) {
+            try {
+                logWriter.write(entry);
+                logWriter.newLine();
+                // Flush every entry, so the log is complete up to the last finished record after a crash.
+                logWriter.flush();
+            } catch (IOException e) {
+                throw new IllegalStateException("Write result log failed.", e);
+            }
+        }
+    }
+
+    private static String clean(String value) {
+        return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static long readCheckpoint(Path checkpointFile) {
+        if (!Files.exists(checkpointFile)) {
+            return 0L;
+        }
+        try {
+            String content = new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8).trim();
+            return content.isEmpty() ? 0L : Long.parseLong(content);
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalStateException("Read checkpoint " + checkpointFile + " failed.", e);
+        }
+    }
+
+    private static synchronized void writeCheckpoint(Path checkpointFile, long watermark) {
+        // Write a temporary file and move it, so a crash never leaves a truncated checkpoint.
+        Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try {
+            Files.write(temp, String.valueOf(watermark).getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Write checkpoint " + checkpointFile + " failed.", e);
+        }
+    }
+
+    /**
+     * Collect lines after the checkpoint that succeeded in previous runs.
+     */
+    private static BitSet readSucceededLines(Path resultLog, long checkpoint) {
+        BitSet succeeded = new BitSet();
+        if (!Files.exists(resultLog)) {
+            return succeeded;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(resultLog, StandardCharsets.UTF_8)) {
+            String entry;
+            while ((entry = reader.readLine()) != null) {
+                String[] columns = entry.split("\t", -1);
+                if (columns.length < 3 || !SUCCESS.equals(columns[2])) {
+                    continue;
+                }
+                long lineNumber = Long.parseLong(columns[0]);
+                if (lineNumber > checkpoint) {
+                    succeeded.set(toIndex(lineNumber));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalStateException("Read result log " + resultLog + " failed.", e);
+        }
+        return succeeded;
+    }
+
+    private static int toIndex(long lineNumber) {
+        if (lineNumber > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many lines in the input file.");
+        }
+        return (int) lineNumber;
+    }
+
+    /**
+     * Tracks the watermark: the highest line number up to which every line has succeeded or was skipped.
+     */
+    private static final class Progress {
+        /**
+         * Completed lines after the watermark.
+         */
+        private final BitSet completed = new BitSet();
+
+        private final AtomicLong finished = new AtomicLong();
+
+        private long watermark;
+
+        private Progress(long checkpoint) {
+            this.watermark = checkpoint;
+        }
+
+        private synchronized void complete(long lineNumber) {
+            if (lineNumber <= watermark) {
+                return;
+            }
+            completed.set(toIndex(lineNumber));
+            while (completed.get(toIndex(watermark + 1))) {
+                watermark++;
+                completed.clear(toIndex(watermark));
+            }
+        }
+
+        private synchronized long getWatermark() {
+            return watermark;
+        }
+    }
+
+    /**
+     * Counts of a provisioning run.
+     */
+    public static final class Result {
+        private final AtomicLong succeeded = new AtomicLong();
+
+        private final AtomicLong failed = new AtomicLong();
+
+        private final AtomicLong skipped = new AtomicLong();
+
+        public long getSucceeded() {
+            return succeeded.get();
+        }
+
+        /**
+         * Return the number of records that were invalid or could not be posted.
+         *
+         * @return the failed count.
+         */
+        public long getFailed() {
+            return failed.get();
+        }
+
+        /**
+         * Return the number of blank lines and records that had succeeded in a previous run.
+         *
+         * @return the skipped count.
+         */
+        public long getSkipped() {
+            return skipped.get();
+        }
+
+        @Override
+        public String toString() {
+            return "succeeded " + getSucceeded() + ", failed " + getFailed() + ", skipped " + getSkipped();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import java.util.Objects;
+
+/**
+ * A model whose instances are crawled, e.g. urlSegment "/v1/loyalty/instance" and modelId "LoyaltyTestModel".
+ *
+ * @since 2020-11-11
+ */
+public final class CrawlTarget {
+    private final String urlSegment;
+
+    private final String modelId;
+
+    /**
+     * Constructor.
+     *
+     * @param urlSegment instance URL segment of the pass type.
+     * @param modelId model ID.
+     */
+    public CrawlTarget(String urlSegment, String modelId) {
+        this.urlSegment = urlSegment;
+        this.modelId = modelId;
+    }
+
+    public String getUrlSegment() {
+        return urlSegment;
+    }
+
+    public String getModelId() {
+        return modelId;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CrawlTarget)) {
+            return false;
+        }
+        CrawlTarget other = (CrawlTarget) obj;
+        return urlSegment.equals(other.urlSegment) && modelId.equals(other.modelId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(urlSegment, modelId);
+    }
+
+    @Override
+    public String toString() {
+        return urlSegment + "?modelId=" + modelId;
+    }
+}
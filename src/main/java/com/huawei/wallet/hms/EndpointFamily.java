@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+/**
+ * Families of wallet server endpoints. The server throttles each family separately, so client-side limits are set
+ * per family too.
+ *
+ * @since 2020-11-16
+ */
+public enum EndpointFamily {
+    /**
+     * /v1/{type}/instance and /v1/{type}/instance/{id}.
+     */
+    INSTANCE("instance"),
+
+    /**
+     * /v1/{type}/model and /v1/{type}/model/{id}.
+     */
+    MODEL("model"),
+
+    /**
+     * /v1/{type}/{model|instance}/{id}/addMessage.
+     */
+    ADD_MESSAGE("addMessage"),
+
+    /**
+     * /v1/loyalty/instance/{id}/linkedoffers.
+     */
+    LINKED_OFFERS("linkedOffers"),
+
+    /**
+     * Any other endpoint, e.g. querying supported features.
+     */
+    OTHER("other");
+
+    private final String configName;
+
+    EndpointFamily(String configName) {
+        this.configName = configName;
+    }
+
+    /**
+     * Return the name used in configuration keys, e.g. "addMessage" in "rateLimit.addMessage.permitsPerSecond".
+     *
+     * @return the name.
+     */
+    public String getConfigName() {
+        return configName;
+    }
+
+    /**
+     * Find the family of a request URL.
+     *
+     * @param url the request URL or URL segment.
+     * @return the endpoint family.
+     */
+    public static EndpointFamily of(String url) {
+        int queryStart = url.indexOf('?');
+        String path = queryStart < 0 ? url : url.substring(0, queryStart);
+        if (path.endsWith("/addMessage")) {
+            return ADD_MESSAGE;
+        }
+        if (path.endsWith("/linkedoffers")) {
+            return LINKED_OFFERS;
+        }
+        if (path.contains("/instance")) {
+            return INSTANCE;
+        }
+        if (path.contains("/model")) {
+            return MODEL;
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import com.huawei.wallet.util.ConfigUtil;
+import com.huawei.wallet.util.TimingWheel;
+import com.huawei.wallet.util.json.JsonCodec;
+import com.huawei.wallet.util.json.JsonCodecs;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves instances to their next state when fields.status.effectTime or expireTime falls due.
+ * <p>
+ * An inactive instance becomes active at its effectTime, and any other instance that is not expired or completed
+ * yet becomes expired, or completed if registered so, at its expireTime. An instance activated by the scheduler then
+ * waits for its expireTime. Each instance has at most one pending transition in a {@link TimingWheel}, so
+ * registering it again replaces its transition. The transitions that fall due in the same tick are sent as one batch
+ * of partial updates by a pool of threads, and a failed transition is scheduled again after a retry delay. The
+ * scheduler can be registered as a write listener of {@link ServerApiServiceImpl}, so instances written by the client
+ * are registered automatically.
+ *
+ * @since 2020-12-03
+ */
+public class ExpiryScheduler implements ServerApiServiceImpl.WriteListener, AutoCloseable {
+    private static final String STATE_ACTIVE = "active";
+
+    private static final String STATE_INACTIVE = "inactive";
+
+    private static final String STATE_EXPIRED = "expired";
+
+    private static final String STATE_COMPLETED = "completed";
+
+    /**
+     * Reads and writes the JSON bodies, selected by json.codec in release.config.properties.
+     */
+    private static final JsonCodec JSON_CODEC = JsonCodecs.getDefault();
+
+    private final ServerApiService serverApiService;
+
+    private final TimingWheel<Transition> wheel;
+
+    private final ExecutorService sender;
+
+    private final ScheduledExecutorService ticker;
+
+    private final long retryDelayMillis;
+
+    /**
+     * Pending transition of each instance by serial number. Guarded by this.
+     */
+    private final Map<String, TimingWheel.Timeout<Transition>> timers = new HashMap<>();
+
+    /**
+     * Time of the last advance. Guarded by this.
+     */
+    private long advancedMillis;
+
+    /**
+     * Whether the scheduler is closed. Guarded by this.
+     */
+    private boolean closed;
+
+    private final AtomicLong batches = new AtomicLong();
+
+    private final AtomicLong transitions = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Constructor. Call {@link #start()} to advance the scheduler with the system clock.
+     *
+     * @param serverApiService the service sending the partial updates.
+     * @param tickMillis precision of the transition times.
+     * @param wheelSize number of buckets of each timing wheel level.
+     * @param threads number of threads sending the partial updates.
+     */
+    public ExpiryScheduler(ServerApiService serverApiService, long tickMillis, int wheelSize, int threads) {
+        this(serverApiService, tickMillis, wheelSize, threads, 60_000L);
+    }
+
+    /**
+     * Constructor. Call {@link #start()} to advance the scheduler with the system clock.
+     *
+     * @param serverApiService the service sending the partial updates.
+     * @param tickMillis precision of the transition times.
+     * @param wheelSize number of buckets of each timing wheel level.
+     * @param threads number of threads sending the partial updates.
+     * @param retryDelayMillis delay before a failed transition is sent again.
+     */
+    public ExpiryScheduler(ServerApiService serverApiService, long tickMillis, int wheelSize, int threads,
+        long retryDelayMillis) {
+        this.serverApiService = serverApiService;
+        this.retryDelayMillis = retryDelayMillis;
+        this.advancedMillis = System.currentTimeMillis();
+        this.wheel = new TimingWheel<>(tickMillis, wheelSize, advancedMillis);
+        this.sender = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "wallet-expiry-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wallet-expiry-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Create a scheduler from the "expiry.*" values in release.config.properties.
+     *
+     * @param serverApiService the service sending the partial updates.
+     * @return the scheduler, not started.
+     */
+    public static ExpiryScheduler fromConfig(ServerApiService serverApiService) {
+        ConfigUtil config = ConfigUtil.instants();
+        return new ExpiryScheduler(serverApiService, config.getIntValue("expiry.tickMillis", 1000),
+            config.getIntValue("expiry.wheelSize", 512), config.getIntValue("expiry.threads", 4),
+            config.getIntValue("expiry.retryDelayMillis", 60000));
+    }
+
+    /**
+     * Advance the scheduler every tick with the system clock.
+     *
+     * @param tickMillis interval between advances.
+     */
+    public void start(long tickMillis) {
+        ticker.scheduleAtFixedRate(() -> advanceTo(System.currentTimeMillis()), tickMillis, tickMillis,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Start with the expiry.tickMillis interval.
+     */
+    public void start() {
+        start(ConfigUtil.instants().getIntValue("expiry.tickMillis", 1000));
+    }
+
+    @Override
+    public void onWrite(String urlSegment, JSONObject object) {
+        if (EndpointFamily.of(urlSegment) == EndpointFamily.INSTANCE) {
+            register(urlSegment, object);
+        }
+    }
+
+    /**
+     * Register the next transition of an instance, replacing its pending one. An instance past its expireTime is
+     * expired at the next tick.
+     *
+     * @param urlSegment instance URL segment, e.g. "/v1/loyalty/instance/".
+     * @param instance the instance.
+     */
+    public void register(String urlSegment, JSONObject instance) {
+        register(urlSegment, instance, STATE_EXPIRED);
+    }
+
+    /**
+     * Register the next transition of an instance, replacing its pending one.
+     *
+     * @param urlSegment instance URL segment.
+     * @param instance the instance.
+     * @param expireState state of the instance after its expireTime, "expired" or "completed".
+     */
+    public void register(String urlSegment, JSONObject instance, String expireState) {
+        String serialNumber = instance.getString("serialNumber");
+        JSONObject fields = instance.getJSONObject("fields");
+        JSONObject status = fields == null ? null : fields.getJSONObject("status");
+        if (serialNumber == null || status == null) {
+            return;
+        }
+        String state = status.getString("state");
+        state = state == null ? STATE_ACTIVE : state.toLowerCase(Locale.ROOT);
+        long effectTime = parseTime(status.getString("effectTime"));
+        long expireTime = parseTime(status.getString("expireTime"));
+        Transition transition = null;
+        long deadline = 0;
+        if (STATE_INACTIVE.equals(state) && effectTime > System.currentTimeMillis()) {
+            transition = new Transition(urlSegment, serialNumber, STATE_ACTIVE, expireTime, expireState);
+            deadline = effectTime;
+        } else if (!STATE_EXPIRED.equals(state) && !STATE_COMPLETED.equals(state) && expireTime > 0) {
+            transition = new Transition(urlSegment, serialNumber, expireState, 0, null);
+            deadline = expireTime;
+        }
+        synchronized (this) {
+            TimingWheel.Timeout<Transition> previous = timers.remove(serialNumber);
+            if (previous != null) {
+                previous.cancel();
+            }
+            if (transition != null) {
+                timers.put(serialNumber, wheel.schedule(deadline, transition));
+            }
+        }
+    }
+
+    /**
+     * Cancel the pending transition of an instance.
+     *
+     * @param serialNumber the instance ID.
+     */
+    public synchronized void cancel(String serialNumber) {
+        TimingWheel.Timeout<Transition> timeout = timers.remove(serialNumber);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Send the transitions due at a time. {@link #start()} calls it every tick with the current time. It does nothing
+     * once the scheduler is closed.
+     *
+     * @param nowMillis the current time.
+     */
+    public synchronized void advanceTo(long nowMillis) {
+        if (closed) {
+            return;
+        }
+        advancedMillis = Math.max(advancedMillis, nowMillis);
+        wheel.advance(nowMillis, this::dispatch);
+    }
+
+    /**
+     * Return the number of pending transitions.
+     *
+     * @return the count.
+     */
+    public synchronized int getPending() {
+        return timers.size();
+    }
+
+    /**
+     * Return the number of batches of transitions that fell due.
+     *
+     * @return the count.
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * Return the number of transitions sent successfully.
+     *
+     * @return the count.
+     */
+    public long getTransitions() {
+        return transitions.get();
+    }
+
+    /**
+     * Return the number of failed attempts of transitions. A failed transition is scheduled again.
+     *
+     * @return the count.
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Stop advancing and wait for the transitions being sent.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        ticker.shutdown();
+        sender.shutdown();
+        try {
+            sender.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Called with the lock held, from the wheel.
+     */
+    private void dispatch(List<Transition> batch) {
+        batches.incrementAndGet();
+        for (Transition transition : batch) {
+            timers.remove(transition.serialNumber);
+            try {
+                sender.execute(() -> send(transition));
+            } catch (RejectedExecutionException e) {
+                // The sender was shut down. The transition fails, and the rest of the batch is still handled.
+                failed.incrementAndGet();
+            }
+        }
+    }
+
+    private void send(Transition transition) {
+        JSONObject status = new JSONObject();
+        status.put("state", transition.state);
+        JSONObject fields = new JSONObject();
+        fields.put("status", status);
+        JSONObject body = new JSONObject();
+        body.put("fields", fields);
+        try {
+            serverApiService.partialUpdateHwWalletObject(transition.urlSegment, transition.serialNumber,
+                JSON_CODEC.toJsonString(body));
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                schedule(advancedMillis + retryDelayMillis, transition);
+            }
+            failed.incrementAndGet();
+            return;
+        }
+        if (transition.expireTime > 0) {
+            schedule(transition.expireTime,
+                new Transition(transition.urlSegment, transition.serialNumber, transition.expireState, 0, null));
+        }
+        transitions.incrementAndGet();
+    }
+
+    /**
+     * Schedule the next transition of an instance, unless it was registered again since its last transition fell due.
+     */
+    private synchronized void schedule(long deadline, Transition transition) {
+        if (!closed && !timers.containsKey(transition.serialNumber)) {
+            timers.put(transition.serialNumber, wheel.schedule(deadline, transition));
+        }
+    }
+
+    private static long parseTime(String time) {
+        if (time == null || time.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Instant.parse(time).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * A state transition of an instance.
+     */
+    private static final class Transition {
+        private final String urlSegment;
+
+        private final String serialNumber;
+
+        private final String state;
+
+        /**
+         * Time of the transition following an activation, 0 if none.
+         */
+        private final long expireTime;
+
+        private final String expireState;
+
+        private Transition(String urlSegment, String serialNumber, String state, long expireTime,
+            String expireState) {
+            this.urlSegment = urlSegment;
+            this.serialNumber = serialNumber;
+            this.state = state;
+            this.expireTime = expireTime;
+            this.expireState = expireState;
+        }
+    }
+}
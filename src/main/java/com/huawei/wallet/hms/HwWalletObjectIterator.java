@@ -0,0 +1,400 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates over paged models/instances. A page is requested only when the previous one has been consumed, and each
+ * record is released as soon as it is returned, so at most one page is held on the heap. A caller can stop at any
+ * time without loading the remaining pages.
+ * <p>
+ * A streaming iterator, see {@link #streaming}, reads each page from its response stream with a
+ * {@link BatchQueryReader}, one record at a time, so only one record of a page is held on the heap.
+ * <p>
+ * In prefetch mode, a background task requests the next page as soon as the session of the current one is known,
+ * and keeps up to a given number of pages ready, so network latency overlaps with the caller's processing. The
+ * session of a streamed page is known once its pageInfo has been read, which may be only after its last record.
+ * Close the iterator if you stop before the last page, so the background task ends and open responses are released.
+ *
+ * @since 2020-11-09
+ */
+public class HwWalletObjectIterator implements Iterator<JSONObject>, AutoCloseable {
+    private final Function<String, Page> pageLoader;
+
+    private final String errorMessage;
+
+    private final Prefetcher prefetcher;
+
+    private Page page;
+
+    private JSONObject nextRecord;
+
+    /**
+     * Session of the next page. It's empty for the first page and null after the last page.
+     */
+    private String nextSession = "";
+
+    /**
+     * Constructor.
+     *
+     * @param pageFetcher returns the batch query result for a session. The first page has an empty session.
+     * @param errorMessage message prefix of exceptions, e.g. "Get instances failed.".
+     */
+    public HwWalletObjectIterator(Function<String, JSONObject> pageFetcher, String errorMessage) {
+        this(errorMessage, session -> ArrayPage.of(pageFetcher.apply(session), errorMessage), null, 0);
+    }
+
+    /**
+     * Constructor of an iterator that prefetches pages.
+     *
+     * @param pageFetcher returns the batch query result for a session. The first page has an empty session.
+     * @param errorMessage message prefix of exceptions, e.g. "Get instances failed.".
+     * @param executor runs the background task requesting pages.
+     * @param prefetchDepth maximum number of pages requested ahead of the one being consumed. No page is prefetched
+     *        if it's 0.
+     */
+    public HwWalletObjectIterator(Function<String, JSONObject> pageFetcher, String errorMessage,
+        ExecutorService executor, int prefetchDepth) {
+        this(errorMessage, session -> ArrayPage.of(pageFetcher.apply(session), errorMessage), executor, prefetchDepth);
+    }
+
+    private HwWalletObjectIterator(String errorMessage, Function<String, Page> pageLoader, ExecutorService executor,
+        int prefetchDepth) {
+        this.pageLoader = pageLoader;
+        this.errorMessage = errorMessage;
+        if (prefetchDepth > 0) {
+            this.prefetcher = new Prefetcher(prefetchDepth);
+            this.prefetcher.start(executor);
+        } else {
+            this.prefetcher = null;
+        }
+    }
+
+    /**
+     * Create an iterator that reads each page incrementally from its response stream.
+     *
+     * @param pageOpener opens the batch query response of a session. The first page has an empty session.
+     * @param errorMessage message prefix of exceptions, e.g. "Get instances failed.".
+     * @param executor runs the background task requesting pages.
+     * @param prefetchDepth maximum number of pages requested ahead of the one being consumed. No page is prefetched
+     *        if it's 0.
+     * @return the iterator.
+     */
+    public static HwWalletObjectIterator streaming(Function<String, BatchQueryReader> pageOpener, String errorMessage,
+        ExecutorService executor, int prefetchDepth) {
+        return new HwWalletObjectIterator(errorMessage,
+            session -> new StreamedPage(pageOpener.apply(session), errorMessage), executor, prefetchDepth);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (nextRecord == null && (page != null || nextSession != null)) {
+            if (page == null) {
+                page = prefetcher == null ? pageLoader.apply(nextSession) : prefetcher.take();
+                continue;
+            }
+            nextRecord = page.poll();
+            if (nextRecord == null) {
+                // The page is consumed, so the session of the following one is known.
+                nextSession = page.getNextSession();
+                page = null;
+            }
+        }
+        return nextRecord != null;
+    }
+
+    @Override
+    public JSONObject next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        JSONObject hwWalletObject = nextRecord;
+        nextRecord = null;
+        return hwWalletObject;
+    }
+
+    /**
+     * Return a sequential stream over the remaining models/instances. Closing the stream closes this iterator.
+     *
+     * @return the stream.
+     */
+    public Stream<JSONObject> stream() {
+        return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(this::close);
+    }
+
+    /**
+     * Stop iterating. Pages already requested are discarded, and hasNext() returns false from now on.
+     */
+    @Override
+    public void close() {
+        if (page != null) {
+            page.close();
+        }
+        page = null;
+        nextRecord = null;
+        nextSession = null;
+        if (prefetcher != null) {
+            prefetcher.cancel();
+        }
+    }
+
+    /**
+     * A page of records and the session of the following page.
+     */
+    private abstract static class Page {
+        /**
+         * Return the next record, or null once the page is consumed.
+         */
+        abstract JSONObject poll();
+
+        /**
+         * Return the session of the following page once the page is consumed. Null after the last page.
+         */
+        abstract String getNextSession();
+
+        /**
+         * Wait until the session of the following page is known. Called by the prefetcher while the consumer reads
+         * the page.
+         */
+        abstract String awaitNextSession() throws InterruptedException;
+
+        void close() {
+        }
+    }
+
+    /**
+     * A page parsed as a whole.
+     */
+    private static final class ArrayPage extends Page {
+        private final JSONArray data;
+
+        private final String nextSession;
+
+        private int index;
+
+        private ArrayPage(JSONArray data, String nextSession) {
+            this.data = data;
+            this.nextSession = nextSession;
+        }
+
+        private static ArrayPage of(JSONObject batchQueryResult, String errorMessage) {
+            if (batchQueryResult == null) {
+                throw new IllegalStateException(errorMessage + " Get null response.");
+            }
+            JSONArray data = batchQueryResult.getJSONArray("data");
+            if (!batchQueryResult.containsKey("pageInfo")) {
+                throw new IllegalStateException(errorMessage + " Get null pageInfo.");
+            }
+            JSONObject pageInfo = batchQueryResult.getJSONObject("pageInfo");
+            String followingSession = pageInfo.containsKey("nextSession") ? pageInfo.getString("nextSession") : null;
+            return new ArrayPage(data == null ? new JSONArray() : data, followingSession);
+        }
+
+        @Override
+        JSONObject poll() {
+            while (index < data.size()) {
+                JSONObject hwWalletObject = data.getJSONObject(index);
+                // Release the record, so consumed records of a large page can be collected.
+                data.set(index++, null);
+                if (hwWalletObject != null) {
+                    return hwWalletObject;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        String getNextSession() {
+            return nextSession;
+        }
+
+        @Override
+        String awaitNextSession() {
+            return nextSession;
+        }
+    }
+
+    /**
+     * A page read one record at a time from its response stream.
+     */
+    private static final class StreamedPage extends Page {
+        private final BatchQueryReader reader;
+
+        private final String errorMessage;
+
+        /**
+         * Completed with the session of the following page as soon as pageInfo has been read.
+         */
+        private final CompletableFuture<String> followingSession = new CompletableFuture<>();
+
+        private StreamedPage(BatchQueryReader reader, String errorMessage) {
+            this.reader = reader;
+            this.errorMessage = errorMessage;
+        }
+
+        @Override
+        JSONObject poll() {
+            try {
+                JSONObject hwWalletObject = reader.nextRecord();
+                if (reader.isPageInfoRead()) {
+                    followingSession.complete(reader.getNextSession());
+                }
+                if (hwWalletObject == null) {
+                    if (!reader.isPageInfoRead()) {
+                        throw new IllegalStateException(errorMessage + " Get null pageInfo.");
+                    }
+                    reader.close();
+                }
+                return hwWalletObject;
+            } catch (RuntimeException e) {
+                followingSession.completeExceptionally(e);
+                reader.close();
+                throw e;
+            }
+        }
+
+        @Override
+        String getNextSession() {
+            return reader.getNextSession();
+        }
+
+        @Override
+        String awaitNextSession() throws InterruptedException {
+            try {
+                return followingSession.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(errorMessage + " Read page failed.", e.getCause());
+            }
+        }
+
+        @Override
+        void close() {
+            followingSession.cancel(false);
+            reader.close();
+        }
+    }
+
+    /**
+     * Background task requesting pages one after another into a bounded queue. It blocks while the queue is full.
+     */
+    private final class Prefetcher implements Runnable {
+        /**
+         * Holds a Page, or the RuntimeException that stopped prefetching.
+         */
+        private final BlockingQueue<Object> queue;
+
+        private volatile boolean cancelled;
+
+        private Future<?> task;
+
+        private Prefetcher(int prefetchDepth) {
+            this.queue = new ArrayBlockingQueue<>(prefetchDepth);
+        }
+
+        private void start(ExecutorService executor) {
+            task = executor.submit(this);
+        }
+
+        @Override
+        public void run() {
+            String session = "";
+            Object item = null;
+            try {
+                while (!cancelled) {
+                    try {
+                        item = pageLoader.apply(session);
+                    } catch (RuntimeException e) {
+                        // Hand the failure to the consumer, which throws it when it reaches this page.
+                        item = e;
+                    }
+                    queue.put(item);
+                    Object queued = item;
+                    item = null;
+                    if (cancelled) {
+                        discardQueued();
+                        return;
+                    }
+                    if (!(queued instanceof Page)) {
+                        return;
+                    }
+                    session = ((Page) queued).awaitNextSession();
+                    if (session == null) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IllegalStateException e) {
+                // The consumer gets the failure of the page, or has closed it.
+                return;
+            } finally {
+                if (item instanceof Page) {
+                    ((Page) item).close();
+                }
+            }
+        }
+
+        private Page take() {
+            Object item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(errorMessage + " Interrupted while waiting for a page.", e);
+            }
+            if (item instanceof RuntimeException) {
+                throw (RuntimeException) item;
+            }
+            return (Page) item;
+        }
+
+        private void cancel() {
+            cancelled = true;
+            if (task != null) {
+                task.cancel(true);
+            }
+            discardQueued();
+        }
+
+        private void discardQueued() {
+            Object item;
+            while ((item = queue.poll()) != null) {
+                if (item instanceof Page) {
+                    ((Page) item).close();
+                }
+            }
+        }
+    }
+}
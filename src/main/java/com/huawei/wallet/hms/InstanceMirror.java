@@ -0,0 +1,324 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import com.huawei.wallet.util.HwWalletObjectUtil;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Local copy of models and instances with secondary indexes on instances.
+ * <p>
+ * Instances are indexed by passStyleIdentifier, organizationPassId, fields.status.state and fields.status.expireTime,
+ * so these lookups don't need a crawl of wallet server. The mirror is kept up to date from the client's own writes,
+ * by registering it as a write listener of {@link ServerApiServiceImpl}, and from periodic crawls, by using it as the
+ * sink of a {@link MultiModelCrawler}. Models are keyed by passStyleIdentifier and instances by serialNumber. The
+ * mirror stores copies and returns copies, so callers modifying their objects can't desynchronize the indexes.
+ *
+ * @since 2020-12-02
+ */
+public class InstanceMirror implements ServerApiServiceImpl.WriteListener, MultiModelCrawler.Sink {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Guarded by lock, like all maps below.
+     */
+    private final Map<String, JSONObject> models = new HashMap<>();
+
+    private final Map<String, JSONObject> instances = new HashMap<>();
+
+    private final Map<String, Set<String>> byPassStyleIdentifier = new HashMap<>();
+
+    private final Map<String, Set<String>> byOrganizationPassId = new HashMap<>();
+
+    private final Map<String, Set<String>> byState = new HashMap<>();
+
+    /**
+     * Serial numbers by expireTime in epoch milliseconds, sorted for range queries.
+     */
+    private final TreeMap<Long, Set<String>> byExpireTime = new TreeMap<>();
+
+    @Override
+    public void onWrite(String urlSegment, JSONObject object) {
+        EndpointFamily family = EndpointFamily.of(urlSegment);
+        if (family == EndpointFamily.MODEL) {
+            putModel(object);
+        } else if (family == EndpointFamily.INSTANCE) {
+            putInstance(object);
+        }
+    }
+
+    @Override
+    public void accept(CrawlTarget target, JSONObject instance) {
+        putInstance(instance);
+    }
+
+    /**
+     * Add or replace a model.
+     *
+     * @param model the model. It's ignored if it has no passStyleIdentifier.
+     */
+    public void putModel(JSONObject model) {
+        String id = model == null ? null : model.getString("passStyleIdentifier");
+        if (id == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            models.put(id, HwWalletObjectUtil.deepCopy(model));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add or replace an instance and update the indexes.
+     *
+     * @param instance the instance. It's ignored if it has no serialNumber.
+     */
+    public void putInstance(JSONObject instance) {
+        String serialNumber = instance == null ? null : instance.getString("serialNumber");
+        if (serialNumber == null) {
+            return;
+        }
+        JSONObject copy = HwWalletObjectUtil.deepCopy(instance);
+        lock.writeLock().lock();
+        try {
+            JSONObject previous = instances.put(serialNumber, copy);
+            if (previous != null) {
+                unindex(serialNumber, previous);
+            }
+            index(serialNumber, copy);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove an instance.
+     *
+     * @param serialNumber the instance ID.
+     */
+    public void removeInstance(String serialNumber) {
+        lock.writeLock().lock();
+        try {
+            JSONObject previous = instances.remove(serialNumber);
+            if (previous != null) {
+                unindex(serialNumber, previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Return a model.
+     *
+     * @param passStyleIdentifier the model ID.
+     * @return the model, or null if it's not mirrored.
+     */
+    public JSONObject getModel(String passStyleIdentifier) {
+        lock.readLock().lock();
+        try {
+            return HwWalletObjectUtil.deepCopy(models.get(passStyleIdentifier));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return an instance.
+     *
+     * @param serialNumber the instance ID.
+     * @return the instance, or null if it's not mirrored.
+     */
+    public JSONObject getInstance(String serialNumber) {
+        lock.readLock().lock();
+        try {
+            return HwWalletObjectUtil.deepCopy(instances.get(serialNumber));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the instances of a model.
+     *
+     * @param passStyleIdentifier the model ID.
+     * @return the instances.
+     */
+    public List<JSONObject> findByPassStyleIdentifier(String passStyleIdentifier) {
+        return find(byPassStyleIdentifier, passStyleIdentifier);
+    }
+
+    /**
+     * Return the instances with an organizationPassId, e.g. a membership number.
+     *
+     * @param organizationPassId the organizationPassId.
+     * @return the instances.
+     */
+    public List<JSONObject> findByOrganizationPassId(String organizationPassId) {
+        return find(byOrganizationPassId, organizationPassId);
+    }
+
+    /**
+     * Return the instances in a state, e.g. "active".
+     *
+     * @param state the fields.status.state value, in any case.
+     * @return the instances.
+     */
+    public List<JSONObject> findByState(String state) {
+        return find(byState, normalizeState(state));
+    }
+
+    /**
+     * Return the instances expiring in a time range, earliest first.
+     *
+     * @param from start of the range, inclusive.
+     * @param to end of the range, exclusive.
+     * @return the instances.
+     */
+    public List<JSONObject> findExpiringBetween(Instant from, Instant to) {
+        lock.readLock().lock();
+        try {
+            List<JSONObject> result = new ArrayList<>();
+            for (Set<String> serialNumbers : byExpireTime.subMap(from.toEpochMilli(), true, to.toEpochMilli(), false)
+                .values()) {
+                collect(serialNumbers, result);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the number of mirrored instances.
+     *
+     * @return the count.
+     */
+    public int getInstanceCount() {
+        lock.readLock().lock();
+        try {
+            return instances.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the number of mirrored models.
+     *
+     * @return the count.
+     */
+    public int getModelCount() {
+        lock.readLock().lock();
+        try {
+            return models.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<JSONObject> find(Map<String, Set<String>> index, String value) {
+        lock.readLock().lock();
+        try {
+            List<JSONObject> result = new ArrayList<>();
+            collect(index.getOrDefault(value, Collections.<String>emptySet()), result);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void collect(Collection<String> serialNumbers, List<JSONObject> result) {
+        for (String serialNumber : serialNumbers) {
+            result.add(HwWalletObjectUtil.deepCopy(instances.get(serialNumber)));
+        }
+    }
+
+    private void index(String serialNumber, JSONObject instance) {
+        add(byPassStyleIdentifier, instance.getString("passStyleIdentifier"), serialNumber);
+        add(byOrganizationPassId, instance.getString("organizationPassId"), serialNumber);
+        JSONObject status = getStatus(instance);
+        if (status != null) {
+            add(byState, normalizeState(status.getString("state")), serialNumber);
+            add(byExpireTime, parseTime(status.getString("expireTime")), serialNumber);
+        }
+    }
+
+    private void unindex(String serialNumber, JSONObject instance) {
+        remove(byPassStyleIdentifier, instance.getString("passStyleIdentifier"), serialNumber);
+        remove(byOrganizationPassId, instance.getString("organizationPassId"), serialNumber);
+        JSONObject status = getStatus(instance);
+        if (status != null) {
+            remove(byState, normalizeState(status.getString("state")), serialNumber);
+            remove(byExpireTime, parseTime(status.getString("expireTime")), serialNumber);
+        }
+    }
+
+    private static JSONObject getStatus(JSONObject instance) {
+        JSONObject fields = instance.getJSONObject("fields");
+        return fields == null ? null : fields.getJSONObject("status");
+    }
+
+    private static String normalizeState(String state) {
+        return state == null ? null : state.toLowerCase(Locale.ROOT);
+    }
+
+    private static Long parseTime(String time) {
+        if (time == null) {
+            return null;
+        }
+        try {
+            return Instant.parse(time).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static <K> void add(Map<K, Set<String>> index, K value, String serialNumber) {
+        if (value != null) {
+            index.computeIfAbsent(value, key -> new LinkedHashSet<>()).add(serialNumber);
+        }
+    }
+
+    private static <K> void remove(Map<K, Set<String>> index, K value, String serialNumber) {
+        if (value == null) {
+            return;
+        }
+        Set<String> serialNumbers = index.get(value);
+        if (serialNumbers != null && serialNumbers.remove(serialNumber) && serialNumbers.isEmpty()) {
+            index.remove(value);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import com.huawei.wallet.util.json.LazyJsonObject;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Iterates over lazy views of paged models/instances. A page is requested only when the previous one has been
+ * consumed, and the iterator drops each page once its last view is returned, so the raw bytes of a page stay on the
+ * heap only while the caller keeps views of it.
+ *
+ * @since 2020-12-11
+ */
+class LazyPageIterator implements Iterator<LazyJsonObject> {
+    private final Function<String, byte[]> pageFetcher;
+
+    private final String errorMessage;
+
+    private Iterator<LazyJsonObject> page;
+
+    /**
+     * Session of the next page. It's empty for the first page and null after the last page.
+     */
+    private String nextSession = "";
+
+    /**
+     * Constructor.
+     *
+     * @param pageFetcher returns the raw batch query result for a session. The first page has an empty session.
+     * @param errorMessage message prefix of exceptions, e.g. "Get instances failed.".
+     */
+    LazyPageIterator(Function<String, byte[]> pageFetcher, String errorMessage) {
+        this.pageFetcher = pageFetcher;
+        this.errorMessage = errorMessage;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while ((page == null || !page.hasNext()) && nextSession != null) {
+            byte[] response = pageFetcher.apply(nextSession);
+            if (response == null) {
+                throw new IllegalStateException(errorMessage + " Get null response.");
+            }
+            LazyJsonObject batchQueryResult = LazyJsonObject.of(response);
+            if (!batchQueryResult.containsKey("pageInfo")) {
+                throw new IllegalStateException(errorMessage + " Get null pageInfo.");
+            }
+            LazyJsonObject pageInfo = batchQueryResult.getObject("pageInfo");
+            nextSession = pageInfo == null ? null : pageInfo.getString("nextSession");
+            page = batchQueryResult.getObjectList("data").iterator();
+        }
+        return page != null && page.hasNext();
+    }
+
+    @Override
+    public LazyJsonObject next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        LazyJsonObject view = page.next();
+        if (!page.hasNext()) {
+            page = null;
+        }
+        return view;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import com.huawei.wallet.util.json.JsonCodec;
+import com.huawei.wallet.util.json.JsonCodecs;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Batches messages added to models or instances one at a time.
+ * <p>
+ * Messages are queued per object and deduplicated by their key, a later message replacing a queued one with the same
+ * key. A queue is sent with one addMessage request when it holds 10 messages, the maximum wallet server accepts, or
+ * when the window after its first message ends. Requests of one object are sent in order, and at most a fixed number
+ * of requests are in flight across objects.
+ *
+ * @since 2020-11-27
+ */
+public class MessageAggregator extends ObjectBatcher<MessageAggregator.Batch> {
+    /**
+     * Maximum number of messages of an addMessage request.
+     */
+    public static final int MAX_MESSAGES_PER_REQUEST = 10;
+
+    /**
+     * Reads and writes the JSON bodies, selected by json.codec in release.config.properties.
+     */
+    private static final JsonCodec JSON_CODEC = JsonCodecs.getDefault();
+
+    private final ServerApiService serverApiService;
+
+    private final long windowMillis;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ExecutorService sender;
+
+    /**
+     * Number of queued messages. Guarded by this.
+     */
+    private int queueDepth;
+
+    private final AtomicLong added = new AtomicLong();
+
+    private final AtomicLong deduplicated = new AtomicLong();
+
+    private final AtomicLong fullFlushes = new AtomicLong();
+
+    private final AtomicLong windowFlushes = new AtomicLong();
+
+    private final AtomicLong sentMessages = new AtomicLong();
+
+    private final long createdAtNanos = System.nanoTime();
+
+    /**
+     * Constructor.
+     *
+     * @param serverApiService the service sending the addMessage requests.
+     * @param windowMillis maximum time a message waits for other messages of the same object.
+     * @param maxConcurrentRequests maximum number of addMessage requests in flight.
+     */
+    public MessageAggregator(ServerApiService serverApiService, long windowMillis, int maxConcurrentRequests) {
+        this(serverApiService, windowMillis, Executors.newFixedThreadPool(maxConcurrentRequests, runnable -> {
+            Thread thread = new Thread(runnable, "wallet-message-sender");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    private MessageAggregator(ServerApiService serverApiService, long windowMillis, ExecutorService sender) {
+        super(sender, "Flush messages failed.");
+        this.serverApiService = serverApiService;
+        this.windowMillis = windowMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wallet-message-window");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sender = sender;
+    }
+
+    /**
+     * Queue a message.
+     *
+     * @param urlSegment model or instance URL segment, e.g. "/v1/loyalty/instance/".
+     * @param id model or instance ID.
+     * @param message a messageList entry with key, value and label.
+     * @return the future completed with the response to the addMessage request that includes the message.
+     * @throws IllegalStateException if the aggregator is closed.
+     */
+    public CompletableFuture<JSONObject> add(String urlSegment, String id, JSONObject message) {
+        String messageKey = message.getString("key");
+        if (messageKey == null) {
+            throw new IllegalArgumentException("The message key is missing.");
+        }
+        String key = urlSegment + id;
+        added.incrementAndGet();
+        synchronized (this) {
+            checkOpen();
+            Batch batch = pending.get(key);
+            if (batch == null) {
+                batch = new Batch(urlSegment, id);
+                if (!start(batch, scheduler, () -> flushWindow(urlSegment, id), windowMillis)) {
+                    return batch.future;
+                }
+            }
+            if (batch.messages.put(messageKey, message) == null) {
+                queueDepth++;
+            } else {
+                deduplicated.incrementAndGet();
+            }
+            CompletableFuture<JSONObject> future = batch.future;
+            if (batch.messages.size() >= MAX_MESSAGES_PER_REQUEST) {
+                fullFlushes.incrementAndGet();
+                flush(urlSegment, id);
+            }
+            return future;
+        }
+    }
+
+    /**
+     * Return the number of queued messages not sent yet.
+     *
+     * @return the count.
+     */
+    public synchronized int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Return the number of messages added, including duplicates.
+     *
+     * @return the count.
+     */
+    public long getAdded() {
+        return added.get();
+    }
+
+    /**
+     * Return the number of messages that replaced a queued message with the same key.
+     *
+     * @return the count.
+     */
+    public long getDeduplicated() {
+        return deduplicated.get();
+    }
+
+    /**
+     * Return the number of requests sent because their queue was full.
+     *
+     * @return the count.
+     */
+    public long getFullFlushes() {
+        return fullFlushes.get();
+    }
+
+    /**
+     * Return the number of requests sent because their window ended.
+     *
+     * @return the count.
+     */
+    public long getWindowFlushes() {
+        return windowFlushes.get();
+    }
+
+    /**
+     * Return the number of messages sent.
+     *
+     * @return the count.
+     */
+    public long getSentMessages() {
+        return sentMessages.get();
+    }
+
+    /**
+     * Return the average number of addMessage requests per second since the aggregator was created.
+     *
+     * @return requests per second.
+     */
+    public double getFlushesPerSecond() {
+        double seconds = (System.nanoTime() - createdAtNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        return seconds <= 0 ? 0 : (fullFlushes.get() + windowFlushes.get()) / seconds;
+    }
+
+    @Override
+    void onFlush(Batch batch) {
+        queueDepth -= batch.messages.size();
+    }
+
+    @Override
+    void shutdown() {
+        scheduler.shutdown();
+        sender.shutdown();
+    }
+
+    private synchronized void flushWindow(String urlSegment, String id) {
+        if (pending.containsKey(urlSegment + id)) {
+            windowFlushes.incrementAndGet();
+            flush(urlSegment, id);
+        }
+    }
+
+    @Override
+    JSONObject send(Batch batch) {
+        JSONObject body = new JSONObject();
+        body.put("messageList", new JSONArray(new ArrayList<>(batch.messages.values())));
+        JSONObject response =
+            serverApiService.addMessageToHwWalletObject(batch.urlSegment, batch.id, JSON_CODEC.toJsonString(body));
+        sentMessages.addAndGet(batch.messages.size());
+        return response;
+    }
+
+    /**
+     * Queued messages of an object, by message key.
+     */
+    static final class Batch extends ObjectBatcher.Batch {
+        private final Map<String, Object> messages = new LinkedHashMap<>();
+
+        private Batch(String urlSegment, String id) {
+            super(urlSegment, id);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import com.huawei.wallet.util.HwWalletObjectUtil;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded read-through cache of models. Entries expire after a fixed time, and the least recently used entry is
+ * evicted when the cache is full.
+ * <p>
+ * A model loaded while the cache is being invalidated is returned but not stored, so a read that overlaps an update
+ * never caches the model as it was before the update. The cache keeps its own copy of each model and returns a
+ * copy on every hit, so readers may modify the models they get.
+ *
+ * @since 2020-11-25
+ */
+public class ModelCache {
+    private final int maxSize;
+
+    private final long ttlMillis;
+
+    private final Map<String, Entry> entries;
+
+    /**
+     * Number of invalidations so far. A load only stores its result if no invalidation happened during it.
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize maximum number of cached models.
+     * @param ttlSeconds seconds after which a cached model expires.
+     */
+    public ModelCache(int maxSize, long ttlSeconds) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Invalid model cache size.");
+        }
+        this.maxSize = maxSize;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > ModelCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get a cached model, or load and cache it.
+     *
+     * @param key the model key, e.g. its URL path.
+     * @param loader loads the model from wallet server.
+     * @return the model, owned by the caller.
+     */
+    public JSONObject get(String key, Supplier<JSONObject> loader) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAtMillis > now) {
+                hits.incrementAndGet();
+                return HwWalletObjectUtil.deepCopy(entry.model);
+            }
+        }
+        misses.incrementAndGet();
+        long invalidationsBeforeLoad = invalidations.get();
+        JSONObject model = loader.get();
+        if (model != null) {
+            JSONObject copy = HwWalletObjectUtil.deepCopy(model);
+            synchronized (entries) {
+                if (invalidations.get() == invalidationsBeforeLoad) {
+                    entries.put(key, new Entry(copy, System.currentTimeMillis() + ttlMillis));
+                }
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Cache a copy of a model, e.g. while preloading.
+     *
+     * @param key the model key.
+     * @param model the model.
+     */
+    public void put(String key, JSONObject model) {
+        JSONObject copy = HwWalletObjectUtil.deepCopy(model);
+        synchronized (entries) {
+            entries.put(key, new Entry(copy, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    /**
+     * Remove a model, e.g. after it's updated.
+     *
+     * @param key the model key.
+     */
+    public void invalidate(String key) {
+        synchronized (entries) {
+            invalidations.incrementAndGet();
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Remove all models.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            invalidations.incrementAndGet();
+            entries.clear();
+        }
+    }
+
+    /**
+     * Return the number of cached models, including expired ones not removed yet.
+     *
+     * @return the count.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Return the share of reads served from the cache.
+     *
+     * @return the hit rate between 0 and 1, 0 if there was no read.
+     */
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    @Override
+    public String toString() {
+        return "ModelCache{size=" + size() + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+            + "}";
+    }
+
+    /**
+     * A cached model.
+     */
+    private static final class Entry {
+        private final JSONObject model;
+
+        private final long expiresAtMillis;
+
+        private Entry(JSONObject model, long expiresAtMillis) {
+            this.model = model;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+}
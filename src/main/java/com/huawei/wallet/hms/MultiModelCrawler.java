@@ -0,0 +1,248 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Crawls instances of many models concurrently and delivers them to a sink as they arrive.
+ * <p>
+ * Pages of one model are chained by session, so a model is always crawled by one worker. The global cap is the number
+ * of models crawled at the same time, which is also the maximum number of concurrent page requests. The per-model cap
+ * is the number of pages requested ahead of the one being delivered for each model.
+ *
+ * @since 2020-11-11
+ */
+public class MultiModelCrawler {
+    private final ServerApiService serverApiService;
+
+    private final int maxConcurrentModels;
+
+    private final int perModelPrefetchDepth;
+
+    private final int pageSize;
+
+    /**
+     * Constructor.
+     *
+     * @param serverApiService the service used to request pages.
+     * @param maxConcurrentModels maximum number of models crawled at the same time.
+     * @param perModelPrefetchDepth maximum number of pages requested ahead for each model.
+     * @param pageSize number of instances in each page.
+     */
+    public MultiModelCrawler(ServerApiService serverApiService, int maxConcurrentModels, int perModelPrefetchDepth,
+        int pageSize) {
+        if (maxConcurrentModels <= 0 || perModelPrefetchDepth < 0 || pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid crawler limits.");
+        }
+        this.serverApiService = serverApiService;
+        this.maxConcurrentModels = maxConcurrentModels;
+        this.perModelPrefetchDepth = perModelPrefetchDepth;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Crawl all instances of the given models. Blocks until every model has been crawled or has failed. A failed
+     * model does not stop the others.
+     *
+     * @param targets models to crawl.
+     * @param sink receives instances. It's called from several threads at the same time.
+     * @param listener receives progress periodically and once at the end. It may be null.
+     * @param reportIntervalMillis interval between progress reports.
+     * @return the final progress, including failed models.
+     */
+    public Progress crawl(Collection<CrawlTarget> targets, Sink sink, ProgressListener listener,
+        long reportIntervalMillis) {
+        Counters counters = new Counters(targets.size());
+        ExecutorService workers = Executors.newFixedThreadPool(maxConcurrentModels, runnable -> {
+            Thread thread = new Thread(runnable, "wallet-crawler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wallet-crawler-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (listener != null) {
+            reporter.scheduleAtFixedRate(() -> listener.onProgress(counters.snapshot()), reportIntervalMillis,
+                reportIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (CrawlTarget target : targets) {
+            futures.add(workers.submit(() -> crawlModel(target, sink, counters)));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Crawl interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Crawl failed.", e.getCause());
+        } finally {
+            workers.shutdownNow();
+            reporter.shutdownNow();
+        }
+
+        Progress progress = counters.snapshot();
+        if (listener != null) {
+            listener.onProgress(progress);
+        }
+        return progress;
+    }
+
+    private void crawlModel(CrawlTarget target, Sink sink, Counters counters) {
+        try (HwWalletObjectIterator iterator = serverApiService.iterateInstances(target.getUrlSegment(),
+            target.getModelId(), pageSize, perModelPrefetchDepth)) {
+            while (iterator.hasNext()) {
+                sink.accept(target, iterator.next());
+                counters.instances.incrementAndGet();
+            }
+            counters.completedModels.incrementAndGet();
+        } catch (RuntimeException e) {
+            counters.fail(target, e);
+        }
+    }
+
+    /**
+     * Receives crawled instances.
+     */
+    public interface Sink {
+        /**
+         * Accept an instance.
+         *
+         * @param target the model the instance belongs to.
+         * @param instance the instance.
+         */
+        void accept(CrawlTarget target, JSONObject instance);
+    }
+
+    /**
+     * Receives progress reports.
+     */
+    public interface ProgressListener {
+        /**
+         * Called with the current progress.
+         *
+         * @param progress the progress.
+         */
+        void onProgress(Progress progress);
+    }
+
+    /**
+     * Progress of a crawl.
+     */
+    public static final class Progress {
+        private final int totalModels;
+
+        private final int completedModels;
+
+        private final Map<CrawlTarget, RuntimeException> failedModels;
+
+        private final long instances;
+
+        private final long elapsedMillis;
+
+        private Progress(int totalModels, int completedModels, Map<CrawlTarget, RuntimeException> failedModels,
+            long instances, long elapsedMillis) {
+            this.totalModels = totalModels;
+            this.completedModels = completedModels;
+            this.failedModels = failedModels;
+            this.instances = instances;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public int getTotalModels() {
+            return totalModels;
+        }
+
+        public int getCompletedModels() {
+            return completedModels;
+        }
+
+        public Map<CrawlTarget, RuntimeException> getFailedModels() {
+            return failedModels;
+        }
+
+        public long getInstances() {
+            return instances;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * Return the average throughput since the crawl started.
+         *
+         * @return instances per second.
+         */
+        public double getInstancesPerSecond() {
+            return elapsedMillis == 0 ? 0 : instances * 1000.0 / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("models %d/%d (failed %d), instances %d, %.1f instances/s",
+                completedModels, totalModels, failedModels.size(), instances, getInstancesPerSecond());
+        }
+    }
+
+    private static final class Counters {
+        private final int totalModels;
+
+        private final long startMillis = System.currentTimeMillis();
+
+        private final AtomicInteger completedModels = new AtomicInteger();
+
+        private final AtomicLong instances = new AtomicLong();
+
+        private final Map<CrawlTarget, RuntimeException> failedModels = new LinkedHashMap<>();
+
+        private Counters(int totalModels) {
+            this.totalModels = totalModels;
+        }
+
+        private synchronized void fail(CrawlTarget target, RuntimeException e) {
+            failedModels.put(target, e);
+        }
+
+        private synchronized Progress snapshot() {
+            return new Progress(totalModels, completedModels.get(),
+                Collections.unmodifiableMap(new LinkedHashMap<>(failedModels)), instances.get(),
+                System.currentTimeMillis() - startMillis);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base of the writers that batch requests per model or instance. Batches wait in pending until they are flushed, and
+ * the batches of one object are sent in order: a batch is not sent before the previous batch of the object has
+ * completed. The lock of the batcher guards pending. Once the batcher is closed, new batches are rejected.
+ *
+ * @param <B> the batch type.
+ * @since 2020-12-11
+ */
+abstract class ObjectBatcher<B extends ObjectBatcher.Batch> implements AutoCloseable {
+    /**
+     * Batches waiting to be sent, by object key. Guarded by this.
+     */
+    final Map<String, B> pending = new HashMap<>();
+
+    /**
+     * Last batch sent of each object, until it completes. Guarded by this.
+     */
+    private final Map<String, CompletableFuture<JSONObject>> sending = new HashMap<>();
+
+    private final Executor sendExecutor;
+
+    /**
+     * Whether close was called. Guarded by this.
+     */
+    private boolean closed;
+
+    private final String failureMessage;
+
+    /**
+     * Constructor.
+     *
+     * @param sendExecutor runs the requests.
+     * @param failureMessage message of the exception thrown by close if a batch failed.
+     */
+    ObjectBatcher(Executor sendExecutor, String failureMessage) {
+        this.sendExecutor = sendExecutor;
+        this.failureMessage = failureMessage;
+    }
+
+    /**
+     * Send the pending batch of an object now.
+     *
+     * @param urlSegment model or instance URL segment.
+     * @param id model or instance ID.
+     * @return the future completed when everything submitted so far for the object has been sent.
+     */
+    public synchronized CompletableFuture<JSONObject> flush(String urlSegment, String id) {
+        String key = urlSegment + id;
+        B batch = pending.remove(key);
+        CompletableFuture<JSONObject> previous = sending.get(key);
+        if (batch == null) {
+            return previous == null ? CompletableFuture.completedFuture(null) : previous;
+        }
+        if (batch.timer != null) {
+            batch.timer.cancel(false);
+        }
+        onFlush(batch);
+        CompletableFuture<?> ready = previous == null ? CompletableFuture.completedFuture(null) : previous;
+        // Wait for the previous batch of the object, successful or not, to keep the order of requests.
+        try {
+            ready.handle((result, error) -> null).thenRunAsync(() -> {
+                try {
+                    batch.future.complete(send(batch));
+                } catch (RuntimeException e) {
+                    batch.future.completeExceptionally(e);
+                }
+            }, sendExecutor).exceptionally(error -> {
+                // The send executor rejected the batch after the previous batch completed.
+                batch.future.completeExceptionally(error);
+                return null;
+            });
+        } catch (RejectedExecutionException e) {
+            batch.future.completeExceptionally(e);
+        }
+        sending.put(key, batch.future);
+        batch.future.whenComplete((result, error) -> {
+            synchronized (this) {
+                sending.remove(key, batch.future);
+            }
+        });
+        return batch.future;
+    }
+
+    /**
+     * Send all pending batches now.
+     *
+     * @return the future completed when everything submitted so far has been sent, exceptionally if any batch
+     *     failed.
+     */
+    public CompletableFuture<Void> flushAll() {
+        List<CompletableFuture<JSONObject>> futures = new ArrayList<>();
+        synchronized (this) {
+            for (B batch : new ArrayList<>(pending.values())) {
+                futures.add(flush(batch.urlSegment, batch.id));
+            }
+            futures.addAll(sending.values());
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Send all pending batches and wait for them, then stop.
+     *
+     * @throws IllegalStateException if a batch failed. Its callers get the failure too.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        try {
+            flushAll().join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException(failureMessage, e.getCause());
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Check that the batcher accepts writes. Called holding the lock, before pending is read or changed.
+     *
+     * @throws IllegalStateException if the batcher is closed.
+     */
+    void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The batcher is closed.");
+        }
+    }
+
+    /**
+     * Add a new batch to pending and start its window. Called holding the lock.
+     *
+     * @param batch the batch.
+     * @param scheduler runs the window timer.
+     * @param onWindowEnd flushes the batch when its window ends.
+     * @param windowMillis length of the window.
+     * @return false if the scheduler rejected the timer. The batch is then failed and not pending.
+     */
+    boolean start(B batch, ScheduledExecutorService scheduler, Runnable onWindowEnd, long windowMillis) {
+        try {
+            batch.timer = scheduler.schedule(onWindowEnd, windowMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            batch.future.completeExceptionally(e);
+            return false;
+        }
+        pending.put(batch.urlSegment + batch.id, batch);
+        return true;
+    }
+
+    /**
+     * Called holding the lock when a batch is taken out of pending to be sent.
+     *
+     * @param batch the batch.
+     */
+    void onFlush(B batch) {
+    }
+
+    /**
+     * Send a batch.
+     *
+     * @param batch the batch.
+     * @return the response.
+     */
+    abstract JSONObject send(B batch);
+
+    /**
+     * Stop the threads of the batcher.
+     */
+    abstract void shutdown();
+
+    /**
+     * Pending writes of an object.
+     */
+    static class Batch {
+        final String urlSegment;
+
+        final String id;
+
+        final CompletableFuture<JSONObject> future = new CompletableFuture<>();
+
+        /**
+         * Flushes the batch when its window ends.
+         */
+        ScheduledFuture<?> timer;
+
+        Batch(String urlSegment, String id) {
+            this.urlSegment = urlSegment;
+            this.id = id;
+        }
+    }
+}
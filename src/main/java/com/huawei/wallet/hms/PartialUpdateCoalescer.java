@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import com.huawei.wallet.util.HwWalletObjectUtil;
+import com.huawei.wallet.util.json.JsonCodec;
+import com.huawei.wallet.util.json.JsonCodecs;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces partial updates of hot models or instances, e.g. frequent loyalty points or gift card balance changes.
+ * <p>
+ * Partial updates of the same object submitted within a window are merged, the later update winning for each field
+ * key, and sent as one PATCH when the window ends. Updates of the same object are sent in submission order: a batch
+ * is not sent before the previous batch of the object has completed. All callers of a batch get its response.
+ *
+ * @since 2020-11-26
+ */
+public class PartialUpdateCoalescer extends ObjectBatcher<PartialUpdateCoalescer.Batch> {
+    /**
+     * Reads and writes the JSON bodies, selected by json.codec in release.config.properties.
+     */
+    private static final JsonCodec JSON_CODEC = JsonCodecs.getDefault();
+
+    private final ServerApiService serverApiService;
+
+    private final long windowMillis;
+
+    private final ScheduledExecutorService executor;
+
+    private final AtomicLong submitted = new AtomicLong();
+
+    private final AtomicLong sent = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param serverApiService the service sending the PATCH requests.
+     * @param windowMillis time an update waits for later updates of the same object.
+     * @param threads number of threads sending the PATCH requests.
+     */
+    public PartialUpdateCoalescer(ServerApiService serverApiService, long windowMillis, int threads) {
+        this(serverApiService, windowMillis, createExecutor(threads));
+    }
+
+    private PartialUpdateCoalescer(ServerApiService serverApiService, long windowMillis,
+        ScheduledExecutorService executor) {
+        super(executor, "Flush partial updates failed.");
+        this.serverApiService = serverApiService;
+        this.windowMillis = windowMillis;
+        this.executor = executor;
+    }
+
+    /**
+     * Submit a partial update.
+     *
+     * @param urlSegment model or instance URL segment, e.g. "/v1/loyalty/instance/".
+     * @param id model or instance ID.
+     * @param body partial update JSON body.
+     * @return the future completed with the response to the PATCH request that includes this update.
+     * @throws IllegalStateException if the coalescer is closed.
+     */
+    public CompletableFuture<JSONObject> submit(String urlSegment, String id, String body) {
+        JSONObject update = JSON_CODEC.parseObject(body);
+        String key = urlSegment + id;
+        submitted.incrementAndGet();
+        synchronized (this) {
+            checkOpen();
+            Batch batch = pending.get(key);
+            if (batch != null) {
+                HwWalletObjectUtil.mergePartialUpdates(batch.body, update);
+                return batch.future;
+            }
+            batch = new Batch(urlSegment, id, update);
+            start(batch, executor, () -> flush(urlSegment, id), windowMillis);
+            return batch.future;
+        }
+    }
+
+    /**
+     * Return the number of submitted updates.
+     *
+     * @return the count.
+     */
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    /**
+     * Return the number of PATCH requests sent.
+     *
+     * @return the count.
+     */
+    public long getSent() {
+        return sent.get();
+    }
+
+    @Override
+    JSONObject send(Batch batch) {
+        sent.incrementAndGet();
+        return serverApiService.partialUpdateHwWalletObject(batch.urlSegment, batch.id,
+            JSON_CODEC.toJsonString(batch.body));
+    }
+
+    @Override
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private static ScheduledExecutorService createExecutor(int threads) {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(threads, runnable -> {
+            Thread thread = new Thread(runnable, "wallet-patch-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    /**
+     * Merged updates of an object.
+     */
+    static final class Batch extends ObjectBatcher.Batch {
+        private final JSONObject body;
+
+        private Batch(String urlSegment, String id, JSONObject body) {
+            super(urlSegment, id);
+            this.body = body;
+        }
+    }
+}
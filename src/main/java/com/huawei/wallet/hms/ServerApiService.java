@@ -16,9 +16,15 @@
 
 package com.huawei.wallet.hms;
 
+import com.huawei.wallet.hms.pass.HwWalletObject;
+import com.huawei.wallet.util.json.LazyJsonObject;
+
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
 /**
  * Interface of invoking HMS wallet server APIs.
  *
@@ -34,6 +40,36 @@ public interface ServerApiService {
      */
     JSONObject postToWalletServer(String urlSegment, String body);
 
+    /**
+     * Post a HwWalletObject held as UTF-8 JSON bytes to wallet server. The bytes are written to the connection as
+     * they are, without parsing them.
+     *
+     * @param urlSegment request URL segment.
+     * @param body JSON-type HwWalletObject bytes.
+     * @return the posted HwWalletObject.
+     */
+    JSONObject postToWalletServer(String urlSegment, byte[] body);
+
+    /**
+     * Post a HwWalletObject held as UTF-8 JSON bytes to wallet server. The remaining bytes of the buffer are sent
+     * without parsing them, and the buffer position is not changed.
+     *
+     * @param urlSegment request URL segment.
+     * @param body JSON-type HwWalletObject bytes.
+     * @return the posted HwWalletObject.
+     */
+    JSONObject postToWalletServer(String urlSegment, ByteBuffer body);
+
+    /**
+     * Post a typed HwWalletObject to wallet server. The object is serialized straight to the request, and the
+     * response parsed straight into a typed object, without JSONObject trees.
+     *
+     * @param urlSegment request URL segment.
+     * @param object the HwWalletObject.
+     * @return the posted HwWalletObject.
+     */
+    HwWalletObject postHwWalletObject(String urlSegment, HwWalletObject object);
+
     /**
      * query Huawei Wallet supported features from wallet server.
      *
@@ -51,6 +87,26 @@ public interface ServerApiService {
      */
     JSONObject getHwWalletObjectById(String urlSegment, String id);
 
+    /**
+     * Return a lazy view of the model/instance for a given model/instance ID. Attributes are decoded only when they
+     * are read, so it's cheaper than getHwWalletObjectById for callers reading a few attributes.
+     *
+     * @param urlSegment request URL segment.
+     * @param id model ID or instance ID.
+     * @return the view of the model/instance.
+     */
+    LazyJsonObject getHwWalletObjectViewById(String urlSegment, String id);
+
+    /**
+     * Return the typed model/instance for a given model/instance ID. Unlike getHwWalletObjectById, the response is
+     * parsed straight into a typed object, and models are not cached.
+     *
+     * @param urlSegment request URL segment.
+     * @param id model ID or instance ID.
+     * @return the model/instance.
+     */
+    HwWalletObject getHwWalletObject(String urlSegment, String id);
+
     /**
      * Return a list of models belonging to a specific appId.
      *
@@ -72,6 +128,60 @@ public interface ServerApiService {
      */
     JSONArray getInstances(String urlSegment, String modelId, Integer pageSize);
 
+    /**
+     * Iterate over lazy views of instances belonging to a specific model. Pages are requested on demand while
+     * iterating, and each is kept as its raw bytes only while views of it are referenced. An attribute of an instance
+     * is decoded only when it's read, so crawls reading a few attributes of each instance don't build a tree of it.
+     *
+     * @param urlSegment request URL segment.
+     * @param modelId model ID.
+     * @param pageSize max number of instances requested in each page.
+     * @return a lazy iterator over views of the instances.
+     */
+    Iterator<LazyJsonObject> iterateInstanceViews(String urlSegment, String modelId, int pageSize);
+
+    /**
+     * Iterate over models belonging to a specific appId. Pages are requested on demand while iterating, and
+     * pagination.prefetchDepth pages are prefetched.
+     *
+     * @param urlSegment request URL segment.
+     * @param pageSize maximum number of models in each page.
+     * @return a lazy iterator over models.
+     */
+    HwWalletObjectIterator iterateModels(String urlSegment, int pageSize);
+
+    /**
+     * Iterate over models belonging to a specific appId, requesting pages ahead of the one being consumed.
+     *
+     * @param urlSegment request URL segment.
+     * @param pageSize maximum number of models in each page.
+     * @param prefetchDepth maximum number of pages requested ahead. Pages are requested on demand if it's 0.
+     * @return a lazy iterator over models.
+     */
+    HwWalletObjectIterator iterateModels(String urlSegment, int pageSize, int prefetchDepth);
+
+    /**
+     * Iterate over instances belonging to a specific model. Pages are requested on demand while iterating, and
+     * pagination.prefetchDepth pages are prefetched.
+     *
+     * @param urlSegment request URL segment.
+     * @param modelId model ID.
+     * @param pageSize maximum number of instances in each page.
+     * @return a lazy iterator over instances.
+     */
+    HwWalletObjectIterator iterateInstances(String urlSegment, String modelId, int pageSize);
+
+    /**
+     * Iterate over instances belonging to a specific model, requesting pages ahead of the one being consumed.
+     *
+     * @param urlSegment request URL segment.
+     * @param modelId model ID.
+     * @param pageSize maximum number of instances in each page.
+     * @param prefetchDepth maximum number of pages requested ahead. Pages are requested on demand if it's 0.
+     * @return a lazy iterator over instances.
+     */
+    HwWalletObjectIterator iterateInstances(String urlSegment, String modelId, int pageSize, int prefetchDepth);
+
     /**
      * Overwrite a model/instance.
      *
@@ -82,6 +192,37 @@ public interface ServerApiService {
      */
     JSONObject fullUpdateHwWalletObject(String urlSegment, String id, String body);
 
+    /**
+     * Overwrite a model/instance with a body held as UTF-8 JSON bytes, written to the connection without parsing it.
+     *
+     * @param urlSegment request URL segment.
+     * @param id model/instance ID.
+     * @param body JSON-type HwWalletObject bytes.
+     * @return the updated model/instance.
+     */
+    JSONObject fullUpdateHwWalletObject(String urlSegment, String id, byte[] body);
+
+    /**
+     * Overwrite a model/instance with a body held as UTF-8 JSON bytes. The remaining bytes of the buffer are sent
+     * without parsing them, and the buffer position is not changed.
+     *
+     * @param urlSegment request URL segment.
+     * @param id model/instance ID.
+     * @param body JSON-type HwWalletObject bytes.
+     * @return the updated model/instance.
+     */
+    JSONObject fullUpdateHwWalletObject(String urlSegment, String id, ByteBuffer body);
+
+    /**
+     * Overwrite a model/instance with a typed HwWalletObject.
+     *
+     * @param urlSegment request URL segment.
+     * @param id model/instance ID.
+     * @param object the HwWalletObject.
+     * @return the updated model/instance.
+     */
+    HwWalletObject fullUpdateHwWalletObject(String urlSegment, String id, HwWalletObject object);
+
     /**
      * Update a model/instance.
      *
@@ -92,6 +233,48 @@ public interface ServerApiService {
      */
     JSONObject partialUpdateHwWalletObject(String urlSegment, String id, String body);
 
+    /**
+     * Update a model/instance with a body held as UTF-8 JSON bytes, written to the connection without parsing it.
+     *
+     * @param urlSegment request URL segment.
+     * @param id model/instance ID.
+     * @param body JSON-type HwWalletObject bytes.
+     * @return the updated model/instance.
+     */
+    JSONObject partialUpdateHwWalletObject(String urlSegment, String id, byte[] body);
+
+    /**
+     * Update a model/instance with a body held as UTF-8 JSON bytes. The remaining bytes of the buffer are sent without
+     * parsing them, and the buffer position is not changed.
+     *
+     * @param urlSegment request URL segment.
+     * @param id model/instance ID.
+     * @param body JSON-type HwWalletObject bytes.
+     * @return the updated model/instance.
+     */
+    JSONObject partialUpdateHwWalletObject(String urlSegment, String id, ByteBuffer body);
+
+    /**
+     * Update a model/instance with a typed HwWalletObject. Only its non-null attributes are sent.
+     *
+     * @param urlSegment request URL segment.
+     * @param id model/instance ID.
+     * @param object the partial HwWalletObject.
+     * @return the updated model/instance.
+     */
+    HwWalletObject partialUpdateHwWalletObject(String urlSegment, String id, HwWalletObject object);
+
+    /**
+     * Update a model/instance to a desired state, sending only what differs from its last-known state.
+     *
+     * @param urlSegment request URL segment.
+     * @param id model/instance ID.
+     * @param lastKnown last-known model/instance, e.g. a cached copy.
+     * @param body JSON-type desired HwWalletObject.
+     * @return the updated model/instance, or lastKnown if nothing changed.
+     */
+    JSONObject diffUpdateHwWalletObject(String urlSegment, String id, JSONObject lastKnown, String body);
+
     /**
      * Add messages to a HwWalletObject.
      *
@@ -102,6 +285,28 @@ public interface ServerApiService {
      */
     JSONObject addMessageToHwWalletObject(String urlSegment, String id, String body);
 
+    /**
+     * Add messages to a HwWalletObject with a body held as UTF-8 JSON bytes, written to the connection without parsing
+     * it.
+     *
+     * @param urlSegment request URL segment.
+     * @param id model/instance ID.
+     * @param body JSON-type messageList object bytes.
+     * @return the updated model/instance.
+     */
+    JSONObject addMessageToHwWalletObject(String urlSegment, String id, byte[] body);
+
+    /**
+     * Add messages to a HwWalletObject with a body held as UTF-8 JSON bytes. The remaining bytes of the buffer are sent
+     * without parsing them, and the buffer position is not changed.
+     *
+     * @param urlSegment request URL segment.
+     * @param id model/instance ID.
+     * @param body JSON-type messageList object bytes.
+     * @return the updated model/instance.
+     */
+    JSONObject addMessageToHwWalletObject(String urlSegment, String id, ByteBuffer body);
+
     /**
      * Add/remove linked offer IDs to/from a loyalty instance.
      *
@@ -111,4 +316,26 @@ public interface ServerApiService {
      * @return the updated loyalty instance.
      */
     JSONObject updateLinkedOffersToLoyaltyInstance(String urlSegment, String instanceId, String body);
+
+    /**
+     * Add/remove linked offer IDs to/from a loyalty instance with a body held as UTF-8 JSON bytes, written to the
+     * connection without parsing it.
+     *
+     * @param urlSegment request URL segment.
+     * @param instanceId instance ID.
+     * @param body JSON-type LinkedOfferInstanceIds object bytes.
+     * @return the updated loyalty instance.
+     */
+    JSONObject updateLinkedOffersToLoyaltyInstance(String urlSegment, String instanceId, byte[] body);
+
+    /**
+     * Add/remove linked offer IDs to/from a loyalty instance with a body held as UTF-8 JSON bytes. The remaining bytes
+     * of the buffer are sent without parsing them, and the buffer position is not changed.
+     *
+     * @param urlSegment request URL segment.
+     * @param instanceId instance ID.
+     * @param body JSON-type LinkedOfferInstanceIds object bytes.
+     * @return the updated loyalty instance.
+     */
+    JSONObject updateLinkedOffersToLoyaltyInstance(String urlSegment, String instanceId, ByteBuffer body);
 }
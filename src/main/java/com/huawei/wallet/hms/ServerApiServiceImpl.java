@@ -16,19 +16,50 @@
 
 package com.huawei.wallet.hms;
 
-import com.huawei.wallet.nsp.NetworkService;
+import com.huawei.wallet.hms.pass.HwWalletObject;
+import com.huawei.wallet.nsp.AdaptiveRateLimiter;
+import com.huawei.wallet.nsp.CircuitBreaker;
+import com.huawei.wallet.nsp.Hedger;
+import com.huawei.wallet.nsp.HttpTransport;
+import com.huawei.wallet.nsp.RetryPolicy;
+import com.huawei.wallet.nsp.SingleFlight;
 import com.huawei.wallet.util.ConfigUtil;
+import com.huawei.wallet.util.HwWalletObjectUtil;
+import com.huawei.wallet.util.json.JsonCodec;
+import com.huawei.wallet.util.json.JsonCodecs;
+import com.huawei.wallet.util.json.LazyJsonObject;
 
+import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
 /**
  * Implementation of invoking HMS wallet server APIs.
  *
@@ -40,238 +71,873 @@ public class ServerApiServiceImpl implements ServerApiService {
      */
     private static final String AUTHORIZATION_HEAD = "Bearer ";
 
-    private static final RestTemplate REST_TEMPLATE;
+    /**
+     * Send requests over the shared connection pool. Timeouts and pool sizes are set in release.config.properties.
+     */
+    private static final RestTemplate REST_TEMPLATE = HttpTransport.createRestTemplate();
+
+    /**
+     * Reads and writes the JSON bodies, selected by json.codec in release.config.properties.
+     */
+    private static final JsonCodec JSON_CODEC = JsonCodecs.getDefault();
+
+    /**
+     * Retries transient failures, shared with AsyncServerApiServiceImpl. Settings are in release.config.properties.
+     */
+    private static final RetryPolicy RETRY_POLICY = RetryPolicy.getDefault();
+
+    /**
+     * Runs the background tasks of prefetching iterators.
+     */
+    private static final ExecutorService PREFETCH_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "wallet-page-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Hedgers of single-object reads by endpoint family, empty unless hedging.enabled is true.
+     */
+    private static final Map<EndpointFamily, Hedger> HEDGERS = createHedgers();
 
-    static {
-        REST_TEMPLATE = new RestTemplate();
-        // Use HttpComponentsClientHttpRequestFactory for http requests.
-        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory();
-        requestFactory.setConnectTimeout(20000);
-        requestFactory.setReadTimeout(20000);
-        // Set request factory.
-        REST_TEMPLATE.setRequestFactory(requestFactory);
+    /**
+     * Concurrent reads of the same model or instance share one request, unless readCoalescing.enabled is false.
+     */
+    private static final SingleFlight<String, JSONObject> READ_FLIGHTS =
+        Boolean.parseBoolean(ConfigUtil.instants().getValue("readCoalescing.enabled")) ? new SingleFlight<>() : null;
+
+    /**
+     * Cache of models read by getHwWalletObjectById, unless modelCache.enabled is false.
+     */
+    private static final ModelCache MODEL_CACHE = createModelCache();
+
+    private final WalletRegion region;
+
+    private final List<WriteListener> writeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructor. Requests are sent to the default region.
+     */
+    public ServerApiServiceImpl() {
+        this(WalletRegions.getDefault());
+    }
+
+    /**
+     * Constructor. Requests are sent to the region of the developer account, e.g. "dre".
+     *
+     * @param region region name configured in release.config.properties.
+     */
+    public ServerApiServiceImpl(String region) {
+        this(WalletRegions.get(region));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param region the region requests are sent to.
+     */
+    public ServerApiServiceImpl(WalletRegion region) {
+        this.region = region;
     }
 
     @Override
     public JSONObject postToWalletServer(String urlSegment, String body) {
-        // Construct the http header.
-        HttpHeaders header = constructHttpHeaders();
         // Construct the http URL.
-        String baseUrl = ConfigUtil.instants().getValue("walletServerBaseUrl");
+        String baseUrl = region.selectBaseUrl(EndpointFamily.of(urlSegment));
         String walletServerUrl = baseUrl + urlSegment;
 
-        // Send the http request and get response.
-        HttpEntity<JSONObject> entity = new HttpEntity<>(JSONObject.parseObject(body), header);
-        ResponseEntity<JSONObject> exchange =
-            REST_TEMPLATE.exchange(walletServerUrl, HttpMethod.POST, entity, JSONObject.class);
+        // Send the http request and return the posted model or instance or NFC card personalized data.
+        // A create is sent again only after a lookup shows the failed attempt did not create the object.
+        // The body is parsed once, for the ID and for every attempt.
+        JSONObject request = JSON_CODEC.parseObject(body);
+        String idField = createdIdField(walletServerUrl);
+        String id = idField == null ? null : request.getString(idField);
+        return written(urlSegment, RETRY_POLICY.execute(HttpMethod.POST,
+            () -> send(walletServerUrl, HttpMethod.POST, request, JSONObject.class),
+            createLookup(walletServerUrl, id, JSONObject.class)));
+    }
+
+    @Override
+    public JSONObject postToWalletServer(String urlSegment, byte[] body) {
+        // Construct the http URL.
+        String baseUrl = region.selectBaseUrl(EndpointFamily.of(urlSegment));
+        String walletServerUrl = baseUrl + urlSegment;
 
-        // Return the posted model or instance or NFC card personalized data.
-        return exchange.getBody();
+        // Send the body as it is. It's only parsed if a lookup needs the ID of the created object.
+        return written(urlSegment, RETRY_POLICY.execute(HttpMethod.POST,
+            () -> send(walletServerUrl, HttpMethod.POST, body, JSONObject.class),
+            createLazyLookup(walletServerUrl, body)));
+    }
+
+    @Override
+    public JSONObject postToWalletServer(String urlSegment, ByteBuffer body) {
+        return postToWalletServer(urlSegment, toByteArray(body));
+    }
+
+    @Override
+    public HwWalletObject postHwWalletObject(String urlSegment, HwWalletObject object) {
+        // Construct the http URL.
+        String baseUrl = region.selectBaseUrl(EndpointFamily.of(urlSegment));
+        String walletServerUrl = baseUrl + urlSegment;
+
+        // Send the http request and return the posted model or instance.
+        String idField = createdIdField(walletServerUrl);
+        String id = "serialNumber".equals(idField) ? object.getSerialNumber() : object.getPassStyleIdentifier();
+        byte[] body = object.toJsonBytes();
+        byte[] response = RETRY_POLICY.execute(HttpMethod.POST,
+            () -> send(walletServerUrl, HttpMethod.POST, body, byte[].class),
+            createLookup(walletServerUrl, id, byte[].class));
+        return writtenTyped(urlSegment, response);
     }
 
     @Override
     public JSONObject queryIssuerAndFlag(String urlSegment) {
-        // Construct the http header.
-        HttpHeaders header = constructHttpHeaders();
         // Construct the http URL.
-        String baseUrl = ConfigUtil.instants().getValue("walletServerBaseUrl");
+        String baseUrl = region.selectBaseUrl(EndpointFamily.of(urlSegment));
         String walletServerUrl = baseUrl + urlSegment;
 
-        // Send the http request and get response.
-        HttpEntity<JSONObject> entity = new HttpEntity<>(header);
-        ResponseEntity<JSONObject> response =
-                REST_TEMPLATE.exchange(walletServerUrl, HttpMethod.GET, entity, JSONObject.class);
-        // Return the issuer and flag by wallet server.
-        return response.getBody();
+        // Send the http request and return the issuer and flag by wallet server.
+        return exchange(walletServerUrl, HttpMethod.GET, null);
     }
 
     @Override
     public JSONObject getHwWalletObjectById(String urlSegment, String id) {
-        // Construct the http header.
-        HttpHeaders header = constructHttpHeaders();
         // Construct the http URL.
-        String baseUrl = ConfigUtil.instants().getValue("walletServerBaseUrl");
+        String baseUrl = region.selectBaseUrl(EndpointFamily.of(urlSegment));
         String walletServerUrl = baseUrl + urlSegment + id;
 
-        // Send the http request and get response.
-        HttpEntity<JSONObject> entity = new HttpEntity<>(header);
-        ResponseEntity<JSONObject> response =
-            REST_TEMPLATE.exchange(walletServerUrl, HttpMethod.GET, entity, JSONObject.class);
+        // Send the http request and return the model or instance with the corresponding ID.
+        EndpointFamily family = EndpointFamily.of(urlSegment);
+        if (MODEL_CACHE != null && family == EndpointFamily.MODEL) {
+            return MODEL_CACHE.get(modelKey(region, urlSegment, id), () -> coalescedGetById(walletServerUrl, family));
+        }
+        return coalescedGetById(walletServerUrl, family);
+    }
+
+    @Override
+    public LazyJsonObject getHwWalletObjectViewById(String urlSegment, String id) {
+        // Construct the http URL.
+        String baseUrl = region.selectBaseUrl(EndpointFamily.of(urlSegment));
+        String walletServerUrl = baseUrl + urlSegment + id;
+
+        // Send the http request and index the raw response. Attributes are decoded when the caller reads them.
+        byte[] response = exchange(walletServerUrl, HttpMethod.GET, null, byte[].class);
+        return response == null ? null : LazyJsonObject.of(response);
+    }
+
+    @Override
+    public HwWalletObject getHwWalletObject(String urlSegment, String id) {
+        // Construct the http URL.
+        String baseUrl = region.selectBaseUrl(EndpointFamily.of(urlSegment));
+        String walletServerUrl = baseUrl + urlSegment + id;
 
-        // Return the model or instance with the corresponding ID.
-        return response.getBody();
+        // Send the http request and parse the response straight into a typed model or instance.
+        return HwWalletObject.parse(exchange(walletServerUrl, HttpMethod.GET, null, byte[].class));
     }
 
     @Override
     public JSONArray getModels(String urlSegment, Integer pageSize) {
-        // Construct the http header.
-        HttpHeaders header = constructHttpHeaders();
+        if (pageSize != null) {
+            JSONArray modelList = new JSONArray();
+            iterateModels(urlSegment, pageSize).forEachRemaining(modelList::add);
+            return modelList;
+        }
+
         // Construct the http URL.
-        String baseUrl = ConfigUtil.instants().getValue("walletServerBaseUrl");
+        String baseUrl = region.selectBaseUrl(EndpointFamily.of(urlSegment));
         String walletServerUrl = baseUrl + urlSegment;
 
-        HttpEntity<JSONObject> entity = new HttpEntity<>(header);
-        if (pageSize == null) {
-            ResponseEntity<JSONObject> response =
-                REST_TEMPLATE.exchange(walletServerUrl, HttpMethod.GET, entity, JSONObject.class);
-            JSONObject batchQueryResult = response.getBody();
-            if (batchQueryResult == null) {
-                throw new IllegalStateException("Get models failed. Get null response.");
-            }
-            return batchQueryResult.getJSONArray("data");
-        }
+        return readAll(walletServerUrl, "Get models failed.");
+    }
 
-        JSONArray modelList = new JSONArray();
-        String url = walletServerUrl + "?pageSize=" + pageSize;
-        String session = "";
-        String finalUrl;
-        while (true) {
-            if (!session.isEmpty()) {
-                finalUrl = url + "&session=" + session;
-            } else {
-                finalUrl = url;
-            }
-            ResponseEntity<JSONObject> response =
-                REST_TEMPLATE.exchange(finalUrl, HttpMethod.GET, entity, JSONObject.class);
-            JSONObject batchQueryResult = response.getBody();
-            if (batchQueryResult == null) {
-                throw new IllegalStateException("Get models failed. Get null response.");
-            }
-            JSONArray data = batchQueryResult.getJSONArray("data");
-            modelList.addAll(data);
-            if (!batchQueryResult.containsKey("pageInfo")) {
-                throw new IllegalStateException("Get models failed. Get null pageInfo.");
-            }
-            JSONObject pageInfo = batchQueryResult.getJSONObject("pageInfo");
-            if (!pageInfo.containsKey("nextSession")) {
-                return modelList;
-            }
-            session = pageInfo.getString("nextSession");
+    @Override
+    public JSONArray getInstances(String urlSegment, String modelId, Integer pageSize) {
+        if (pageSize != null) {
+            JSONArray instanceList = new JSONArray();
+            iterateInstances(urlSegment, modelId, pageSize).forEachRemaining(instanceList::add);
+            return instanceList;
         }
+
+        // Construct the http URL.
+        String baseUrl = region.selectBaseUrl(EndpointFamily.of(urlSegment));
+        String walletServerUrl = baseUrl + urlSegment + "?modelId=" + modelId;
+
+        return readAll(walletServerUrl, "Get instances failed.");
     }
 
     @Override
-    public JSONArray getInstances(String urlSegment, String modelId, Integer pageSize) {
-        // Construct the http header.
-        HttpHeaders header = constructHttpHeaders();
+    public Iterator<LazyJsonObject> iterateInstanceViews(String urlSegment, String modelId, int pageSize) {
         // Construct the http URL.
-        String baseUrl = ConfigUtil.instants().getValue("walletServerBaseUrl");
-        String walletServerUrl = baseUrl + urlSegment;
+        String baseUrl = region.selectBaseUrl(EndpointFamily.of(urlSegment));
+        String url = baseUrl + urlSegment + "?modelId=" + modelId + "&pageSize=" + pageSize;
 
-        HttpEntity<JSONObject> entity = new HttpEntity<>(header);
-        if (pageSize == null) {
-            ResponseEntity<JSONObject> response = REST_TEMPLATE.exchange(walletServerUrl + "?modelId=" + modelId,
-                HttpMethod.GET, entity, JSONObject.class);
-            JSONObject batchQueryResult = response.getBody();
-            if (batchQueryResult == null) {
-                throw new IllegalStateException("Get instances failed. Get null response.");
-            }
-            return batchQueryResult.getJSONArray("data");
-        }
-        JSONArray instanceList = new JSONArray();
-        String url = walletServerUrl + "?modelId=" + modelId + "&pageSize=" + pageSize;
-        String finalUrl;
-        String session = "";
-        while (true) {
-            if (!session.isEmpty()) {
-                finalUrl = url + "&session=" + session;
-            } else {
-                finalUrl = url;
-            }
-            ResponseEntity<JSONObject> response =
-                REST_TEMPLATE.exchange(finalUrl, HttpMethod.GET, entity, JSONObject.class);
-            JSONObject batchQueryResult = response.getBody();
-            if (batchQueryResult == null) {
-                throw new IllegalStateException("Get instances failed. Get null response.");
-            }
-            JSONArray data = batchQueryResult.getJSONArray("data");
-            instanceList.addAll(data);
-            if (!batchQueryResult.containsKey("pageInfo")) {
-                throw new IllegalStateException("Get instances failed. Get null pageInfo.");
-            }
-            JSONObject pageInfo = batchQueryResult.getJSONObject("pageInfo");
-            if (!pageInfo.containsKey("nextSession")) {
-                return instanceList;
-            }
-            session = pageInfo.getString("nextSession");
-        }
+        // Keep each page as its raw bytes. The views of its instances share them.
+        return new LazyPageIterator(session -> exchange(pageUrl(url, session), HttpMethod.GET, null, byte[].class),
+            "Get instances failed.");
+    }
+
+    @Override
+    public HwWalletObjectIterator iterateModels(String urlSegment, int pageSize) {
+        return iterateModels(urlSegment, pageSize, getDefaultPrefetchDepth());
+    }
+
+    @Override
+    public HwWalletObjectIterator iterateModels(String urlSegment, int pageSize, int prefetchDepth) {
+        // Construct the http URL.
+        String baseUrl = region.selectBaseUrl(EndpointFamily.of(urlSegment));
+        String url = baseUrl + urlSegment + "?pageSize=" + pageSize;
+        String errorMessage = "Get models failed.";
+        return HwWalletObjectIterator.streaming(session -> openPage(pageUrl(url, session), errorMessage),
+            errorMessage, PREFETCH_EXECUTOR, prefetchDepth);
+    }
+
+    @Override
+    public HwWalletObjectIterator iterateInstances(String urlSegment, String modelId, int pageSize) {
+        return iterateInstances(urlSegment, modelId, pageSize, getDefaultPrefetchDepth());
+    }
+
+    @Override
+    public HwWalletObjectIterator iterateInstances(String urlSegment, String modelId, int pageSize,
+        int prefetchDepth) {
+        // Construct the http URL.
+        String baseUrl = region.selectBaseUrl(EndpointFamily.of(urlSegment));
+        String url = baseUrl + urlSegment + "?modelId=" + modelId + "&pageSize=" + pageSize;
+        String errorMessage = "Get instances failed.";
+        return HwWalletObjectIterator.streaming(session -> openPage(pageUrl(url, session), errorMessage),
+            errorMessage, PREFETCH_EXECUTOR, prefetchDepth);
     }
 
     @Override
     public JSONObject fullUpdateHwWalletObject(String urlSegment, String id, String body) {
-        // Construct the http header.
-        HttpHeaders header = constructHttpHeaders();
         // Construct the http URL.
-        String baseUrl = ConfigUtil.instants().getValue("walletServerBaseUrl");
+        String baseUrl = region.selectBaseUrl(EndpointFamily.of(urlSegment));
         String walletServerUrl = baseUrl + urlSegment + id;
 
-        // Send the http request and get response.
-        HttpEntity<JSONObject> entity = new HttpEntity<>(JSONObject.parseObject(body), header);
-        ResponseEntity<JSONObject> response =
-            REST_TEMPLATE.exchange(walletServerUrl, HttpMethod.PUT, entity, JSONObject.class);
+        // Send the http request and return the updated model or instance.
+        JSONObject response =
+            updateModel(urlSegment, id, () -> exchange(walletServerUrl, HttpMethod.PUT, body));
+        return written(urlSegment, response);
+    }
 
-        // Return the updated model or instance.
-        return response.getBody();
+    @Override
+    public JSONObject fullUpdateHwWalletObject(String urlSegment, String id, byte[] body) {
+        // Construct the http URL.
+        String baseUrl = region.selectBaseUrl(EndpointFamily.of(urlSegment));
+        String walletServerUrl = baseUrl + urlSegment + id;
+
+        // Send the body as it is and return the updated model or instance.
+        JSONObject response = updateModel(urlSegment, id,
+            () -> exchange(walletServerUrl, HttpMethod.PUT, body, JSONObject.class));
+        return written(urlSegment, response);
+    }
+
+    @Override
+    public JSONObject fullUpdateHwWalletObject(String urlSegment, String id, ByteBuffer body) {
+        return fullUpdateHwWalletObject(urlSegment, id, toByteArray(body));
     }
 
     @Override
     public JSONObject partialUpdateHwWalletObject(String urlSegment, String id, String body) {
-        // Construct the http header.
-        HttpHeaders header = constructHttpHeaders();
         // Construct the http URL.
-        String baseUrl = ConfigUtil.instants().getValue("walletServerBaseUrl");
+        String baseUrl = region.selectBaseUrl(EndpointFamily.of(urlSegment));
+        String walletServerUrl = baseUrl + urlSegment + id;
+
+        // Send the http request and return the updated model or instance.
+        JSONObject response =
+            updateModel(urlSegment, id, () -> exchange(walletServerUrl, HttpMethod.PATCH, body));
+        return written(urlSegment, response);
+    }
+
+    @Override
+    public JSONObject partialUpdateHwWalletObject(String urlSegment, String id, byte[] body) {
+        // Construct the http URL.
+        String baseUrl = region.selectBaseUrl(EndpointFamily.of(urlSegment));
+        String walletServerUrl = baseUrl + urlSegment + id;
+
+        // Send the body as it is and return the updated model or instance.
+        JSONObject response = updateModel(urlSegment, id,
+            () -> exchange(walletServerUrl, HttpMethod.PATCH, body, JSONObject.class));
+        return written(urlSegment, response);
+    }
+
+    @Override
+    public JSONObject partialUpdateHwWalletObject(String urlSegment, String id, ByteBuffer body) {
+        return partialUpdateHwWalletObject(urlSegment, id, toByteArray(body));
+    }
+
+    @Override
+    public HwWalletObject fullUpdateHwWalletObject(String urlSegment, String id, HwWalletObject object) {
+        // Construct the http URL.
+        String baseUrl = region.selectBaseUrl(EndpointFamily.of(urlSegment));
+        String walletServerUrl = baseUrl + urlSegment + id;
+
+        // Send the http request and return the updated model or instance.
+        byte[] body = object.toJsonBytes();
+        byte[] response =
+            updateModel(urlSegment, id, () -> exchange(walletServerUrl, HttpMethod.PUT, body, byte[].class));
+        return writtenTyped(urlSegment, response);
+    }
+
+    @Override
+    public HwWalletObject partialUpdateHwWalletObject(String urlSegment, String id, HwWalletObject object) {
+        // Construct the http URL.
+        String baseUrl = region.selectBaseUrl(EndpointFamily.of(urlSegment));
         String walletServerUrl = baseUrl + urlSegment + id;
 
-        // Send the http request and get response.
-        HttpEntity<JSONObject> entity = new HttpEntity<>(JSONObject.parseObject(body), header);
-        ResponseEntity<JSONObject> response =
-            REST_TEMPLATE.exchange(walletServerUrl, HttpMethod.PATCH, entity, JSONObject.class);
+        // Send the http request and return the updated model or instance.
+        byte[] body = object.toJsonBytes();
+        byte[] response =
+            updateModel(urlSegment, id, () -> exchange(walletServerUrl, HttpMethod.PATCH, body, byte[].class));
+        return writtenTyped(urlSegment, response);
+    }
 
-        // Return the updated model or instance.
-        return response.getBody();
+    @Override
+    public JSONObject diffUpdateHwWalletObject(String urlSegment, String id, JSONObject lastKnown, String body) {
+        JSONObject diff = HwWalletObjectUtil.diffPartialUpdate(lastKnown, JSON_CODEC.parseObject(body));
+        if (diff == null) {
+            // Something was removed, which only a full update can do.
+            return fullUpdateHwWalletObject(urlSegment, id, body);
+        }
+        if (diff.isEmpty()) {
+            return lastKnown;
+        }
+        return partialUpdateHwWalletObject(urlSegment, id, JSON_CODEC.toJsonString(diff));
     }
 
     @Override
     public JSONObject addMessageToHwWalletObject(String urlSegment, String id, String body) {
-        // Construct the http header.
-        HttpHeaders header = constructHttpHeaders();
         // Construct the http URL.
-        String baseUrl = ConfigUtil.instants().getValue("walletServerBaseUrl");
+        String baseUrl = region.selectBaseUrl(EndpointFamily.ADD_MESSAGE);
         String walletServerUrl = baseUrl + urlSegment + id + "/addMessage";
 
-        // Send the http request and get response.
-        HttpEntity<JSONObject> entity = new HttpEntity<>(JSONObject.parseObject(body), header);
-        ResponseEntity<JSONObject> response =
-            REST_TEMPLATE.exchange(walletServerUrl, HttpMethod.POST, entity, JSONObject.class);
+        // Send the http request and return the updated model or instance.
+        JSONObject response =
+            updateModel(urlSegment, id, () -> exchange(walletServerUrl, HttpMethod.POST, body));
+        return written(urlSegment, response);
+    }
+
+    @Override
+    public JSONObject addMessageToHwWalletObject(String urlSegment, String id, byte[] body) {
+        // Construct the http URL.
+        String baseUrl = region.selectBaseUrl(EndpointFamily.ADD_MESSAGE);
+        String walletServerUrl = baseUrl + urlSegment + id + "/addMessage";
 
-        // Return the updated model or instance.
-        return response.getBody();
+        // Send the body as it is and return the updated model or instance.
+        JSONObject response = updateModel(urlSegment, id,
+            () -> exchange(walletServerUrl, HttpMethod.POST, body, JSONObject.class));
+        return written(urlSegment, response);
+    }
+
+    @Override
+    public JSONObject addMessageToHwWalletObject(String urlSegment, String id, ByteBuffer body) {
+        return addMessageToHwWalletObject(urlSegment, id, toByteArray(body));
     }
 
     @Override
     public JSONObject updateLinkedOffersToLoyaltyInstance(String urlSegment, String instanceId, String body) {
-        // Construct the http header.
-        HttpHeaders header = constructHttpHeaders();
         // Construct the http URL.
-        String baseUrl = ConfigUtil.instants().getValue("walletServerBaseUrl");
-        String walletServerUrl = baseUrl + urlSegment + "/linkedoffers";
+        String baseUrl = region.selectBaseUrl(EndpointFamily.LINKED_OFFERS);
+        String walletServerUrl = baseUrl + urlSegment + instanceId + "/linkedoffers";
+
+        // Send the http request and return the updated instance.
+        return written(urlSegment, exchange(walletServerUrl, HttpMethod.PATCH, body));
+    }
+
+    @Override
+    public JSONObject updateLinkedOffersToLoyaltyInstance(String urlSegment, String instanceId, byte[] body) {
+        // Construct the http URL.
+        String baseUrl = region.selectBaseUrl(EndpointFamily.LINKED_OFFERS);
+        String walletServerUrl = baseUrl + urlSegment + instanceId + "/linkedoffers";
 
-        // Send the http request and get response.
-        HttpEntity<JSONObject> entity = new HttpEntity<>(JSONObject.parseObject(body), header);
-        ResponseEntity<JSONObject> response =
-            REST_TEMPLATE.exchange(walletServerUrl, HttpMethod.PATCH, entity, JSONObject.class);
+        // Send the body as it is and return the updated instance.
+        return written(urlSegment, exchange(walletServerUrl, HttpMethod.PATCH, body, JSONObject.class));
+    }
+
+    @Override
+    public JSONObject updateLinkedOffersToLoyaltyInstance(String urlSegment, String instanceId, ByteBuffer body) {
+        return updateLinkedOffersToLoyaltyInstance(urlSegment, instanceId, toByteArray(body));
+    }
+
+    public WalletRegion getRegion() {
+        return region;
+    }
+
+    /**
+     * Register a listener of the models and instances returned by the writes of this service, e.g. an
+     * {@link InstanceMirror}.
+     *
+     * @param listener the listener.
+     */
+    public void addWriteListener(WriteListener listener) {
+        writeListeners.add(listener);
+    }
+
+    /**
+     * Load all models of a pass type into the model cache, e.g. at startup.
+     *
+     * @param urlSegment model URL segment, e.g. "/v1/loyalty/model".
+     * @return the number of cached models, 0 if the model cache is disabled.
+     */
+    public int preloadModels(String urlSegment) {
+        if (MODEL_CACHE == null) {
+            return 0;
+        }
+        int count = 0;
+        JSONArray models = getModels(urlSegment, ConfigUtil.instants().getIntValue("modelCache.preloadPageSize", 100));
+        for (int i = 0; i < models.size(); i++) {
+            JSONObject model = models.getJSONObject(i);
+            String modelId = model.getString("passStyleIdentifier");
+            if (modelId != null) {
+                MODEL_CACHE.put(modelKey(region, urlSegment, modelId), model);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Return the model cache shared by all instances, e.g. to read its metrics.
+     *
+     * @return the model cache, or null if it's disabled.
+     */
+    public static ModelCache getModelCache() {
+        return MODEL_CACHE;
+    }
+
+    /**
+     * Return the retry policy shared by all instances, e.g. to read its metrics.
+     *
+     * @return the retry policy.
+     */
+    public static RetryPolicy getRetryPolicy() {
+        return RETRY_POLICY;
+    }
+
+    /**
+     * Return the coalescer of single-object reads, e.g. to read its metrics.
+     *
+     * @return the coalescer, or null if read coalescing is disabled.
+     */
+    public static SingleFlight<String, JSONObject> getReadFlights() {
+        return READ_FLIGHTS;
+    }
+
+    /**
+     * Return the hedger of single-object reads of an endpoint family, e.g. to read its metrics.
+     *
+     * @param family EndpointFamily.MODEL or EndpointFamily.INSTANCE.
+     * @return the hedger, or null if hedging is disabled.
+     */
+    public static Hedger getHedger(EndpointFamily family) {
+        return HEDGERS.get(family);
+    }
+
+    private static Map<EndpointFamily, Hedger> createHedgers() {
+        Map<EndpointFamily, Hedger> hedgers = new EnumMap<>(EndpointFamily.class);
+        ConfigUtil config = ConfigUtil.instants();
+        if (!Boolean.parseBoolean(config.getValue("hedging.enabled"))) {
+            return hedgers;
+        }
+        // Bounded, without a queue: when all threads are busy the read runs on the caller and the hedge is skipped.
+        ExecutorService executor = new ThreadPoolExecutor(0, config.getIntValue("hedging.maxThreads", 64), 60,
+            TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "wallet-hedged-read");
+                thread.setDaemon(true);
+                return thread;
+            });
+        for (EndpointFamily family : new EndpointFamily[] {EndpointFamily.MODEL, EndpointFamily.INSTANCE}) {
+            hedgers.put(family, new Hedger(executor, config.getDoubleValue("hedging.percentile", 95),
+                config.getIntValue("hedging.minDelayMillis", 50), config.getIntValue("hedging.windowSize", 1000),
+                config.getDoubleValue("hedging.maxHedgesPerSecond", 10)));
+        }
+        return hedgers;
+    }
+
+    private static int getDefaultPrefetchDepth() {
+        return ConfigUtil.instants().getIntValue("pagination.prefetchDepth", 0);
+    }
 
-        // Return the updated instance.
-        return response.getBody();
+    /**
+     * Get a model or instance by its URL, sharing the request with concurrent reads of the same URL. Each caller gets
+     * its own copy of the shared response.
+     *
+     * @param url the full request URL.
+     * @param family endpoint family of the URL.
+     * @return the model or instance.
+     */
+    private JSONObject coalescedGetById(String url, EndpointFamily family) {
+        if (READ_FLIGHTS != null) {
+            return HwWalletObjectUtil.deepCopy(READ_FLIGHTS.execute(url, () -> getById(url, family)));
+        }
+        return getById(url, family);
+    }
+
+    /**
+     * Send a request that changes a model or instance. The cached model is invalidated after the request, even if it
+     * failed, because the update may have taken effect.
+     *
+     * @param urlSegment model or instance URL segment.
+     * @param id model or instance ID.
+     * @param request the request.
+     * @return the response body.
+     */
+    private <T> T updateModel(String urlSegment, String id, Supplier<T> request) {
+        if (MODEL_CACHE == null || EndpointFamily.of(urlSegment) != EndpointFamily.MODEL) {
+            return request.get();
+        }
+        try {
+            return request.get();
+        } finally {
+            MODEL_CACHE.invalidate(modelKey(region, urlSegment, id));
+        }
+    }
+
+    /**
+     * Pass the response of a write to the write listeners.
+     *
+     * @param urlSegment model or instance URL segment.
+     * @param response the written model or instance.
+     * @return the response.
+     */
+    private JSONObject written(String urlSegment, JSONObject response) {
+        if (response != null) {
+            for (WriteListener listener : writeListeners) {
+                listener.onWrite(urlSegment, response);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Parse the response of a typed write and pass it to the write listeners. The response is only converted to a
+     * JSONObject if there are listeners.
+     *
+     * @param urlSegment model or instance URL segment.
+     * @param response the JSON bytes of the written model or instance.
+     * @return the written model or instance.
+     */
+    private HwWalletObject writtenTyped(String urlSegment, byte[] response) {
+        if (response == null) {
+            return null;
+        }
+        if (!writeListeners.isEmpty()) {
+            written(urlSegment, JSON_CODEC.parseObject(response));
+        }
+        return HwWalletObject.parse(response);
+    }
+
+    /**
+     * Get the cache key of a model: the region and the model path, e.g. "dre /v1/loyalty/model/{id}".
+     */
+    static String modelKey(WalletRegion region, String urlSegment, String id) {
+        return region.getName() + " " + urlSegment + (urlSegment.endsWith("/") ? "" : "/") + id;
+    }
+
+    private static ModelCache createModelCache() {
+        ConfigUtil config = ConfigUtil.instants();
+        if (!Boolean.parseBoolean(config.getValue("modelCache.enabled"))) {
+            return null;
+        }
+        return new ModelCache(config.getIntValue("modelCache.maxSize", 1000),
+            config.getIntValue("modelCache.ttlSeconds", 300));
+    }
+
+    /**
+     * Get a model or instance by its URL.
+     *
+     * @param url the full request URL.
+     * @param family endpoint family of the URL.
+     * @return the model or instance.
+     */
+    private JSONObject getById(String url, EndpointFamily family) {
+        Hedger hedger = HEDGERS.get(family);
+        if (hedger != null) {
+            // Send a duplicate request if the first one is slower than usual.
+            return hedger.execute(() -> exchange(url, HttpMethod.GET, null));
+        }
+        return exchange(url, HttpMethod.GET, null);
+    }
+
+    /**
+     * Get the URL of a page of a batch query.
+     *
+     * @param url the batch query URL without session.
+     * @param session session of the page, empty for the first page.
+     * @return the page URL.
+     */
+    private static String pageUrl(String url, String session) {
+        return session.isEmpty() ? url : url + "&session=" + session;
+    }
+
+    /**
+     * Read all records of a batch query response without building a tree of the whole response.
+     *
+     * @param url the batch query URL.
+     * @param errorMessage message prefix of exceptions.
+     * @return the records.
+     */
+    private JSONArray readAll(String url, String errorMessage) {
+        JSONArray data = new JSONArray();
+        try (BatchQueryReader reader = openPage(url, errorMessage)) {
+            for (JSONObject record = reader.nextRecord(); record != null; record = reader.nextRecord()) {
+                data.add(record);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Open a batch query response for reading its records incrementally. The request is retried like any other GET,
+     * but a response that fails while it's being read is not, since its first records may have been used already.
+     *
+     * @param url the page URL.
+     * @param errorMessage message prefix of exceptions.
+     * @return the reader of the response, which must be closed.
+     */
+    private BatchQueryReader openPage(String url, String errorMessage) {
+        ClientHttpResponse response = RETRY_POLICY.execute(HttpMethod.GET,
+            () -> authorized(header -> guard(url, () -> open(url, header))));
+        try {
+            return new BatchQueryReader(response, errorMessage);
+        } catch (IOException | RuntimeException e) {
+            response.close();
+            throw new IllegalStateException(errorMessage + " Read response failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Send a GET request and return the response with its body unread. Errors are converted by the error handler of
+     * RestTemplate, as for any other request.
+     *
+     * @param url the full request URL.
+     * @param header the http header.
+     * @return the response, which must be closed.
+     */
+    private ClientHttpResponse open(String url, HttpHeaders header) {
+        try {
+            ClientHttpRequest request = REST_TEMPLATE.getRequestFactory()
+                .createRequest(REST_TEMPLATE.getUriTemplateHandler().expand(url), HttpMethod.GET);
+            request.getHeaders().putAll(header);
+            ClientHttpResponse response = request.execute();
+            boolean succeeded = false;
+            try {
+                ResponseErrorHandler errorHandler = REST_TEMPLATE.getErrorHandler();
+                if (errorHandler.hasError(response)) {
+                    errorHandler.handleError(response);
+                }
+                succeeded = true;
+                return response;
+            } finally {
+                if (!succeeded) {
+                    response.close();
+                }
+            }
+        } catch (IOException e) {
+            throw new ResourceAccessException("I/O error on GET request for \"" + url + "\": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Send a request to wallet server, retrying transient failures if the method is idempotent.
+     *
+     * @param url the full request URL.
+     * @param method the http method.
+     * @param body JSON body, or null if the request has no body.
+     * @return the response body.
+     */
+    private JSONObject exchange(String url, HttpMethod method, String body) {
+        // Parse the body once, so an invalid body fails before anything is sent.
+        JSONObject request = JSON_CODEC.parseObject(body);
+        return RETRY_POLICY.execute(method, () -> send(url, method, request, JSONObject.class));
+    }
+
+    /**
+     * Send a request to wallet server, retrying transient failures if the method is idempotent.
+     *
+     * @param url the full request URL.
+     * @param method the http method.
+     * @param body request body converted by RestTemplate, e.g. JSON bytes, or null if the request has no body.
+     * @param responseType type of the response body, e.g. byte[] for the raw JSON bytes.
+     * @return the response body.
+     */
+    private <T> T exchange(String url, HttpMethod method, Object body, Class<T> responseType) {
+        return RETRY_POLICY.execute(method, () -> send(url, method, body, responseType));
+    }
+
+    /**
+     * Get the ID attribute of the objects a URL creates: serialNumber for instances and passStyleIdentifier for
+     * models.
+     *
+     * @param url the create URL, e.g. ".../v1/loyalty/instance".
+     * @return the ID attribute, or null if the request is not a create.
+     */
+    private static String createdIdField(String url) {
+        if (url.endsWith("/instance")) {
+            return "serialNumber";
+        }
+        if (url.endsWith("/model")) {
+            return "passStyleIdentifier";
+        }
+        return null;
+    }
+
+    /**
+     * Create a lookup for a model or instance create request. The object is looked up by the ID in the request body.
+     *
+     * @param url the create URL, e.g. ".../v1/loyalty/instance".
+     * @param id the ID of the created object, or null if the request is not a create.
+     * @param responseType type of the response body.
+     * @return a lookup returning the object, or null if it does not exist. Null if there is no ID.
+     */
+    private <T> Supplier<T> createLookup(String url, String id, Class<T> responseType) {
+        if (id == null || id.isEmpty()) {
+            return null;
+        }
+        return () -> {
+            try {
+                return send(url + "/" + id, HttpMethod.GET, null, responseType);
+            } catch (HttpClientErrorException e) {
+                if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
+                    return null;
+                }
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * Create a lookup for a create request whose body is held as bytes. The body is parsed for the ID of the created
+     * object only when the lookup runs, after a failed attempt.
+     *
+     * @param url the create URL, e.g. ".../v1/loyalty/instance".
+     * @param body the create request body.
+     * @return a lookup returning the object, or null if it does not exist. Null if the request is not a create.
+     */
+    private Supplier<JSONObject> createLazyLookup(String url, byte[] body) {
+        String idField = createdIdField(url);
+        if (idField == null) {
+            return null;
+        }
+        return () -> {
+            JSONObject object = JSON_CODEC.parseObject(body);
+            Supplier<JSONObject> lookup = createLookup(url, object.getString(idField), JSONObject.class);
+            if (lookup == null) {
+                throw new IllegalStateException("The created object has no " + idField + ".");
+            }
+            return lookup.get();
+        };
+    }
+
+    /**
+     * Get the remaining bytes of a buffer without changing its position. The backing array is used as it is if it
+     * holds exactly these bytes.
+     *
+     * @param buffer the buffer.
+     * @return the bytes.
+     */
+    private static byte[] toByteArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+            && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Send a request to wallet server once. Every API call goes through this method.
+     *
+     * @param url the full request URL.
+     * @param method the http method.
+     * @param body request body, or null if the request has no body. JSON trees are written by the json.codec codec,
+     *     other bodies are converted by RestTemplate.
+     * @param responseType type of the response body. JSONObject responses are read by the json.codec codec.
+     * @return the response body.
+     */
+    private <T> T send(String url, HttpMethod method, Object body, Class<T> responseType) {
+        Object wireBody = body instanceof JSON ? JSON_CODEC.toJsonBytes(body) : body;
+        Class<?> wireType = responseType == JSONObject.class ? byte[].class : responseType;
+
+        Object responseBody = authorized(header -> {
+            HttpEntity<Object> entity =
+                wireBody == null ? new HttpEntity<>(header) : new HttpEntity<>(wireBody, header);
+            return guard(url, () -> REST_TEMPLATE.exchange(url, method, entity, wireType).getBody());
+        });
+        if (wireType != responseType) {
+            return responseType.cast(responseBody == null ? null : JSON_CODEC.parseObject((byte[]) responseBody));
+        }
+        return responseType.cast(responseBody);
+    }
+
+    /**
+     * Make a call to wallet server under the circuit breaker and rate limiter of its URL, and record its latency. The
+     * latency of a streamed response is the time until its headers are received.
+     *
+     * @param url the full request URL.
+     * @param call the call.
+     * @return the result of the call.
+     */
+    private <T> T guard(String url, Supplier<T> call) {
+        // Fail fast if the server or endpoint is degraded.
+        CircuitBreaker circuitBreaker = WalletCircuitBreakers.get(url);
+        circuitBreaker.acquirePermission();
+        long startNanos = System.nanoTime();
+        // Wait for a permit of the endpoint family, and adapt its rate to the server's throttling.
+        AdaptiveRateLimiter rateLimiter = WalletRateLimiters.get(EndpointFamily.of(url));
+        try {
+            rateLimiter.acquire();
+            startNanos = System.nanoTime();
+            T result = call.get();
+            long durationNanos = System.nanoTime() - startNanos;
+            circuitBreaker.onSuccess(durationNanos);
+            region.recordLatency(url, durationNanos);
+            rateLimiter.onSuccess();
+            return result;
+        } catch (RuntimeException e) {
+            long durationNanos = System.nanoTime() - startNanos;
+            circuitBreaker.onError(e, durationNanos);
+            if (CircuitBreaker.isServerFailure(e)) {
+                region.recordFailure(url);
+            } else {
+                region.recordLatency(url, durationNanos);
+            }
+            if (e instanceof HttpStatusCodeException
+                && WalletRateLimiters.isThrottled(((HttpStatusCodeException) e).getRawStatusCode())) {
+                rateLimiter.onThrottle();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Make a call with the http header of a valid access token. If wallet server rejects the token, e.g. because it was
+     * revoked before it expired, the token is dropped and the call is made once more with a new one.
+     *
+     * @param call the call, given the http header.
+     * @return the result of the call.
+     */
+    private <T> T authorized(Function<HttpHeaders, T> call) {
+        // Construct the http header for each request, so the token stays valid during long jobs.
+        HttpHeaders header = constructHttpHeaders();
+        try {
+            return call.apply(header);
+        } catch (HttpClientErrorException e) {
+            if (e.getStatusCode() != HttpStatus.UNAUTHORIZED) {
+                throw e;
+            }
+            String rejectedToken = header.getFirst("Authorization").substring(AUTHORIZATION_HEAD.length());
+            region.getTokenManager().invalidate(rejectedToken);
+            return call.apply(constructHttpHeaders());
+        }
     }
 
     private HttpHeaders constructHttpHeaders() {
         HttpHeaders header = new HttpHeaders();
         // Get access token.
         try {
-            String clientId = ConfigUtil.instants().getValue("gw.appid");
-            String clientSecret = ConfigUtil.instants().getValue("gw.appid.secret");
-            String accessToken = NetworkService.getToken(clientId, clientSecret);
+            // The token is cached and refreshed in the background, so this rarely costs a round trip.
+            String accessToken = region.getTokenManager().getAccessToken();
             String authorization = AUTHORIZATION_HEAD.concat(accessToken);
             header.set("Content-Type", "application/json;charset=utf-8");
             header.set("Authorization", authorization);
@@ -281,4 +947,17 @@ public class ServerApiServiceImpl implements ServerApiService {
         }
         return header;
     }
+
+    /**
+     * Receives the models and instances returned by writes: creates, updates, added messages and linked offers.
+     */
+    public interface WriteListener {
+        /**
+         * Accept a written model or instance. It's called on the writing thread and must not modify the object.
+         *
+         * @param urlSegment model or instance URL segment of the write.
+         * @param object the model or instance returned by wallet server.
+         */
+        void onWrite(String urlSegment, JSONObject object);
+    }
 }
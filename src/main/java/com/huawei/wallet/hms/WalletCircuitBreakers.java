@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import com.huawei.wallet.nsp.CircuitBreaker;
+import com.huawei.wallet.util.ConfigUtil;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Circuit breakers of wallet server calls, one per base URL and endpoint family, so a degraded regional server or a
+ * degraded API fails fast without affecting the others. They are configured by the "circuitBreaker.*" values in
+ * release.config.properties.
+ *
+ * @since 2020-11-19
+ */
+public final class WalletCircuitBreakers {
+    private static final ConcurrentMap<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    private static final List<CircuitBreaker.StateListener> STATE_LISTENERS = new CopyOnWriteArrayList<>();
+
+    private static final String API_PATH = "/v1/";
+
+    private WalletCircuitBreakers() {
+    }
+
+    /**
+     * Get the circuit breaker of a request URL.
+     *
+     * @param url the full request URL.
+     * @return the circuit breaker of the URL's base URL and endpoint family.
+     */
+    public static CircuitBreaker get(String url) {
+        return get(baseUrlOf(url), EndpointFamily.of(url));
+    }
+
+    /**
+     * Get the circuit breaker of a base URL and endpoint family.
+     *
+     * @param baseUrl the base URL, e.g. "https://{walletkit_server_url}/hmspass".
+     * @param family the endpoint family.
+     * @return the circuit breaker.
+     */
+    public static CircuitBreaker get(String baseUrl, EndpointFamily family) {
+        return BREAKERS.computeIfAbsent(baseUrl + " " + family.getConfigName(), WalletCircuitBreakers::create);
+    }
+
+    /**
+     * Return the states of all circuit breakers, e.g. for a health check.
+     *
+     * @return states by circuit breaker name, i.e. base URL and endpoint family.
+     */
+    public static Map<String, CircuitBreaker.State> getStates() {
+        Map<String, CircuitBreaker.State> states = new TreeMap<>();
+        BREAKERS.forEach((name, breaker) -> states.put(name, breaker.getState()));
+        return states;
+    }
+
+    /**
+     * Check if no circuit breaker is open.
+     *
+     * @return true if all wallet server endpoints are usable.
+     */
+    public static boolean isHealthy() {
+        return BREAKERS.values().stream().noneMatch(breaker -> breaker.getState() == CircuitBreaker.State.OPEN);
+    }
+
+    /**
+     * Register a listener of the state transitions of all circuit breakers, including those created later.
+     *
+     * @param listener the listener.
+     */
+    public static synchronized void addStateListener(CircuitBreaker.StateListener listener) {
+        STATE_LISTENERS.add(listener);
+        BREAKERS.values().forEach(breaker -> breaker.addStateListener(listener));
+    }
+
+    /**
+     * Get the base URL of a request URL, i.e. the part before "/v1/".
+     */
+    private static String baseUrlOf(String url) {
+        int apiStart = url.indexOf(API_PATH);
+        return apiStart < 0 ? url : url.substring(0, apiStart);
+    }
+
+    private static CircuitBreaker create(String name) {
+        ConfigUtil config = ConfigUtil.instants();
+        CircuitBreaker breaker = new CircuitBreaker(name, config.getIntValue("circuitBreaker.windowSize", 50),
+            config.getIntValue("circuitBreaker.minimumCalls", 20),
+            config.getDoubleValue("circuitBreaker.failureRateThreshold", 50),
+            config.getDoubleValue("circuitBreaker.slowCallRateThreshold", 80),
+            config.getIntValue("circuitBreaker.slowCallMillis", 5000),
+            config.getIntValue("circuitBreaker.openMillis", 30000),
+            config.getIntValue("circuitBreaker.halfOpenCalls", 3));
+        synchronized (WalletCircuitBreakers.class) {
+            STATE_LISTENERS.forEach(breaker::addStateListener);
+        }
+        return breaker;
+    }
+}
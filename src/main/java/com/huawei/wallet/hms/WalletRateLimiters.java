@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import com.huawei.wallet.nsp.AdaptiveRateLimiter;
+import com.huawei.wallet.util.ConfigUtil;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Client-side rate limiters of wallet server endpoint families, shared by the blocking and non-blocking services.
+ * They are configured by the "rateLimit.*" values in release.config.properties.
+ *
+ * @since 2020-11-16
+ */
+public final class WalletRateLimiters {
+    private static final Map<EndpointFamily, AdaptiveRateLimiter> LIMITERS = new EnumMap<>(EndpointFamily.class);
+
+    static {
+        ConfigUtil config = ConfigUtil.instants();
+        double additiveIncrease = config.getDoubleValue("rateLimit.additiveIncrease", 1);
+        double multiplicativeDecrease = config.getDoubleValue("rateLimit.multiplicativeDecrease", 0.5);
+        long adjustIntervalMillis = config.getIntValue("rateLimit.adjustIntervalMillis", 1000);
+        for (EndpointFamily family : EndpointFamily.values()) {
+            String prefix = "rateLimit." + family.getConfigName();
+            // No limit unless a rate is configured for the family.
+            double maxRate = config.getDoubleValue(prefix + ".permitsPerSecond", 0);
+            double minRate = config.getDoubleValue(prefix + ".minPermitsPerSecond", 1);
+            LIMITERS.put(family, new AdaptiveRateLimiter(maxRate, minRate, additiveIncrease, multiplicativeDecrease,
+                adjustIntervalMillis));
+        }
+    }
+
+    private WalletRateLimiters() {
+    }
+
+    /**
+     * Get the rate limiter of an endpoint family.
+     *
+     * @param family the endpoint family.
+     * @return the rate limiter.
+     */
+    public static AdaptiveRateLimiter get(EndpointFamily family) {
+        return LIMITERS.get(family);
+    }
+
+    /**
+     * Check if a response status means the server is throttling.
+     *
+     * @param statusCode HTTP status code.
+     * @return true for 429 Too Many Requests and 503 Service Unavailable.
+     */
+    public static boolean isThrottled(int statusCode) {
+        return statusCode == 429 || statusCode == 503;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import com.huawei.wallet.nsp.CircuitBreaker;
+import com.huawei.wallet.nsp.TokenManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A wallet server region, e.g. drcn, dra, dre or drru, with its token endpoint and one or more candidate base URLs.
+ * <p>
+ * The region tracks an exponentially weighted moving average of the response time of each base URL and routes
+ * requests to the fastest one whose circuit breaker is not open. A base URL without samples is tried first.
+ * <p>
+ * An average that receives no samples loses weight: it halves every half-life, so a base URL that was slow or failed
+ * once is tried again after a while instead of being left out for good.
+ *
+ * @since 2020-11-20
+ */
+public final class WalletRegion {
+    private final String name;
+
+    private final List<String> baseUrls;
+
+    private final String tokenUrl;
+
+    private final double latencyAlpha;
+
+    private final double failurePenaltyMillis;
+
+    private final long halfLifeNanos;
+
+    /**
+     * Average response time of each base URL in milliseconds at its last sample, or -1 if there is no sample yet.
+     */
+    private final double[] latencyMillis;
+
+    /**
+     * Time of the last sample of each base URL, from System.nanoTime().
+     */
+    private final long[] sampledAtNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param name region name.
+     * @param baseUrls candidate base URLs, e.g. "https://{walletkit_server_url}/hmspass".
+     * @param tokenUrl token endpoint URL of the region.
+     * @param latencyAlpha weight of a new response time in the average, between 0 and 1.
+     * @param failurePenaltyMillis response time recorded for a failed request.
+     */
+    public WalletRegion(String name, List<String> baseUrls, String tokenUrl, double latencyAlpha,
+        double failurePenaltyMillis) {
+        this(name, baseUrls, tokenUrl, latencyAlpha, failurePenaltyMillis, TimeUnit.MINUTES.toMillis(1));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param name region name.
+     * @param baseUrls candidate base URLs, e.g. "https://{walletkit_server_url}/hmspass".
+     * @param tokenUrl token endpoint URL of the region.
+     * @param latencyAlpha weight of a new response time in the average, between 0 and 1.
+     * @param failurePenaltyMillis response time recorded for a failed request.
+     * @param halfLifeMillis time without samples after which an average response time counts half.
+     */
+    public WalletRegion(String name, List<String> baseUrls, String tokenUrl, double latencyAlpha,
+        double failurePenaltyMillis, long halfLifeMillis) {
+        if (baseUrls.isEmpty() || halfLifeMillis <= 0) {
+            throw new IllegalArgumentException("Region " + name + " has no base URL or an invalid half-life.");
+        }
+        this.name = name;
+        this.baseUrls = Collections.unmodifiableList(new ArrayList<>(baseUrls));
+        this.tokenUrl = tokenUrl;
+        this.latencyAlpha = latencyAlpha;
+        this.failurePenaltyMillis = failurePenaltyMillis;
+        this.halfLifeNanos = TimeUnit.MILLISECONDS.toNanos(halfLifeMillis);
+        this.latencyMillis = new double[baseUrls.size()];
+        this.sampledAtNanos = new long[baseUrls.size()];
+        Arrays.fill(latencyMillis, -1);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getBaseUrls() {
+        return baseUrls;
+    }
+
+    /**
+     * Get the token manager of the region's token endpoint.
+     *
+     * @return the token manager.
+     */
+    public TokenManager getTokenManager() {
+        return TokenManager.getInstance(tokenUrl);
+    }
+
+    /**
+     * Select the base URL for a request.
+     *
+     * @param family endpoint family of the request.
+     * @return the base URL with the lowest decayed average response time whose circuit breaker is not open. If all
+     * circuit breakers are open, the base URL with the lowest decayed average response time.
+     */
+    public String selectBaseUrl(EndpointFamily family) {
+        if (baseUrls.size() == 1) {
+            return baseUrls.get(0);
+        }
+        int best = -1;
+        int bestAvailable = -1;
+        double[] decayed = new double[baseUrls.size()];
+        long now = System.nanoTime();
+        synchronized (latencyMillis) {
+            for (int i = 0; i < baseUrls.size(); i++) {
+                decayed[i] = decayedLatencyMillis(i, now);
+            }
+        }
+        for (int i = 0; i < baseUrls.size(); i++) {
+            if (best < 0 || decayed[i] < decayed[best]) {
+                best = i;
+            }
+            boolean available =
+                WalletCircuitBreakers.get(baseUrls.get(i), family).getState() != CircuitBreaker.State.OPEN;
+            if (available && (bestAvailable < 0 || decayed[i] < decayed[bestAvailable])) {
+                bestAvailable = i;
+            }
+        }
+        return baseUrls.get(bestAvailable >= 0 ? bestAvailable : best);
+    }
+
+    /**
+     * Record the response time of a request.
+     *
+     * @param url the full request URL.
+     * @param durationNanos the response time.
+     */
+    public void recordLatency(String url, long durationNanos) {
+        record(url, durationNanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+     * Record a request that failed because of the server or the network.
+     *
+     * @param url the full request URL.
+     */
+    public void recordFailure(String url) {
+        record(url, failurePenaltyMillis);
+    }
+
+    /**
+     * Return the average response time of each base URL as of its last sample, without decay.
+     *
+     * @return milliseconds by base URL, -1 for a base URL without samples.
+     */
+    public Map<String, Double> getLatencyMillis() {
+        Map<String, Double> result = new LinkedHashMap<>();
+        synchronized (latencyMillis) {
+            for (int i = 0; i < baseUrls.size(); i++) {
+                result.put(baseUrls.get(i), latencyMillis[i]);
+            }
+        }
+        return result;
+    }
+
+    private void record(String url, double millis) {
+        for (int i = 0; i < baseUrls.size(); i++) {
+            if (url.startsWith(baseUrls.get(i))) {
+                synchronized (latencyMillis) {
+                    long now = System.nanoTime();
+                    double previous = decayedLatencyMillis(i, now);
+                    latencyMillis[i] = previous < 0 ? millis : latencyAlpha * millis + (1 - latencyAlpha) * previous;
+                    sampledAtNanos[i] = now;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Return the average response time of a base URL, halved for every half-life since its last sample. Must be
+     * called holding the latencyMillis lock.
+     */
+    private double decayedLatencyMillis(int index, long now) {
+        if (latencyMillis[index] < 0) {
+            return -1;
+        }
+        return latencyMillis[index] * Math.pow(0.5, (now - sampledAtNanos[index]) / (double) halfLifeNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "WalletRegion{name=" + name + ", latencyMillis=" + getLatencyMillis() + "}";
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import com.huawei.wallet.nsp.HttpTransport;
+import com.huawei.wallet.util.ConfigUtil;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wallet server regions configured in release.config.properties. Every region is served by the same process over the
+ * shared connection pool.
+ * <p>
+ * "regions" lists the region names. For each region, "region.{name}.walletServerBaseUrl" holds one or more
+ * comma-separated base URLs and "region.{name}.tokenUrl" its token endpoint, which defaults to gw.tokenUrl. The default
+ * region is "defaultRegion" if set, otherwise a region made of walletServerBaseUrl and gw.tokenUrl.
+ *
+ * @since 2020-11-20
+ */
+public final class WalletRegions {
+    private static final String DEFAULT_REGION_NAME = "default";
+
+    private static final Map<String, WalletRegion> REGIONS = new LinkedHashMap<>();
+
+    private static final WalletRegion DEFAULT_REGION;
+
+    static {
+        ConfigUtil config = ConfigUtil.instants();
+        String names = config.getValue("regions");
+        if (names != null) {
+            for (String name : names.split(",")) {
+                if (!name.trim().isEmpty()) {
+                    String prefix = "region." + name.trim();
+                    REGIONS.put(name.trim(), createRegion(name.trim(), config.getValue(prefix + ".walletServerBaseUrl"),
+                        config.getValue(prefix + ".tokenUrl")));
+                }
+            }
+        }
+        String defaultRegion = config.getValue("defaultRegion");
+        if (defaultRegion != null && !defaultRegion.isEmpty()) {
+            DEFAULT_REGION = get(defaultRegion);
+        } else {
+            DEFAULT_REGION = createRegion(DEFAULT_REGION_NAME, config.getValue("walletServerBaseUrl"), null);
+        }
+    }
+
+    private WalletRegions() {
+    }
+
+    /**
+     * Get a configured region.
+     *
+     * @param name region name, e.g. "dre".
+     * @return the region.
+     */
+    public static WalletRegion get(String name) {
+        WalletRegion region = REGIONS.get(name);
+        if (region == null) {
+            throw new IllegalArgumentException("Region " + name + " is not configured.");
+        }
+        return region;
+    }
+
+    public static WalletRegion getDefault() {
+        return DEFAULT_REGION;
+    }
+
+    /**
+     * Return all configured regions.
+     *
+     * @return regions by name.
+     */
+    public static Map<String, WalletRegion> getAll() {
+        return Collections.unmodifiableMap(REGIONS);
+    }
+
+    /**
+     * Open a pooled connection to every base URL of every region, so first requests skip the TCP and TLS handshakes.
+     * The response times are recorded as first latency samples, and failures as failed requests.
+     *
+     * @return the failures by base URL, empty if every base URL answered.
+     */
+    public static Map<String, Exception> warmUp() {
+        Map<String, Exception> failures = new HashMap<>();
+        List<WalletRegion> regions = new ArrayList<>(REGIONS.values());
+        if (!regions.contains(DEFAULT_REGION)) {
+            regions.add(DEFAULT_REGION);
+        }
+        for (WalletRegion region : regions) {
+            for (String baseUrl : region.getBaseUrls()) {
+                long start = System.nanoTime();
+                try (CloseableHttpResponse response = HttpTransport.getHttpClient().execute(new HttpHead(baseUrl))) {
+                    // Consume the response so the connection is returned to the pool.
+                    EntityUtils.consume(response.getEntity());
+                    region.recordLatency(baseUrl, System.nanoTime() - start);
+                } catch (IOException | RuntimeException e) {
+                    region.recordFailure(baseUrl);
+                    failures.put(baseUrl, e);
+                }
+            }
+        }
+        return failures;
+    }
+
+    private static WalletRegion createRegion(String name, String baseUrls, String tokenUrl) {
+        ConfigUtil config = ConfigUtil.instants();
+        List<String> urls = new ArrayList<>();
+        if (baseUrls != null) {
+            for (String url : baseUrls.split(",")) {
+                if (!url.trim().isEmpty()) {
+                    urls.add(url.trim());
+                }
+            }
+        }
+        return new WalletRegion(name, urls, tokenUrl == null ? config.getValue("gw.tokenUrl") : tokenUrl,
+            config.getDoubleValue("region.latencyAlpha", 0.3), config.getDoubleValue("region.failurePenaltyMillis",
+            config.getIntValue("http.readTimeoutMillis", 20000)), config.getIntValue("region.latencyHalfLifeMillis",
+            60000));
+    }
+}
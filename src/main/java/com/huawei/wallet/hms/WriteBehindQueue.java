@@ -0,0 +1,510 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import com.huawei.wallet.nsp.CircuitBreakerOpenException;
+import com.huawei.wallet.nsp.RetryPolicy;
+import com.huawei.wallet.util.ConfigUtil;
+import com.huawei.wallet.util.MappedJournal;
+import com.huawei.wallet.util.json.JsonCodec;
+import com.huawei.wallet.util.json.JsonCodecs;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends create, update and message operations to wallet server in the background.
+ * <p>
+ * An operation is appended to a {@link MappedJournal} and the producer returns at once. Operations are dispatched by
+ * a fixed number of lanes, the operations of one model or instance ID always going to the same lane, so they are sent
+ * in the order they were enqueued. An operation is marked complete in the journal once it has been sent or has
+ * failed for good; operations still pending when the process stops are replayed when the queue is opened again, so
+ * an operation may be sent more than once.
+ * <p>
+ * Requests are retried by the retry policy of the service only. An operation still failing transiently after that,
+ * e.g. during an outage, stays at the head of its lane, and the lane resumes after a delay without holding a thread.
+ * Other failures are reported to the failure listener.
+ *
+ * @since 2020-12-01
+ */
+public class WriteBehindQueue implements AutoCloseable {
+    /**
+     * Reads and writes the JSON bodies and journal entries, selected by json.codec in release.config.properties.
+     */
+    private static final JsonCodec JSON_CODEC = JsonCodecs.getDefault();
+
+    private final ServerApiService serverApiService;
+
+    private final MappedJournal journal;
+
+    private final ScheduledExecutorService executor;
+
+    private final Lane[] lanes;
+
+    /**
+     * Number of lanes with operations to send. Close waits for it to drop to 0.
+     */
+    private final AtomicInteger busyLanes = new AtomicInteger();
+
+    private final long retryDelayMillis;
+
+    private final long closeTimeoutMillis;
+
+    private final FailureListener failureListener;
+
+    private volatile boolean closed;
+
+    private final AtomicLong enqueued = new AtomicLong();
+
+    private final AtomicLong replayed = new AtomicLong();
+
+    private final AtomicLong dispatched = new AtomicLong();
+
+    private final AtomicLong retried = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Open a queue and replay the operations still pending in its journal.
+     *
+     * @param serverApiService the service sending the operations.
+     * @param journalDirectory directory of the journal files.
+     * @param segmentSize size of a journal file in bytes.
+     * @param sync true to force every journal write to disk, so operations also survive a crash of the system.
+     * @param dispatchThreads number of lanes sending operations.
+     * @param retryDelayMillis delay before a lane sends an operation failing transiently again.
+     * @param closeTimeoutMillis maximum time close waits for queued operations.
+     * @param failureListener listener of operations that failed for good.
+     * @throws IOException if the journal can't be opened.
+     */
+    public WriteBehindQueue(ServerApiService serverApiService, Path journalDirectory, int segmentSize, boolean sync,
+        int dispatchThreads, long retryDelayMillis, long closeTimeoutMillis, FailureListener failureListener)
+        throws IOException {
+        this.serverApiService = serverApiService;
+        this.journal = new MappedJournal(journalDirectory, segmentSize, sync);
+        this.retryDelayMillis = retryDelayMillis;
+        this.closeTimeoutMillis = closeTimeoutMillis;
+        this.failureListener = failureListener;
+        this.executor = Executors.newScheduledThreadPool(dispatchThreads, runnable -> {
+            Thread thread = new Thread(runnable, "wallet-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.lanes = new Lane[dispatchThreads];
+        for (int i = 0; i < dispatchThreads; i++) {
+            lanes[i] = new Lane();
+        }
+        for (MappedJournal.Record record : journal.getRecovered()) {
+            replayed.incrementAndGet();
+            dispatch(record, Entry.parse(record.getPayload()));
+        }
+    }
+
+    /**
+     * Open a queue from the "writeBehind.*" values in release.config.properties.
+     *
+     * @param serverApiService the service sending the operations.
+     * @param failureListener listener of operations that failed for good.
+     * @return the queue.
+     * @throws IOException if the journal can't be opened.
+     */
+    public static WriteBehindQueue fromConfig(ServerApiService serverApiService, FailureListener failureListener)
+        throws IOException {
+        ConfigUtil config = ConfigUtil.instants();
+        String directory = config.getValue("writeBehind.journalDirectory");
+        return new WriteBehindQueue(serverApiService, Paths.get(directory == null ? "wallet-journal" : directory),
+            config.getIntValue("writeBehind.segmentSize", 16 * 1024 * 1024),
+            Boolean.parseBoolean(config.getValue("writeBehind.sync")),
+            config.getIntValue("writeBehind.dispatchThreads", 4),
+            config.getIntValue("writeBehind.retryDelayMillis", 1000),
+            config.getIntValue("writeBehind.closeTimeoutMillis", 30000), failureListener);
+    }
+
+    /**
+     * Queue the creation of a model or instance.
+     *
+     * @param urlSegment request URL segment, e.g. "/v1/loyalty/instance".
+     * @param body JSON-type HwWalletObject.
+     */
+    public void create(String urlSegment, String body) {
+        JSONObject object = JSON_CODEC.parseObject(body);
+        String id = object.getString("serialNumber");
+        if (id == null) {
+            id = object.getString("passStyleIdentifier");
+        }
+        enqueue(new Entry(Operation.CREATE, urlSegment, id, body));
+    }
+
+    /**
+     * Queue the overwrite of a model or instance.
+     *
+     * @param urlSegment request URL segment.
+     * @param id model/instance ID.
+     * @param body JSON-type HwWalletObject.
+     */
+    public void fullUpdate(String urlSegment, String id, String body) {
+        enqueue(new Entry(Operation.FULL_UPDATE, urlSegment, id, body));
+    }
+
+    /**
+     * Queue the update of a model or instance.
+     *
+     * @param urlSegment request URL segment.
+     * @param id model/instance ID.
+     * @param body JSON-type partial HwWalletObject.
+     */
+    public void partialUpdate(String urlSegment, String id, String body) {
+        enqueue(new Entry(Operation.PARTIAL_UPDATE, urlSegment, id, body));
+    }
+
+    /**
+     * Queue messages added to a model or instance.
+     *
+     * @param urlSegment request URL segment.
+     * @param id model/instance ID.
+     * @param body JSON-type messageList object.
+     */
+    public void addMessage(String urlSegment, String id, String body) {
+        enqueue(new Entry(Operation.ADD_MESSAGE, urlSegment, id, body));
+    }
+
+    /**
+     * Return the number of operations not complete yet, including operations replayed from the journal.
+     *
+     * @return the count.
+     */
+    public int getPending() {
+        return journal.getPendingCount();
+    }
+
+    /**
+     * Return the number of operations enqueued since the queue was opened.
+     *
+     * @return the count.
+     */
+    public long getEnqueued() {
+        return enqueued.get();
+    }
+
+    /**
+     * Return the number of operations replayed from the journal when the queue was opened.
+     *
+     * @return the count.
+     */
+    public long getReplayed() {
+        return replayed.get();
+    }
+
+    /**
+     * Return the number of operations sent successfully.
+     *
+     * @return the count.
+     */
+    public long getDispatched() {
+        return dispatched.get();
+    }
+
+    /**
+     * Return the number of times an operation was sent again after a transient failure.
+     *
+     * @return the count.
+     */
+    public long getRetried() {
+        return retried.get();
+    }
+
+    /**
+     * Return the number of operations that failed for good.
+     *
+     * @return the count.
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Stop accepting operations and wait for queued operations up to the close timeout. Operations not sent by then,
+     * or failing transiently, stay in the journal and are replayed when the queue is opened again.
+     *
+     * @throws IllegalStateException if the journal can't be closed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(closeTimeoutMillis);
+        try {
+            synchronized (busyLanes) {
+                long remaining;
+                while (busyLanes.get() > 0 && (remaining = deadline - System.nanoTime()) > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(busyLanes, remaining);
+                }
+            }
+            executor.shutdownNow();
+            executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+            try {
+                journal.close();
+            } catch (IOException e) {
+                throw new IllegalStateException("Close write-behind journal failed.", e);
+            }
+        }
+    }
+
+    private void enqueue(Entry entry) {
+        if (entry.id == null || entry.id.isEmpty()) {
+            throw new IllegalArgumentException("The model or instance ID is missing.");
+        }
+        if (closed) {
+            throw new IllegalStateException("The write-behind queue is closed.");
+        }
+        MappedJournal.Record record;
+        try {
+            record = journal.append(entry.toBytes());
+        } catch (IOException e) {
+            throw new IllegalStateException("Append to write-behind journal failed.", e);
+        }
+        enqueued.incrementAndGet();
+        dispatch(record, entry);
+    }
+
+    private void dispatch(MappedJournal.Record record, Entry entry) {
+        lanes[(entry.id.hashCode() & Integer.MAX_VALUE) % lanes.length].add(new Task(record, entry));
+    }
+
+    /**
+     * Send an operation once. The service applies its retry policy.
+     *
+     * @return true if the operation is complete, false if it failed transiently and must be sent again.
+     */
+    private boolean send(Entry entry) {
+        try {
+            entry.operation.send(serverApiService, entry);
+            dispatched.incrementAndGet();
+            return true;
+        } catch (RuntimeException e) {
+            if (RetryPolicy.isTransient(e) || e instanceof CircuitBreakerOpenException) {
+                return false;
+            }
+            failed.incrementAndGet();
+            if (failureListener != null) {
+                failureListener.onFailure(entry.operation, entry.urlSegment, entry.id, entry.body, e);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Operations of some IDs, sent one at a time in order by a task of the shared executor.
+     */
+    private final class Lane {
+        /**
+         * Operations not complete yet, the one being sent first. Guarded by this.
+         */
+        private final Deque<Task> tasks = new ArrayDeque<>();
+
+        /**
+         * Whether a drain is scheduled or running. Guarded by this.
+         */
+        private boolean draining;
+
+        private void add(Task task) {
+            synchronized (this) {
+                tasks.add(task);
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            busyLanes.incrementAndGet();
+            schedule(0L);
+        }
+
+        private void schedule(long delayMillis) {
+            try {
+                executor.schedule(this::drain, delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // The queue is closed. The operations are replayed when the queue is opened again.
+                stop();
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                Task task;
+                synchronized (this) {
+                    task = tasks.peek();
+                }
+                if (task == null || Thread.currentThread().isInterrupted()) {
+                    stop();
+                    return;
+                }
+                if (!send(task.entry)) {
+                    // Once the executor is shut down, the operation and those after it are left in the journal.
+                    retried.incrementAndGet();
+                    schedule(retryDelayMillis);
+                    return;
+                }
+                journal.complete(task.record);
+                synchronized (this) {
+                    tasks.poll();
+                }
+            }
+        }
+
+        private void stop() {
+            synchronized (this) {
+                if (!tasks.isEmpty() && !closed) {
+                    // An operation was added after the last check.
+                    schedule(0L);
+                    return;
+                }
+                draining = false;
+            }
+            if (busyLanes.decrementAndGet() == 0) {
+                synchronized (busyLanes) {
+                    busyLanes.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * An operation and its journal record.
+     */
+    private static final class Task {
+        private final MappedJournal.Record record;
+
+        private final Entry entry;
+
+        private Task(MappedJournal.Record record, Entry entry) {
+            this.record = record;
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * Operations of the queue.
+     */
+    public enum Operation {
+        /**
+         * Create a model or instance.
+         */
+        CREATE {
+            @Override
+            void send(ServerApiService service, Entry entry) {
+                service.postToWalletServer(entry.urlSegment, entry.body);
+            }
+        },
+
+        /**
+         * Overwrite a model or instance.
+         */
+        FULL_UPDATE {
+            @Override
+            void send(ServerApiService service, Entry entry) {
+                service.fullUpdateHwWalletObject(entry.urlSegment, entry.id, entry.body);
+            }
+        },
+
+        /**
+         * Update a model or instance.
+         */
+        PARTIAL_UPDATE {
+            @Override
+            void send(ServerApiService service, Entry entry) {
+                service.partialUpdateHwWalletObject(entry.urlSegment, entry.id, entry.body);
+            }
+        },
+
+        /**
+         * Add messages to a model or instance.
+         */
+        ADD_MESSAGE {
+            @Override
+            void send(ServerApiService service, Entry entry) {
+                service.addMessageToHwWalletObject(entry.urlSegment, entry.id, entry.body);
+            }
+        };
+
+        abstract void send(ServerApiService service, Entry entry);
+    }
+
+    /**
+     * Listener of operations that failed for good.
+     */
+    public interface FailureListener {
+        /**
+         * Called when an operation failed with a non-transient error, or after its last attempt.
+         *
+         * @param operation the operation.
+         * @param urlSegment request URL segment.
+         * @param id model/instance ID.
+         * @param body JSON body.
+         * @param e the last error.
+         */
+        void onFailure(Operation operation, String urlSegment, String id, String body, RuntimeException e);
+    }
+
+    /**
+     * A queued operation, stored in the journal as JSON.
+     */
+    static final class Entry {
+        private final Operation operation;
+
+        private final String urlSegment;
+
+        private final String id;
+
+        private final String body;
+
+        private Entry(Operation operation, String urlSegment, String id, String body) {
+            this.operation = operation;
+            this.urlSegment = urlSegment;
+            this.id = id;
+            this.body = body;
+        }
+
+        private byte[] toBytes() {
+            JSONObject json = new JSONObject();
+            json.put("operation", operation.name());
+            json.put("urlSegment", urlSegment);
+            json.put("id", id);
+            json.put("body", body);
+            return JSON_CODEC.toJsonBytes(json);
+        }
+
+        private static Entry parse(byte[] bytes) {
+            JSONObject json = JSON_CODEC.parseObject(bytes);
+            return new Entry(Operation.valueOf(json.getString("operation")), json.getString("urlSegment"),
+                json.getString("id"), json.getString("body"));
+        }
+    }
+}
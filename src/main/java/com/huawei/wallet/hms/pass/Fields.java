@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms.pass;
+
+import java.util.List;
+
+/**
+ * The fields of a model or instance.
+ *
+ * @since 2020-12-04
+ */
+public class Fields extends PassElement {
+    private String countryCode;
+
+    private Status status;
+
+    private BarCode barCode;
+
+    private List<ValueField> commonFields;
+
+    private List<ValueField> appendFields;
+
+    private List<ValueField> messageList;
+
+    private List<ValueField> imageList;
+
+    private List<ValueField> timeList;
+
+    private List<ValueField> ticketInfoList;
+
+    private List<Localized> localized;
+
+    private List<Location> locationList;
+
+    public String getCountryCode() {
+        return countryCode;
+    }
+
+    public void setCountryCode(String countryCode) {
+        this.countryCode = countryCode;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public BarCode getBarCode() {
+        return barCode;
+    }
+
+    public void setBarCode(BarCode barCode) {
+        this.barCode = barCode;
+    }
+
+    public List<ValueField> getCommonFields() {
+        return commonFields;
+    }
+
+    public void setCommonFields(List<ValueField> commonFields) {
+        this.commonFields = commonFields;
+    }
+
+    public List<ValueField> getAppendFields() {
+        return appendFields;
+    }
+
+    public void setAppendFields(List<ValueField> appendFields) {
+        this.appendFields = appendFields;
+    }
+
+    public List<ValueField> getMessageList() {
+        return messageList;
+    }
+
+    public void setMessageList(List<ValueField> messageList) {
+        this.messageList = messageList;
+    }
+
+    public List<ValueField> getImageList() {
+        return imageList;
+    }
+
+    public void setImageList(List<ValueField> imageList) {
+        this.imageList = imageList;
+    }
+
+    public List<ValueField> getTimeList() {
+        return timeList;
+    }
+
+    public void setTimeList(List<ValueField> timeList) {
+        this.timeList = timeList;
+    }
+
+    public List<ValueField> getTicketInfoList() {
+        return ticketInfoList;
+    }
+
+    public void setTicketInfoList(List<ValueField> ticketInfoList) {
+        this.ticketInfoList = ticketInfoList;
+    }
+
+    public List<Localized> getLocalized() {
+        return localized;
+    }
+
+    public void setLocalized(List<Localized> localized) {
+        this.localized = localized;
+    }
+
+    public List<Location> getLocationList() {
+        return locationList;
+    }
+
+    public void setLocationList(List<Location> locationList) {
+        this.locationList = locationList;
+    }
+}
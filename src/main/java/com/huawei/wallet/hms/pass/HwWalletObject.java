@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms.pass;
+
+import com.huawei.wallet.util.json.JsonCodecs;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A model or instance, typed. Serialized by the json.codec codec with data binding of the class, so requests and
+ * responses don't go through a JSONObject tree. Attributes not declared by the classes are kept as other attributes,
+ * so a model or instance read, modified and written back keeps them.
+ *
+ * @since 2020-12-04
+ */
+public class HwWalletObject extends PassElement {
+    private String passVersion;
+
+    private String passTypeIdentifier;
+
+    private String passStyleIdentifier;
+
+    private String organizationName;
+
+    private String organizationPassId;
+
+    private String serialNumber;
+
+    private Fields fields;
+
+    private LinkDevicePass linkDevicePass;
+
+    public String getPassVersion() {
+        return passVersion;
+    }
+
+    public void setPassVersion(String passVersion) {
+        this.passVersion = passVersion;
+    }
+
+    public String getPassTypeIdentifier() {
+        return passTypeIdentifier;
+    }
+
+    public void setPassTypeIdentifier(String passTypeIdentifier) {
+        this.passTypeIdentifier = passTypeIdentifier;
+    }
+
+    public String getPassStyleIdentifier() {
+        return passStyleIdentifier;
+    }
+
+    public void setPassStyleIdentifier(String passStyleIdentifier) {
+        this.passStyleIdentifier = passStyleIdentifier;
+    }
+
+    public String getOrganizationName() {
+        return organizationName;
+    }
+
+    public void setOrganizationName(String organizationName) {
+        this.organizationName = organizationName;
+    }
+
+    public String getOrganizationPassId() {
+        return organizationPassId;
+    }
+
+    public void setOrganizationPassId(String organizationPassId) {
+        this.organizationPassId = organizationPassId;
+    }
+
+    public String getSerialNumber() {
+        return serialNumber;
+    }
+
+    public void setSerialNumber(String serialNumber) {
+        this.serialNumber = serialNumber;
+    }
+
+    public Fields getFields() {
+        return fields;
+    }
+
+    public void setFields(Fields fields) {
+        this.fields = fields;
+    }
+
+    public LinkDevicePass getLinkDevicePass() {
+        return linkDevicePass;
+    }
+
+    public void setLinkDevicePass(LinkDevicePass linkDevicePass) {
+        this.linkDevicePass = linkDevicePass;
+    }
+
+    /**
+     * Parse a model or instance from UTF-8 JSON bytes.
+     *
+     * @param json the JSON bytes.
+     * @return the model or instance.
+     */
+    public static HwWalletObject parse(byte[] json) {
+        return JsonCodecs.getDefault().parseObject(json, HwWalletObject.class);
+    }
+
+    /**
+     * Parse a model or instance from JSON text, e.g. a file of src/test/resources/data.
+     *
+     * @param json the JSON text.
+     * @return the model or instance.
+     */
+    public static HwWalletObject parse(String json) {
+        return parse(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Serialize to UTF-8 JSON bytes. Null attributes are left out.
+     *
+     * @return the JSON bytes.
+     */
+    public byte[] toJsonBytes() {
+        return JsonCodecs.getDefault().toJsonBytes(this);
+    }
+}
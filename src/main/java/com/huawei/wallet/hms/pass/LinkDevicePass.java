@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms.pass;
+
+/**
+ * NFC card personalization data of an instance.
+ *
+ * @since 2020-12-04
+ */
+public class LinkDevicePass extends PassElement {
+    private String passVersion;
+
+    private String serialNumber;
+
+    private String nfcType;
+
+    private String spPublickey;
+
+    private String token;
+
+    private String webServiceURL;
+
+    public String getPassVersion() {
+        return passVersion;
+    }
+
+    public void setPassVersion(String passVersion) {
+        this.passVersion = passVersion;
+    }
+
+    public String getSerialNumber() {
+        return serialNumber;
+    }
+
+    public void setSerialNumber(String serialNumber) {
+        this.serialNumber = serialNumber;
+    }
+
+    public String getNfcType() {
+        return nfcType;
+    }
+
+    public void setNfcType(String nfcType) {
+        this.nfcType = nfcType;
+    }
+
+    public String getSpPublickey() {
+        return spPublickey;
+    }
+
+    public void setSpPublickey(String spPublickey) {
+        this.spPublickey = spPublickey;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public String getWebServiceURL() {
+        return webServiceURL;
+    }
+
+    public void setWebServiceURL(String webServiceURL) {
+        this.webServiceURL = webServiceURL;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms.pass;
+
+import com.alibaba.fastjson.annotation.JSONField;
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Base of the typed pass classes. Attributes the class doesn't declare are kept in order when parsing and written
+ * back after the declared ones, so a model or instance read, modified and written again keeps them.
+ *
+ * @since 2020-12-11
+ */
+public abstract class PassElement {
+    private final Map<String, Object> otherAttributes = new LinkedHashMap<>();
+
+    /**
+     * Return the attributes the class doesn't declare.
+     *
+     * @return the attributes by name, in the order they were read.
+     */
+    @JSONField(unwrapped = true)
+    @JsonAnyGetter
+    public Map<String, Object> getOtherAttributes() {
+        return otherAttributes;
+    }
+
+    /**
+     * Set an attribute the class doesn't declare. A null value is left out, like the declared attributes.
+     *
+     * @param name the attribute name.
+     * @param value the attribute value.
+     */
+    @JSONField(unwrapped = true)
+    @JsonAnySetter
+    public void setOtherAttribute(String name, Object value) {
+        if (value != null) {
+            otherAttributes.put(name, value);
+        }
+    }
+}
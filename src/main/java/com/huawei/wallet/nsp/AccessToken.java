@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.nsp;
+
+/**
+ * An access token returned by the gateway token endpoint.
+ *
+ * @since 2020-11-02
+ */
+public final class AccessToken {
+    private final String value;
+
+    private final long expiresAtMillis;
+
+    /**
+     * Constructor.
+     *
+     * @param value the access_token string.
+     * @param expiresAtMillis the epoch time in milliseconds when the token expires.
+     */
+    public AccessToken(String value, long expiresAtMillis) {
+        this.value = value;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    /**
+     * Check if the token is still usable at a given time.
+     *
+     * @param nowMillis the current epoch time in milliseconds.
+     * @return true if the token has not expired yet.
+     */
+    public boolean isValidAt(long nowMillis) {
+        return nowMillis < expiresAtMillis;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.nsp;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token-bucket rate limiter whose rate adapts with AIMD: it grows by a fixed step per interval while requests succeed,
+ * and is multiplied by a factor below 1 when the server throttles. The rate stays between a minimum and the configured
+ * maximum. A limiter with a maximum rate of 0 does not limit.
+ *
+ * @since 2020-11-16
+ */
+public class AdaptiveRateLimiter {
+    private final double maxRate;
+
+    private final double minRate;
+
+    private final double additiveIncrease;
+
+    private final double multiplicativeDecrease;
+
+    private final long adjustIntervalNanos;
+
+    /**
+     * Burst size, i.e. the maximum number of stored permits. It's one second of the current rate.
+     */
+    private double capacity;
+
+    private double rate;
+
+    /**
+     * Available permits. A negative value means permits were reserved by callers waiting for them.
+     */
+    private double permits;
+
+    private long lastRefillNanos;
+
+    /**
+     * Time of the last increase, or of the last cut, since the rate only grows again an interval after a cut.
+     */
+    private long lastIncreaseNanos;
+
+    private long lastDecreaseNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param maxRate maximum and initial permits per second, or 0 for no limit.
+     * @param minRate minimum permits per second after throttling.
+     * @param additiveIncrease permits per second added after an interval without throttling.
+     * @param multiplicativeDecrease factor applied to the rate when throttled, e.g. 0.5.
+     * @param adjustIntervalMillis minimum interval between two rate adjustments.
+     */
+    public AdaptiveRateLimiter(double maxRate, double minRate, double additiveIncrease, double multiplicativeDecrease,
+        long adjustIntervalMillis) {
+        if (maxRate < 0 || minRate <= 0 || multiplicativeDecrease <= 0 || multiplicativeDecrease >= 1) {
+            throw new IllegalArgumentException("Invalid rate limiter settings.");
+        }
+        this.maxRate = maxRate;
+        this.minRate = Math.min(minRate, maxRate > 0 ? maxRate : minRate);
+        this.additiveIncrease = additiveIncrease;
+        this.multiplicativeDecrease = multiplicativeDecrease;
+        this.adjustIntervalNanos = TimeUnit.MILLISECONDS.toNanos(adjustIntervalMillis);
+        this.rate = maxRate;
+        this.capacity = Math.max(1, maxRate);
+        this.permits = capacity;
+        this.lastRefillNanos = System.nanoTime();
+        this.lastIncreaseNanos = lastRefillNanos;
+        this.lastDecreaseNanos = lastRefillNanos - adjustIntervalNanos;
+    }
+
+    /**
+     * Take a permit, waiting until it's available.
+     */
+    public void acquire() {
+        long waitNanos = reserve();
+        if (waitNanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a rate limit permit.", e);
+        }
+    }
+
+    /**
+     * Take a permit without waiting. The caller must wait the returned time before sending its request.
+     *
+     * @return nanoseconds to wait, 0 if the permit is available now.
+     */
+    public synchronized long reserve() {
+        if (maxRate <= 0) {
+            return 0L;
+        }
+        refill(System.nanoTime());
+        permits -= 1;
+        if (permits >= 0) {
+            return 0L;
+        }
+        return (long) (-permits / rate * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Take a permit only if it's available now.
+     *
+     * @return true if a permit was taken.
+     */
+    public synchronized boolean tryAcquire() {
+        if (maxRate <= 0) {
+            return true;
+        }
+        refill(System.nanoTime());
+        if (permits < 1) {
+            return false;
+        }
+        permits -= 1;
+        return true;
+    }
+
+    /**
+     * Report a successful request. The rate grows by one step per interval without a cut.
+     */
+    public synchronized void onSuccess() {
+        if (maxRate <= 0 || rate >= maxRate) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (now - lastIncreaseNanos >= adjustIntervalNanos) {
+            refill(now);
+            setRate(Math.min(maxRate, rate + additiveIncrease));
+            lastIncreaseNanos = now;
+        }
+    }
+
+    /**
+     * Report a throttled request, e.g. HTTP 429 or 503. The rate is cut at most once per interval, so the responses
+     * of requests that were already in flight do not cut it again. A recent increase doesn't delay a cut.
+     */
+    public synchronized void onThrottle() {
+        if (maxRate <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (now - lastDecreaseNanos >= adjustIntervalNanos) {
+            refill(now);
+            setRate(Math.max(minRate, rate * multiplicativeDecrease));
+            lastDecreaseNanos = now;
+            lastIncreaseNanos = now;
+        }
+    }
+
+    /**
+     * Return the current rate.
+     *
+     * @return permits per second, or 0 if the limiter does not limit.
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    private void setRate(double newRate) {
+        rate = newRate;
+        capacity = Math.max(1, newRate);
+        permits = Math.min(permits, capacity);
+    }
+
+    private void refill(long now) {
+        permits = Math.min(capacity, permits + (now - lastRefillNanos) * rate / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+    }
+}
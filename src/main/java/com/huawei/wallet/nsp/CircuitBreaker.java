@@ -0,0 +1,335 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.nsp;
+
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker over a sliding window of the latest calls.
+ * <p>
+ * The breaker opens when the failure rate or the slow call rate of the window reaches its threshold, and then rejects
+ * calls at once instead of letting them wait for timeouts. After the open duration it lets a few probe calls through
+ * (half-open): it closes if they succeed and opens again otherwise. Failures are I/O errors, timeouts and 5xx
+ * responses; client errors, including 429, mean the server is up and count as successes.
+ *
+ * @since 2020-11-19
+ */
+public class CircuitBreaker {
+    /**
+     * Circuit breaker states.
+     */
+    public enum State {
+        /**
+         * Calls are permitted and recorded.
+         */
+        CLOSED,
+
+        /**
+         * Calls are rejected.
+         */
+        OPEN,
+
+        /**
+         * A limited number of probe calls is permitted.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Receives state transitions, e.g. to log them or to alert when a breaker opens.
+     */
+    public interface StateListener {
+        /**
+         * Accept a state transition. It's called on the thread whose call caused the transition, while the breaker
+         * is locked, so it must return quickly.
+         *
+         * @param breaker the circuit breaker.
+         * @param from the previous state.
+         * @param to the new state.
+         */
+        void onStateChange(CircuitBreaker breaker, State from, State to);
+    }
+
+    private final String name;
+
+    private final int minimumCalls;
+
+    private final double failureRateThreshold;
+
+    private final double slowCallRateThreshold;
+
+    private final long slowCallNanos;
+
+    private final long openNanos;
+
+    private final int halfOpenCalls;
+
+    /**
+     * Outcomes of the latest calls: bit 0 is set for a failure and bit 1 for a slow call.
+     */
+    private final byte[] window;
+
+    private int windowIndex;
+
+    private int windowCount;
+
+    private int failures;
+
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+
+    private long openedAtNanos;
+
+    private int probesPermitted;
+
+    private int probesCompleted;
+
+    private int badProbes;
+
+    private long rejectedCalls;
+
+    private long transitions;
+
+    private final List<StateListener> stateListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param name name used in messages, e.g. the base URL and endpoint family.
+     * @param windowSize number of latest calls the rates are computed over.
+     * @param minimumCalls number of calls needed before the breaker may open.
+     * @param failureRateThreshold failure percentage that opens the breaker.
+     * @param slowCallRateThreshold slow call percentage that opens the breaker.
+     * @param slowCallMillis duration from which a call is slow.
+     * @param openMillis time the breaker stays open before probing.
+     * @param halfOpenCalls number of probe calls in half-open state.
+     */
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+        double slowCallRateThreshold, long slowCallMillis, long openMillis, int halfOpenCalls) {
+        if (windowSize <= 0 || halfOpenCalls <= 0) {
+            throw new IllegalArgumentException("Invalid circuit breaker settings.");
+        }
+        this.name = name;
+        this.window = new byte[windowSize];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, windowSize));
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    /**
+     * Call through the breaker.
+     *
+     * @param call the call.
+     * @param <T> the result type.
+     * @return the result of the call.
+     * @throws CircuitBreakerOpenException if the breaker rejects the call.
+     */
+    public <T> T execute(Supplier<T> call) {
+        acquirePermission();
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            onSuccess(System.nanoTime() - start);
+            return result;
+        } catch (RuntimeException e) {
+            onError(e, System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * Check that a call is permitted. Every permitted call must be followed by onSuccess or onError.
+     *
+     * @throws CircuitBreakerOpenException if the breaker rejects the call.
+     */
+    public synchronized void acquirePermission() {
+        if (state == State.OPEN && System.nanoTime() - openedAtNanos >= openNanos) {
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.CLOSED) {
+            return;
+        }
+        if (state == State.HALF_OPEN && probesPermitted < halfOpenCalls) {
+            probesPermitted++;
+            return;
+        }
+        rejectedCalls++;
+        throw new CircuitBreakerOpenException("Circuit breaker " + name + " is " + state + ".");
+    }
+
+    /**
+     * Record a successful call.
+     *
+     * @param durationNanos duration of the call.
+     */
+    public void onSuccess(long durationNanos) {
+        record(false, durationNanos >= slowCallNanos);
+    }
+
+    /**
+     * Record a failed call. Only failures caused by the server or the network count against it.
+     *
+     * @param e the failure.
+     * @param durationNanos duration of the call.
+     */
+    public void onError(RuntimeException e, long durationNanos) {
+        record(isServerFailure(e), durationNanos >= slowCallNanos);
+    }
+
+    /**
+     * Check if a failure means the server or the network is degraded.
+     *
+     * @param e the failure.
+     * @return true for I/O errors, timeouts and 5xx responses.
+     */
+    public static boolean isServerFailure(RuntimeException e) {
+        if (e instanceof ResourceAccessException) {
+            return true;
+        }
+        if (e instanceof HttpStatusCodeException) {
+            int statusCode = ((HttpStatusCodeException) e).getRawStatusCode();
+            return statusCode >= 500;
+        }
+        return false;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Return the current state. An open breaker whose open duration has elapsed is reported as half-open.
+     *
+     * @return the state.
+     */
+    public synchronized State getState() {
+        if (state == State.OPEN && System.nanoTime() - openedAtNanos >= openNanos) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * Return the failure percentage of the window.
+     *
+     * @return the percentage, 0 if no call is recorded.
+     */
+    public synchronized double getFailureRate() {
+        return windowCount == 0 ? 0 : failures * 100.0 / windowCount;
+    }
+
+    /**
+     * Return the slow call percentage of the window.
+     *
+     * @return the percentage, 0 if no call is recorded.
+     */
+    public synchronized double getSlowCallRate() {
+        return windowCount == 0 ? 0 : slowCalls * 100.0 / windowCount;
+    }
+
+    /**
+     * Return the number of calls rejected so far.
+     *
+     * @return the count.
+     */
+    public synchronized long getRejectedCalls() {
+        return rejectedCalls;
+    }
+
+    /**
+     * Return the number of state transitions so far.
+     *
+     * @return the count.
+     */
+    public synchronized long getTransitions() {
+        return transitions;
+    }
+
+    /**
+     * Register a listener of state transitions.
+     *
+     * @param listener the listener.
+     */
+    public void addStateListener(StateListener listener) {
+        stateListeners.add(listener);
+    }
+
+    private synchronized void record(boolean failure, boolean slow) {
+        if (state == State.HALF_OPEN) {
+            probesCompleted++;
+            if (failure || slow) {
+                badProbes++;
+            }
+            if (badProbes * 100.0 / halfOpenCalls >= Math.min(failureRateThreshold, slowCallRateThreshold)) {
+                transitionTo(State.OPEN);
+            } else if (probesCompleted >= halfOpenCalls) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // A call permitted before the breaker opened.
+            return;
+        }
+        byte outcome = (byte) ((failure ? 1 : 0) | (slow ? 2 : 0));
+        if (windowCount == window.length) {
+            failures -= window[windowIndex] & 1;
+            slowCalls -= (window[windowIndex] >> 1) & 1;
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = outcome;
+        windowIndex = (windowIndex + 1) % window.length;
+        failures += failure ? 1 : 0;
+        slowCalls += slow ? 1 : 0;
+        if (windowCount >= minimumCalls && (failures * 100.0 / windowCount >= failureRateThreshold
+            || slowCalls * 100.0 / windowCount >= slowCallRateThreshold)) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private void transitionTo(State newState) {
+        State oldState = state;
+        state = newState;
+        transitions++;
+        if (newState == State.OPEN) {
+            openedAtNanos = System.nanoTime();
+        } else if (newState == State.HALF_OPEN) {
+            probesPermitted = 0;
+            probesCompleted = 0;
+            badProbes = 0;
+        } else {
+            windowIndex = 0;
+            windowCount = 0;
+            failures = 0;
+            slowCalls = 0;
+        }
+        for (StateListener listener : stateListeners) {
+            listener.onStateChange(this, oldState, newState);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.nsp;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Sends hedged requests: if a request has not answered within a percentile of recent response times, a duplicate is
+ * sent and the first successful response is used. Hedges are capped per second so a slow server does not receive
+ * twice the load. Only idempotent requests may be hedged.
+ * <p>
+ * The losing request is not aborted; it completes in the background and returns its connection to the pool.
+ * <p>
+ * The executor may be bounded: a request it rejects runs on the calling thread without a hedge, and a hedge it
+ * rejects is skipped.
+ *
+ * @since 2020-11-23
+ */
+public class Hedger {
+    private final Executor executor;
+
+    private final double percentile;
+
+    private final long minDelayNanos;
+
+    private final PercentileTracker latencies;
+
+    private final AdaptiveRateLimiter budget;
+
+    private final AtomicLong hedges = new AtomicLong();
+
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    private final AtomicLong budgetExhausted = new AtomicLong();
+
+    private final AtomicLong hedgesRejected = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param executor runs the requests.
+     * @param percentile response time percentile after which a hedge is sent, e.g. 95.
+     * @param minDelayMillis minimum delay before a hedge, also used until enough response times are recorded.
+     * @param windowSize number of latest response times the percentile is computed over.
+     * @param maxHedgesPerSecond maximum number of hedges per second.
+     */
+    public Hedger(Executor executor, double percentile, long minDelayMillis, int windowSize,
+        double maxHedgesPerSecond) {
+        if (maxHedgesPerSecond <= 0) {
+            throw new IllegalArgumentException("Hedges per second must be positive.");
+        }
+        this.executor = executor;
+        this.percentile = percentile;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+        this.latencies = new PercentileTracker(windowSize, Math.max(1, windowSize / 10));
+        this.budget = new AdaptiveRateLimiter(maxHedgesPerSecond, maxHedgesPerSecond, 0, 0.5, 1000);
+    }
+
+    /**
+     * Call, and call again if the first call is slow.
+     *
+     * @param call an idempotent call.
+     * @param <T> the result type.
+     * @return the first successful result.
+     */
+    public <T> T execute(Supplier<T> call) {
+        CompletableFuture<T> primary;
+        try {
+            primary = CompletableFuture.supplyAsync(timed(call), executor);
+        } catch (RejectedExecutionException e) {
+            return timed(call).get();
+        }
+        try {
+            return primary.get(getDelayNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (!budget.tryAcquire()) {
+                budgetExhausted.incrementAndGet();
+                return join(primary);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a response.", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+        CompletableFuture<T> hedge;
+        try {
+            hedge = CompletableFuture.supplyAsync(timed(call), executor);
+        } catch (RejectedExecutionException e) {
+            hedgesRejected.incrementAndGet();
+            return join(primary);
+        }
+        hedges.incrementAndGet();
+        CompletableFuture<T> first = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        primary.whenComplete((result, error) -> complete(first, result, error, failures));
+        hedge.whenComplete((result, error) -> {
+            if (error == null && first.complete(result)) {
+                hedgeWins.incrementAndGet();
+            } else {
+                complete(first, result, error, failures);
+            }
+        });
+        return join(first);
+    }
+
+    /**
+     * Return the current hedge delay.
+     *
+     * @return milliseconds after which a hedge is sent.
+     */
+    public long getDelayMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(getDelayNanos());
+    }
+
+    /**
+     * Return the number of hedges sent.
+     *
+     * @return the count.
+     */
+    public long getHedges() {
+        return hedges.get();
+    }
+
+    /**
+     * Return the number of hedges that answered before the first request.
+     *
+     * @return the count.
+     */
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * Return the number of slow requests not hedged because the hedge cap was reached.
+     *
+     * @return the count.
+     */
+    public long getBudgetExhausted() {
+        return budgetExhausted.get();
+    }
+
+    /**
+     * Return the number of slow requests not hedged because the executor rejected the hedge.
+     *
+     * @return the count.
+     */
+    public long getHedgesRejected() {
+        return hedgesRejected.get();
+    }
+
+    private long getDelayNanos() {
+        return Math.max(minDelayNanos, latencies.getPercentile(percentile));
+    }
+
+    private <T> Supplier<T> timed(Supplier<T> call) {
+        return () -> {
+            long start = System.nanoTime();
+            T result = call.get();
+            latencies.record(System.nanoTime() - start);
+            return result;
+        };
+    }
+
+    /**
+     * Complete with the first result, or with the first error once both calls have failed.
+     */
+    private static <T> void complete(CompletableFuture<T> first, T result, Throwable error, AtomicInteger failures) {
+        if (error == null) {
+            first.complete(result);
+        } else if (failures.incrementAndGet() == 2) {
+            first.completeExceptionally(error);
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable cause) {
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new IllegalStateException(cause);
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.nsp;
+
+import com.huawei.wallet.util.ConfigUtil;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.ssl.SSLContexts;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+
+/**
+ * Shared pooling HTTP transport for all wallet and gateway requests. It is configured by the "http.*" values in
+ * release.config.properties.
+ *
+ * @since 2020-11-04
+ */
+public final class HttpTransport {
+    private static final ConfigUtil CONFIG = ConfigUtil.instants();
+
+    private static final int CONNECT_TIMEOUT = CONFIG.getIntValue("http.connectTimeoutMillis", 20000);
+
+    private static final int READ_TIMEOUT = CONFIG.getIntValue("http.readTimeoutMillis", 20000);
+
+    private static final int CONNECTION_REQUEST_TIMEOUT =
+        CONFIG.getIntValue("http.connectionRequestTimeoutMillis", 5000);
+
+    private static final int MAX_TOTAL = CONFIG.getIntValue("http.maxTotalConnections", 200);
+
+    private static final int MAX_PER_ROUTE = CONFIG.getIntValue("http.maxConnectionsPerRoute", 50);
+
+    private static final int KEEP_ALIVE_MILLIS = CONFIG.getIntValue("http.keepAliveMillis", 30000);
+
+    private static final int IDLE_EVICT_MILLIS = CONFIG.getIntValue("http.idleEvictMillis", 60000);
+
+    private static final RequestConfig REQUEST_CONFIG = RequestConfig.custom()
+        .setConnectTimeout(CONNECT_TIMEOUT)
+        .setSocketTimeout(READ_TIMEOUT)
+        .setConnectionRequestTimeout(CONNECTION_REQUEST_TIMEOUT)
+        .build();
+
+    /**
+     * Connections are created by a single SSLContext, so TLS sessions are resumed instead of doing a full handshake
+     * for each new connection to the same host.
+     */
+    private static final SSLContext SSL_CONTEXT;
+
+    private static final PoolingHttpClientConnectionManager CONNECTION_MANAGER;
+
+    private static final CloseableHttpClient HTTP_CLIENT;
+
+    static {
+        SSL_CONTEXT = SSLContexts.createDefault();
+        SSLSessionContext sessionContext = SSL_CONTEXT.getClientSessionContext();
+        sessionContext.setSessionCacheSize(CONFIG.getIntValue("http.tlsSessionCacheSize", 1000));
+        sessionContext.setSessionTimeout(CONFIG.getIntValue("http.tlsSessionTimeoutSeconds", 86400));
+        Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+            .register("http", PlainConnectionSocketFactory.getSocketFactory())
+            .register("https", new SSLConnectionSocketFactory(SSL_CONTEXT))
+            .build();
+
+        CONNECTION_MANAGER = new PoolingHttpClientConnectionManager(registry);
+        CONNECTION_MANAGER.setMaxTotal(MAX_TOTAL);
+        CONNECTION_MANAGER.setDefaultMaxPerRoute(MAX_PER_ROUTE);
+        CONNECTION_MANAGER.setValidateAfterInactivity(CONFIG.getIntValue("http.validateAfterInactivityMillis", 2000));
+
+        HTTP_CLIENT = HttpClients.custom()
+            .setConnectionManager(CONNECTION_MANAGER)
+            .setDefaultRequestConfig(REQUEST_CONFIG)
+            .setKeepAliveStrategy(keepAliveStrategy(KEEP_ALIVE_MILLIS))
+            .evictExpiredConnections()
+            .evictIdleConnections(IDLE_EVICT_MILLIS, TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+    private HttpTransport() {
+    }
+
+    /**
+     * Create a RestTemplate sending requests over the shared connection pool.
+     *
+     * @return the RestTemplate.
+     */
+    public static RestTemplate createRestTemplate() {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(HTTP_CLIENT));
+    }
+
+    /**
+     * Get the shared HTTP client.
+     *
+     * @return the HTTP client.
+     */
+    public static CloseableHttpClient getHttpClient() {
+        return HTTP_CLIENT;
+    }
+
+    /**
+     * Get the shared non-blocking HTTP client. It is started on first use and has its own connection pool with the
+     * same limits as the blocking one.
+     *
+     * @return the started async HTTP client.
+     */
+    public static CloseableHttpAsyncClient getAsyncHttpClient() {
+        return AsyncHolder.ASYNC_HTTP_CLIENT;
+    }
+
+    /**
+     * Get statistics of the non-blocking client's connection pool.
+     *
+     * @return leased, pending, available and max connections.
+     */
+    public static PoolStats getAsyncPoolStats() {
+        return AsyncHolder.ASYNC_CONNECTION_MANAGER.getTotalStats();
+    }
+
+    /**
+     * Get statistics of the whole connection pool.
+     *
+     * @return leased, pending, available and max connections.
+     */
+    public static PoolStats getPoolStats() {
+        return CONNECTION_MANAGER.getTotalStats();
+    }
+
+    /**
+     * Get connection pool statistics for each route, i.e. each target host.
+     *
+     * @return statistics by target host.
+     */
+    public static Map<String, PoolStats> getRouteStats() {
+        Map<String, PoolStats> stats = new LinkedHashMap<>();
+        for (HttpRoute route : CONNECTION_MANAGER.getRoutes()) {
+            stats.put(route.getTargetHost().toURI(), CONNECTION_MANAGER.getStats(route));
+        }
+        return stats;
+    }
+
+    /**
+     * Lazily created non-blocking client, so blocking-only callers never start an I/O reactor.
+     */
+    private static final class AsyncHolder {
+        private static final PoolingNHttpClientConnectionManager ASYNC_CONNECTION_MANAGER;
+
+        private static final CloseableHttpAsyncClient ASYNC_HTTP_CLIENT;
+
+        static {
+            int ioThreads = CONFIG.getIntValue("http.async.ioThreads", Runtime.getRuntime().availableProcessors());
+            IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(ioThreads)
+                .setConnectTimeout(CONNECT_TIMEOUT)
+                .setSoTimeout(READ_TIMEOUT)
+                .build();
+            Registry<SchemeIOSessionStrategy> registry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register("http", NoopIOSessionStrategy.INSTANCE)
+                .register("https", new SSLIOSessionStrategy(SSL_CONTEXT))
+                .build();
+            try {
+                ASYNC_CONNECTION_MANAGER =
+                    new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig), registry);
+            } catch (IOReactorException e) {
+                throw new IllegalStateException("Create I/O reactor failed.", e);
+            }
+            ASYNC_CONNECTION_MANAGER.setMaxTotal(MAX_TOTAL);
+            ASYNC_CONNECTION_MANAGER.setDefaultMaxPerRoute(MAX_PER_ROUTE);
+
+            ASYNC_HTTP_CLIENT = HttpAsyncClients.custom()
+                .setConnectionManager(ASYNC_CONNECTION_MANAGER)
+                .setDefaultRequestConfig(REQUEST_CONFIG)
+                .setKeepAliveStrategy(keepAliveStrategy(KEEP_ALIVE_MILLIS))
+                .build();
+            ASYNC_HTTP_CLIENT.start();
+
+            // The non-blocking client has no built-in evictor, so close idle and expired connections periodically.
+            ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wallet-async-connection-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(IDLE_EVICT_MILLIS / 2, 1000L);
+            evictor.scheduleWithFixedDelay(() -> {
+                ASYNC_CONNECTION_MANAGER.closeExpiredConnections();
+                ASYNC_CONNECTION_MANAGER.closeIdleConnections(IDLE_EVICT_MILLIS, TimeUnit.MILLISECONDS);
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Keep connections alive as long as the server allows, but never longer than the configured duration.
+     *
+     * @param keepAliveMillis the configured keep-alive duration.
+     * @return the keep-alive strategy.
+     */
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(long keepAliveMillis) {
+        return (response, context) -> {
+            HeaderElementIterator iterator =
+                new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+            while (iterator.hasNext()) {
+                HeaderElement element = iterator.nextElement();
+                if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+                    try {
+                        return Math.min(Long.parseLong(element.getValue()) * 1000L, keepAliveMillis);
+                    } catch (NumberFormatException e) {
+                        break;
+                    }
+                }
+            }
+            return keepAliveMillis;
+        };
+    }
+}
@@ -17,6 +17,7 @@
 package com.huawei.wallet.nsp;
 
 import com.huawei.wallet.util.ConfigUtil;
+import com.huawei.wallet.util.json.JsonCodecs;
 
 import com.alibaba.fastjson.JSONObject;
 
@@ -36,9 +37,27 @@ import org.springframework.web.client.RestTemplate;
  * @since 2019-07-26
  */
 public class NetworkService {
-    private static final RestTemplate REST_TEMPLATE = new RestTemplate();
+    private static final RestTemplate REST_TEMPLATE = HttpTransport.createRestTemplate();
+
+    /**
+     * Default lifetime of an access token in seconds, used if the response has no expires_in.
+     */
+    private static final long DEFAULT_EXPIRES_IN = 3600L;
 
     public static String getToken(String clientId, String clientSecret) {
+        String tokenUrl = ConfigUtil.instants().getValue("gw.tokenUrl");
+        return requestToken(tokenUrl, clientId, clientSecret).getValue();
+    }
+
+    /**
+     * Request a new access token from the gateway token endpoint.
+     *
+     * @param tokenUrl token endpoint URL.
+     * @param clientId app ID.
+     * @param clientSecret app secret.
+     * @return the access token and its expiry time.
+     */
+    public static AccessToken requestToken(String tokenUrl, String clientId, String clientSecret) {
         HttpHeaders header = new HttpHeaders();
         header.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
 
@@ -47,14 +66,13 @@ public class NetworkService {
         map.add("client_id", clientId);
         map.add("client_secret", clientSecret);
 
-        String tokenUrl = ConfigUtil.instants().getValue("gw.tokenUrl");
-
         // Send the http request and get response.
+        long requestTime = System.currentTimeMillis();
         HttpEntity<MultiValueMap<String, String>> entity = new HttpEntity<>(map, header);
-        ResponseEntity<JSONObject> exchange =
-            REST_TEMPLATE.exchange(tokenUrl, HttpMethod.POST, entity, JSONObject.class);
+        ResponseEntity<byte[]> exchange = REST_TEMPLATE.exchange(tokenUrl, HttpMethod.POST, entity, byte[].class);
 
-        JSONObject response = exchange.getBody();
+        byte[] body = exchange.getBody();
+        JSONObject response = body == null ? null : JsonCodecs.getDefault().parseObject(body);
 
         // Return the token.
         if (response == null) {
@@ -64,6 +82,11 @@ public class NetworkService {
         if (Strings.isEmpty(accessToken)) {
             throw new NullPointerException("Get null access token.");
         }
-        return accessToken;
+        Long expiresIn = response.getLong("expires_in");
+        if (expiresIn == null || expiresIn <= 0) {
+            expiresIn = DEFAULT_EXPIRES_IN;
+        }
+        // Count the lifetime from the time the request was sent, so network delay never extends it.
+        return new AccessToken(accessToken, requestTime + expiresIn * 1000L);
     }
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.nsp;
+
+import java.util.Arrays;
+
+/**
+ * Percentiles of the latest samples, e.g. response times. Percentiles are recomputed after every tenth of the window
+ * has been replaced, so a lookup rarely sorts.
+ *
+ * @since 2020-11-23
+ */
+public class PercentileTracker {
+    private final long[] samples;
+
+    private final int minSamples;
+
+    private final int recomputeInterval;
+
+    private int index;
+
+    private int count;
+
+    private int recordsSinceSort;
+
+    private long[] sorted;
+
+    /**
+     * Constructor.
+     *
+     * @param windowSize number of latest samples kept.
+     * @param minSamples number of samples needed before percentiles are reported.
+     */
+    public PercentileTracker(int windowSize, int minSamples) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Invalid window size.");
+        }
+        this.samples = new long[windowSize];
+        this.minSamples = Math.max(1, Math.min(minSamples, windowSize));
+        this.recomputeInterval = Math.max(1, windowSize / 10);
+    }
+
+    /**
+     * Record a sample.
+     *
+     * @param value the sample.
+     */
+    public synchronized void record(long value) {
+        samples[index] = value;
+        index = (index + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+        recordsSinceSort++;
+    }
+
+    /**
+     * Return a percentile of the latest samples.
+     *
+     * @param percentile the percentile, e.g. 95.
+     * @return the sample at the percentile, or -1 if there are fewer samples than the minimum.
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count < minSamples) {
+            return -1L;
+        }
+        if (sorted == null || recordsSinceSort >= recomputeInterval) {
+            sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            recordsSinceSort = 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(rank, sorted.length - 1))];
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.nsp;
+
+import com.huawei.wallet.util.ConfigUtil;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Retries transient failures with exponential backoff and full jitter.
+ * <p>
+ * Only methods listed in the policy are retried automatically. Other methods, e.g. POST, are retried only if the
+ * caller supplies a lookup that tells whether the failed request has taken effect after all. Retries are limited by
+ * a budget: each request earns a fraction of a retry, and a small number of retries per second is always allowed.
+ * During an outage the client therefore sends little more than its normal load.
+ *
+ * @since 2020-11-18
+ */
+public class RetryPolicy {
+    private final int maxAttempts;
+
+    private final long baseDelayMillis;
+
+    private final long maxDelayMillis;
+
+    private final Set<HttpMethod> retryableMethods;
+
+    private final RetryBudget budget;
+
+    private final AtomicLong retries = new AtomicLong();
+
+    private final AtomicLong budgetExhausted = new AtomicLong();
+
+    private final AtomicLong resolvedByLookup = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param maxAttempts maximum number of attempts including the first one.
+     * @param baseDelayMillis backoff before the first retry, doubled for every further retry.
+     * @param maxDelayMillis maximum backoff.
+     * @param retryableMethods methods retried without a lookup.
+     * @param budgetRatio retries earned by each request, e.g. 0.1 allows one retry per ten requests.
+     * @param minRetriesPerSecond retries allowed per second regardless of the number of requests.
+     */
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, Set<HttpMethod> retryableMethods,
+        double budgetRatio, double minRetriesPerSecond) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.retryableMethods = retryableMethods.isEmpty() ? EnumSet.noneOf(HttpMethod.class)
+            : EnumSet.copyOf(retryableMethods);
+        this.budget = new RetryBudget(budgetRatio, minRetriesPerSecond);
+    }
+
+    /**
+     * Create a retry policy from the "retry.*" values in release.config.properties.
+     *
+     * @return the retry policy.
+     */
+    public static RetryPolicy fromConfig() {
+        ConfigUtil config = ConfigUtil.instants();
+        Set<HttpMethod> methods = EnumSet.noneOf(HttpMethod.class);
+        String methodNames = config.getValue("retry.methods");
+        for (String name : (methodNames == null ? "GET,PUT,PATCH" : methodNames).split(",")) {
+            if (!name.trim().isEmpty()) {
+                methods.add(HttpMethod.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+            }
+        }
+        return new RetryPolicy(config.getIntValue("retry.maxAttempts", 3),
+            config.getIntValue("retry.baseDelayMillis", 100), config.getIntValue("retry.maxDelayMillis", 5000),
+            methods, config.getDoubleValue("retry.budgetRatio", 0.1),
+            config.getDoubleValue("retry.minRetriesPerSecond", 5));
+    }
+
+    /**
+     * Return the retry policy configured in release.config.properties. Synchronous and asynchronous wallet server
+     * calls share it, and so share its retry budget.
+     *
+     * @return the retry policy.
+     */
+    public static RetryPolicy getDefault() {
+        return DefaultHolder.DEFAULT;
+    }
+
+    /**
+     * Call and retry if the method may be retried.
+     *
+     * @param method the http method of the call.
+     * @param call the call.
+     * @param <T> the result type.
+     * @return the result of the first successful attempt.
+     */
+    public <T> T execute(HttpMethod method, Supplier<T> call) {
+        return execute(method, call, null);
+    }
+
+    /**
+     * Call and retry. If the method is not retried automatically, the lookup is called after a failure: a non-null
+     * result means the failed request has taken effect and is returned, null means it's safe to send it again.
+     *
+     * @param method the http method of the call.
+     * @param call the call.
+     * @param lookup finds the result of a request that failed after reaching the server. It may be null.
+     * @param <T> the result type.
+     * @return the result of the first successful attempt, or of the lookup.
+     */
+    public <T> T execute(HttpMethod method, Supplier<T> call, Supplier<T> lookup) {
+        budget.onRequest();
+        boolean automatic = retryableMethods.contains(method);
+        int attempt = 1;
+        while (true) {
+            try {
+                return call.get();
+            } catch (RuntimeException e) {
+                if (!isTransient(e) || attempt >= maxAttempts || (!automatic && lookup == null)) {
+                    throw e;
+                }
+                if (!budget.tryRetry()) {
+                    budgetExhausted.incrementAndGet();
+                    throw e;
+                }
+                sleep(backoffMillis(attempt, e), e);
+                if (!automatic) {
+                    T existing = lookupOrThrow(lookup, e);
+                    if (existing != null) {
+                        resolvedByLookup.incrementAndGet();
+                        return existing;
+                    }
+                }
+                retries.incrementAndGet();
+                attempt++;
+            }
+        }
+    }
+
+    /**
+     * Call asynchronously and retry if the method may be retried. Backoff delays are scheduled instead of blocking a
+     * thread. Methods that are not retried automatically are not retried, since there is no lookup.
+     *
+     * @param method the http method of the call.
+     * @param call starts an attempt.
+     * @param scheduler schedules the retries.
+     * @param <T> the result type.
+     * @return the future completed with the result of the first successful attempt, or the last failure.
+     */
+    public <T> CompletableFuture<T> executeAsync(HttpMethod method, Supplier<CompletableFuture<T>> call,
+        ScheduledExecutorService scheduler) {
+        budget.onRequest();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attemptAsync(retryableMethods.contains(method), call, scheduler, 1, result);
+        return result;
+    }
+
+    private <T> void attemptAsync(boolean automatic, Supplier<CompletableFuture<T>> call,
+        ScheduledExecutorService scheduler, int attempt, CompletableFuture<T> result) {
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        future.whenComplete((value, throwable) -> {
+            if (throwable == null) {
+                result.complete(value);
+                return;
+            }
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause() : throwable;
+            if (!automatic || !(cause instanceof RuntimeException) || !isTransient((RuntimeException) cause)
+                || attempt >= maxAttempts) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            if (!budget.tryRetry()) {
+                budgetExhausted.incrementAndGet();
+                result.completeExceptionally(cause);
+                return;
+            }
+            retries.incrementAndGet();
+            scheduler.schedule(() -> attemptAsync(true, call, scheduler, attempt + 1, result),
+                backoffMillis(attempt, (RuntimeException) cause), TimeUnit.MILLISECONDS);
+        });
+    }
+
+    /**
+     * Check if a failure is transient: an I/O error or timeout, a throttling response, or a 5xx gateway error.
+     *
+     * @param e the failure.
+     * @return true if the request may succeed when sent again.
+     */
+    public static boolean isTransient(RuntimeException e) {
+        if (e instanceof ResourceAccessException) {
+            return true;
+        }
+        if (e instanceof HttpStatusCodeException) {
+            int statusCode = ((HttpStatusCodeException) e).getRawStatusCode();
+            return statusCode == 429 || statusCode == 500 || statusCode == 502 || statusCode == 503
+                || statusCode == 504;
+        }
+        return false;
+    }
+
+    /**
+     * Return the number of retries sent.
+     *
+     * @return the count.
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * Return the number of failures that were not retried because the retry budget was used up.
+     *
+     * @return the count.
+     */
+    public long getBudgetExhausted() {
+        return budgetExhausted.get();
+    }
+
+    /**
+     * Return the number of failed requests found to have taken effect by a lookup.
+     *
+     * @return the count.
+     */
+    public long getResolvedByLookup() {
+        return resolvedByLookup.get();
+    }
+
+    private <T> T lookupOrThrow(Supplier<T> lookup, RuntimeException failure) {
+        try {
+            return lookup.get();
+        } catch (RuntimeException e) {
+            // Whether the request has taken effect is unknown, so sending it again is not safe.
+            failure.addSuppressed(e);
+            throw failure;
+        }
+    }
+
+    /**
+     * Full jitter: a random delay up to the exponential backoff, but at least what the server asked for.
+     */
+    private long backoffMillis(int attempt, RuntimeException e) {
+        long exponential = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 30));
+        long delay = ThreadLocalRandom.current().nextLong(exponential + 1);
+        if (e instanceof HttpStatusCodeException && ((HttpStatusCodeException) e).getResponseHeaders() != null) {
+            String retryAfter = ((HttpStatusCodeException) e).getResponseHeaders().getFirst("Retry-After");
+            if (retryAfter != null && retryAfter.trim().matches("\\d+")) {
+                delay = Math.max(delay, Math.min(maxDelayMillis, TimeUnit.SECONDS.toMillis(Long.parseLong(
+                    retryAfter.trim()))));
+            }
+        }
+        return delay;
+    }
+
+    private static void sleep(long millis, RuntimeException failure) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw failure;
+        }
+    }
+
+    /**
+     * Lazily created default policy.
+     */
+    private static final class DefaultHolder {
+        private static final RetryPolicy DEFAULT = fromConfig();
+    }
+
+    /**
+     * Token bucket of retries.
+     */
+    private static final class RetryBudget {
+        private final double ratio;
+
+        private final double minPerSecond;
+
+        private final double capacity;
+
+        private double balance;
+
+        private long lastRefillNanos = System.nanoTime();
+
+        private RetryBudget(double ratio, double minPerSecond) {
+            this.ratio = ratio;
+            this.minPerSecond = minPerSecond;
+            this.capacity = Math.max(10, minPerSecond * 10);
+            this.balance = capacity;
+        }
+
+        private synchronized void onRequest() {
+            refill();
+            balance = Math.min(capacity, balance + ratio);
+        }
+
+        private synchronized boolean tryRetry() {
+            refill();
+            if (balance < 1) {
+                return false;
+            }
+            balance -= 1;
+            return true;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            double earned = (now - lastRefillNanos) * minPerSecond / TimeUnit.SECONDS.toNanos(1);
+            balance = Math.min(capacity, balance + earned);
+            lastRefillNanos = now;
+        }
+    }
+}
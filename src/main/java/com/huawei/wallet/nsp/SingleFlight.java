@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.nsp;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent calls with the same key: the first caller makes the call, and callers arriving while it's
+ * outstanding wait for it and share its result or failure. A call that starts after the outstanding one has
+ * completed makes a new call, so results are never cached.
+ *
+ * @param <K> the key type.
+ * @param <V> the result type.
+ * @since 2020-11-24
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private final AtomicLong sharedCalls = new AtomicLong();
+
+    /**
+     * Call, or join the outstanding call with the same key.
+     *
+     * @param key the call key, e.g. the request URL.
+     * @param call the call.
+     * @return the result of the call.
+     */
+    public V execute(K key, Supplier<V> call) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            sharedCalls.incrementAndGet();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+        calls.incrementAndGet();
+        try {
+            V result = call.get();
+            created.complete(result);
+            return result;
+        } catch (Throwable e) {
+            // Errors too, or the callers that joined would wait forever.
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    /**
+     * Return the number of calls made.
+     *
+     * @return the count.
+     */
+    public long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * Return the number of callers that joined an outstanding call instead of making their own.
+     *
+     * @return the count.
+     */
+    public long getSharedCalls() {
+        return sharedCalls.get();
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.nsp;
+
+import com.huawei.wallet.util.ConfigUtil;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Caches the gateway access token and refreshes it in the background shortly before it expires.
+ * Concurrent callers that find no valid token share a single in-flight token request. Each token endpoint has its own
+ * refresh thread, so a slow endpoint doesn't delay the tokens of the others. After a failed request, callers without a
+ * valid token fail fast until the retry delay has passed.
+ *
+ * @since 2020-11-02
+ */
+public final class TokenManager {
+    /**
+     * Default number of seconds before expiry at which a token is refreshed.
+     */
+    private static final int DEFAULT_REFRESH_AHEAD_SECONDS = 300;
+
+    /**
+     * Delay before retrying a failed background refresh. It doubles after each failure, up to MAX_RETRY_DELAY_MILLIS.
+     */
+    private static final long RETRY_DELAY_MILLIS = 1000L;
+
+    private static final long MAX_RETRY_DELAY_MILLIS = 60000L;
+
+    /**
+     * Token managers by token endpoint URL.
+     */
+    private static final ConcurrentMap<String, TokenManager> INSTANCES = new ConcurrentHashMap<>();
+
+    private final Supplier<AccessToken> fetcher;
+
+    private final long refreshAheadMillis;
+
+    /**
+     * Sends the token requests of this endpoint and schedules its refreshes. Its thread ends when idle.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    private final Object lock = new Object();
+
+    private volatile AccessToken current;
+
+    private CompletableFuture<AccessToken> inFlight;
+
+    private ScheduledFuture<?> scheduledRefresh;
+
+    /**
+     * Number of token requests that failed in a row. Guarded by lock.
+     */
+    private int failures;
+
+    /**
+     * Failure of the last token request, until a request succeeds. Guarded by lock.
+     */
+    private Throwable lastFailure;
+
+    /**
+     * Time before which callers without a valid token fail fast with lastFailure. Guarded by lock.
+     */
+    private long retryAtMillis;
+
+    /**
+     * Constructor.
+     *
+     * @param fetcher requests a new token from the token endpoint.
+     * @param refreshAheadMillis how long before expiry a token is refreshed.
+     */
+    TokenManager(Supplier<AccessToken> fetcher, long refreshAheadMillis) {
+        this.fetcher = fetcher;
+        this.refreshAheadMillis = refreshAheadMillis;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "wallet-token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setKeepAliveTime(1, TimeUnit.MINUTES);
+        executor.allowCoreThreadTimeOut(true);
+        this.scheduler = executor;
+    }
+
+    /**
+     * Create a token manager for a given token endpoint and app.
+     *
+     * @param tokenUrl token endpoint URL.
+     * @param clientId app ID.
+     * @param clientSecret app secret.
+     * @return the token manager.
+     */
+    public static TokenManager create(String tokenUrl, String clientId, String clientSecret) {
+        int refreshAheadSeconds =
+            ConfigUtil.instants().getIntValue("gw.token.refreshAheadSeconds", DEFAULT_REFRESH_AHEAD_SECONDS);
+        return new TokenManager(() -> NetworkService.requestToken(tokenUrl, clientId, clientSecret),
+            TimeUnit.SECONDS.toMillis(refreshAheadSeconds));
+    }
+
+    /**
+     * Singleton pattern implementation. The instance uses gw.tokenUrl, gw.appid and gw.appid.secret.
+     *
+     * @return the singleton instance.
+     */
+    public static TokenManager getInstance() {
+        return getInstance(ConfigUtil.instants().getValue("gw.tokenUrl"));
+    }
+
+    /**
+     * Get the shared token manager of a token endpoint, e.g. of a region. It uses gw.appid and gw.appid.secret.
+     *
+     * @param tokenUrl token endpoint URL.
+     * @return the token manager.
+     */
+    public static TokenManager getInstance(String tokenUrl) {
+        return INSTANCES.computeIfAbsent(tokenUrl, url -> {
+            ConfigUtil config = ConfigUtil.instants();
+            return create(url, config.getValue("gw.appid"), config.getValue("gw.appid.secret"));
+        });
+    }
+
+    /**
+     * Return a valid access token. Blocks only if there is no valid cached token.
+     *
+     * @return the access token string.
+     * @throws IllegalStateException if there is no valid token and the last token request failed less than the retry
+     *     delay ago, or if the token request fails.
+     */
+    public String getAccessToken() {
+        AccessToken token = current;
+        if (token != null && token.isValidAt(System.currentTimeMillis())) {
+            return token.getValue();
+        }
+        try {
+            return request().join().getValue();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Get access token failed.", cause);
+        }
+    }
+
+    /**
+     * Return a valid access token without blocking the calling thread.
+     *
+     * @return a future completed with the access token string.
+     */
+    public CompletableFuture<String> getAccessTokenAsync() {
+        AccessToken token = current;
+        if (token != null && token.isValidAt(System.currentTimeMillis())) {
+            return CompletableFuture.completedFuture(token.getValue());
+        }
+        return request().thenApply(AccessToken::getValue);
+    }
+
+    /**
+     * Drop the cached token, e.g. after the wallet server rejected it. The next caller fetches a new one.
+     */
+    public void invalidate() {
+        synchronized (lock) {
+            current = null;
+            if (scheduledRefresh != null) {
+                scheduledRefresh.cancel(false);
+                scheduledRefresh = null;
+            }
+        }
+    }
+
+    /**
+     * Drop the cached token if it's the one the wallet server rejected. A token fetched since then is kept, so
+     * concurrent requests rejected with the same token cause one token request only.
+     *
+     * @param rejectedToken the access token string that was rejected.
+     */
+    public void invalidate(String rejectedToken) {
+        synchronized (lock) {
+            AccessToken token = current;
+            if (token != null && token.getValue().equals(rejectedToken)) {
+                invalidate();
+            }
+        }
+    }
+
+    /**
+     * Request a token for a caller without a valid one, failing fast while the last request failed recently.
+     *
+     * @return the in-flight token request.
+     */
+    private CompletableFuture<AccessToken> request() {
+        synchronized (lock) {
+            if (inFlight == null && lastFailure != null && System.currentTimeMillis() < retryAtMillis) {
+                CompletableFuture<AccessToken> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new IllegalStateException("Get access token failed.", lastFailure));
+                return failed;
+            }
+            return refresh();
+        }
+    }
+
+    /**
+     * Start a token request unless one is already in flight.
+     *
+     * @return the in-flight token request.
+     */
+    private CompletableFuture<AccessToken> refresh() {
+        synchronized (lock) {
+            if (inFlight != null) {
+                return inFlight;
+            }
+            CompletableFuture<AccessToken> future = CompletableFuture.supplyAsync(fetcher, scheduler);
+            inFlight = future;
+            future.whenComplete(this::onRefreshed);
+            return future;
+        }
+    }
+
+    private void onRefreshed(AccessToken token, Throwable throwable) {
+        synchronized (lock) {
+            inFlight = null;
+            if (scheduledRefresh != null) {
+                scheduledRefresh.cancel(false);
+                scheduledRefresh = null;
+            }
+            if (token == null) {
+                // The request failed. Keep the old token until it really expires, and try again with backoff while
+                // it's still valid. Without a valid token, callers fail fast until the delay has passed, and the next
+                // caller after that sends the request.
+                long delay = Math.min(RETRY_DELAY_MILLIS << Math.min(failures, 16), MAX_RETRY_DELAY_MILLIS);
+                long now = System.currentTimeMillis();
+                lastFailure = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause() : throwable;
+                retryAtMillis = now + delay;
+                if (current != null && current.isValidAt(now)) {
+                    scheduledRefresh = scheduler.schedule(this::refresh, delay, TimeUnit.MILLISECONDS);
+                } else {
+                    current = null;
+                }
+                failures++;
+                return;
+            }
+            failures = 0;
+            lastFailure = null;
+            current = token;
+            long lifetime = token.getExpiresAtMillis() - System.currentTimeMillis();
+            // Short-lived tokens are refreshed halfway through their lifetime.
+            long delay = lifetime - Math.min(refreshAheadMillis, lifetime / 2);
+            scheduledRefresh = scheduler.schedule(this::refresh, Math.max(delay, 0L), TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -99,6 +99,44 @@ public final class ConfigUtil {
         return params.get(key);
     }
 
+    /**
+     * Get a specific integer value in a configuration file by its key.
+     *
+     * @param key the key to the value.
+     * @param defaultValue the value returned if the key is absent or empty.
+     * @return the integer value.
+     */
+    public int getIntValue(String key, int defaultValue) {
+        String value = params.get(key);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " is not a valid integer.");
+        }
+    }
+
+    /**
+     * Get a specific decimal value in a configuration file by its key.
+     *
+     * @param key the key to the value.
+     * @param defaultValue the value returned if the key is absent or empty.
+     * @return the decimal value.
+     */
+    public double getDoubleValue(String key, double defaultValue) {
+        String value = params.get(key);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " is not a valid number.");
+        }
+    }
+
     /**
      * Read a file in the test/resources/data folder.
      *
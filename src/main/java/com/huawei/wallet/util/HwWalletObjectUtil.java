@@ -16,6 +16,7 @@
 
 package com.huawei.wallet.util;
 
+import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import org.springframework.util.StringUtils;
 
@@ -23,8 +24,13 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * HwWalletObject utility class.
@@ -44,6 +50,14 @@ public class HwWalletObjectUtil {
     private static final List<String> STATE_TYPE_LIST =
         new ArrayList<>(Arrays.asList(STATE_ACTIVE, STATE_INACTIVE, STATE_COMPLETED, STATE_EXPIRED));
 
+    /**
+     * Top-level attributes of a model or instance a client writes. Other top-level attributes of a fetched object
+     * are managed by wallet server.
+     */
+    private static final Set<String> WRITABLE_ATTRIBUTES = new HashSet<>(Arrays.asList("passVersion",
+        "passTypeIdentifier", "passStyleIdentifier", "organizationName", "organizationPassId", "serialNumber", "fields",
+        "linkDevicePass"));
+
     /**
      * Validate a model.
      *
@@ -77,6 +91,163 @@ public class HwWalletObjectUtil {
         }
     }
 
+    /**
+     * Copy a model or instance, including its nested objects and arrays, so the copy can be changed without affecting
+     * the original.
+     *
+     * @param hwWalletObject the model or instance.
+     * @return the copy, or null if hwWalletObject is null.
+     */
+    public static JSONObject deepCopy(JSONObject hwWalletObject) {
+        return (JSONObject) copyValue(hwWalletObject);
+    }
+
+    private static Object copyValue(Object value) {
+        if (value instanceof JSONObject) {
+            JSONObject copy = new JSONObject(((JSONObject) value).size(), true);
+            for (Map.Entry<String, Object> entry : ((JSONObject) value).entrySet()) {
+                copy.put(entry.getKey(), copyValue(entry.getValue()));
+            }
+            return copy;
+        }
+        if (value instanceof JSONArray) {
+            JSONArray copy = new JSONArray(((JSONArray) value).size());
+            for (Object item : (JSONArray) value) {
+                copy.add(copyValue(item));
+            }
+            return copy;
+        }
+        // Strings, numbers and booleans are immutable.
+        return value;
+    }
+
+    /**
+     * Merge a later partial update into an earlier one, so that sending the result has the effect of sending both.
+     * Objects are merged recursively, and arrays of entries with a "key", e.g. appendFields, are merged by key. Any
+     * other value of the later update replaces the earlier one.
+     *
+     * @param earlier the earlier partial update, changed in place.
+     * @param later the later partial update. Its values are reused, so it must not be changed afterwards.
+     * @return the earlier partial update.
+     */
+    public static JSONObject mergePartialUpdates(JSONObject earlier, JSONObject later) {
+        for (Map.Entry<String, Object> entry : later.entrySet()) {
+            Object earlierValue = earlier.get(entry.getKey());
+            Object laterValue = entry.getValue();
+            if (earlierValue instanceof JSONObject && laterValue instanceof JSONObject) {
+                mergePartialUpdates((JSONObject) earlierValue, (JSONObject) laterValue);
+            } else if (isKeyedArray(earlierValue) && isKeyedArray(laterValue)) {
+                mergeByKey((JSONArray) earlierValue, (JSONArray) laterValue);
+            } else {
+                earlier.put(entry.getKey(), laterValue);
+            }
+        }
+        return earlier;
+    }
+
+    /**
+     * Compute the partial update that turns a model or instance into a desired state. Objects are compared
+     * recursively. Arrays of entries with a "key", e.g. commonFields, appendFields and timeList, are compared by key
+     * and only new or changed entries are included. Any other changed value is included as a whole.
+     * <p>
+     * A partial update can't remove anything, so if the desired state lacks a keyed entry, an attribute nested in
+     * fields or linkDevicePass, or one of the top-level attributes passVersion, passTypeIdentifier,
+     * passStyleIdentifier, organizationName, organizationPassId, serialNumber, fields and linkDevicePass of the current
+     * one, there is no partial update and a full update is needed. Other top-level attributes are added by wallet
+     * server to fetched objects, so they are ignored when missing from the desired state.
+     *
+     * @param current the current model or instance, e.g. a cached copy.
+     * @param desired the desired model or instance.
+     * @return the partial update, empty if nothing changed, or null if something was removed.
+     */
+    public static JSONObject diffPartialUpdate(JSONObject current, JSONObject desired) {
+        return diffObjects(current, desired, true);
+    }
+
+    private static JSONObject diffObjects(JSONObject current, JSONObject desired, boolean topLevel) {
+        JSONObject diff = new JSONObject(true);
+        for (String key : current.keySet()) {
+            if (!desired.containsKey(key) && (!topLevel || WRITABLE_ATTRIBUTES.contains(key))) {
+                return null;
+            }
+        }
+        for (Map.Entry<String, Object> entry : desired.entrySet()) {
+            Object currentValue = current.get(entry.getKey());
+            Object desiredValue = entry.getValue();
+            if (currentValue instanceof JSONObject && desiredValue instanceof JSONObject) {
+                JSONObject valueDiff = diffObjects((JSONObject) currentValue, (JSONObject) desiredValue, false);
+                if (valueDiff == null) {
+                    return null;
+                }
+                if (!valueDiff.isEmpty()) {
+                    diff.put(entry.getKey(), valueDiff);
+                }
+            } else if (isKeyedArray(currentValue) && isKeyedArray(desiredValue)) {
+                JSONArray arrayDiff = diffByKey((JSONArray) currentValue, (JSONArray) desiredValue);
+                if (arrayDiff == null) {
+                    return null;
+                }
+                if (!arrayDiff.isEmpty()) {
+                    diff.put(entry.getKey(), arrayDiff);
+                }
+            } else if (!Objects.equals(currentValue, desiredValue)) {
+                diff.put(entry.getKey(), desiredValue);
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Return the new or changed entries of a keyed array, or null if an entry was removed.
+     */
+    private static JSONArray diffByKey(JSONArray current, JSONArray desired) {
+        Map<String, Object> currentByKey = new HashMap<>();
+        for (Object item : current) {
+            currentByKey.put(((JSONObject) item).getString("key"), item);
+        }
+        JSONArray diff = new JSONArray();
+        for (Object item : desired) {
+            Object currentItem = currentByKey.remove(((JSONObject) item).getString("key"));
+            if (!item.equals(currentItem)) {
+                diff.add(item);
+            }
+        }
+        return currentByKey.isEmpty() ? diff : null;
+    }
+
+    /**
+     * Check if a value is a non-empty array of objects that all have a "key".
+     */
+    private static boolean isKeyedArray(Object value) {
+        if (!(value instanceof JSONArray) || ((JSONArray) value).isEmpty()) {
+            return false;
+        }
+        for (Object item : (JSONArray) value) {
+            if (!(item instanceof JSONObject) || ((JSONObject) item).getString("key") == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void mergeByKey(JSONArray earlier, JSONArray later) {
+        for (Object laterItem : later) {
+            String key = ((JSONObject) laterItem).getString("key");
+            JSONObject match = null;
+            for (Object earlierItem : earlier) {
+                if (key.equals(((JSONObject) earlierItem).getString("key"))) {
+                    match = (JSONObject) earlierItem;
+                    break;
+                }
+            }
+            if (match == null) {
+                earlier.add(laterItem);
+            } else {
+                mergePartialUpdates(match, (JSONObject) laterItem);
+            }
+        }
+    }
+
     /**
      * Check a required attribute.
      *
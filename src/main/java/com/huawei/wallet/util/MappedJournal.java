@@ -0,0 +1,293 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.util;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of records stored in memory-mapped segment files.
+ * <p>
+ * A record is written as its length, the CRC32 of its payload, a state byte and the payload. The length is written
+ * last, so a record cut short by a crash is seen as the end of the segment. Completing a record flips its state byte
+ * in place, and a segment is deleted once all its records are complete and a newer segment exists. Records reach the
+ * page cache when appended, so they survive a crash of the process; with sync enabled they are also forced to disk.
+ *
+ * @since 2020-12-01
+ */
+public class MappedJournal implements AutoCloseable {
+    private static final int HEADER_SIZE = 9;
+
+    private static final byte STATE_PENDING = 0;
+
+    private static final byte STATE_DONE = 1;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final boolean sync;
+
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+
+    private final List<Record> recovered = new ArrayList<>();
+
+    private Segment active;
+
+    private long deleteFailures;
+
+    /**
+     * Open a journal and recover its pending records.
+     *
+     * @param directory directory of the segment files.
+     * @param segmentSize size of a segment file in bytes.
+     * @param sync true to force every append and completion to disk.
+     * @throws IOException if the journal can't be opened.
+     */
+    public MappedJournal(Path directory, int segmentSize, boolean sync) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.sync = sync;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int index = Integer.parseInt(
+                    name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                segments.put(index, open(index));
+            }
+        }
+        for (Segment segment : segments.values()) {
+            recover(segment);
+        }
+        // Append to a new segment, after the recovered records.
+        active = open(segments.isEmpty() ? 0 : segments.lastKey() + 1);
+        segments.put(active.index, active);
+        deleteCompletedSegments();
+    }
+
+    /**
+     * Return the records that were pending when the journal was opened, in append order.
+     *
+     * @return the pending records.
+     */
+    public List<Record> getRecovered() {
+        return Collections.unmodifiableList(recovered);
+    }
+
+    /**
+     * Append a pending record.
+     *
+     * @param payload the record payload.
+     * @return the record.
+     * @throws IOException if a new segment can't be created.
+     */
+    public synchronized Record append(byte[] payload) throws IOException {
+        int recordSize = HEADER_SIZE + payload.length;
+        if (recordSize + 4 > segmentSize) {
+            throw new IllegalArgumentException("The record exceeds the segment size.");
+        }
+        // Keep 4 bytes for the zero length marking the end of the segment.
+        if (active.writePosition + recordSize + 4 > segmentSize) {
+            active = open(active.index + 1);
+            segments.put(active.index, active);
+            deleteCompletedSegments();
+        }
+        int offset = active.writePosition;
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        MappedByteBuffer buffer = active.buffer;
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        buffer.put(offset + 8, STATE_PENDING);
+        for (int i = 0; i < payload.length; i++) {
+            buffer.put(offset + HEADER_SIZE + i, payload[i]);
+        }
+        buffer.putInt(offset, payload.length);
+        if (sync) {
+            buffer.force();
+        }
+        active.writePosition += recordSize;
+        active.pending++;
+        return new Record(active.index, offset, payload);
+    }
+
+    /**
+     * Mark a record as complete, so it's not recovered again.
+     *
+     * @param record the record.
+     */
+    public synchronized void complete(Record record) {
+        Segment segment = segments.get(record.segmentIndex);
+        if (segment == null || segment.buffer.get(record.offset + 8) == STATE_DONE) {
+            return;
+        }
+        segment.buffer.put(record.offset + 8, STATE_DONE);
+        if (sync) {
+            segment.buffer.force();
+        }
+        segment.pending--;
+        if (segment.pending == 0 && segment != active) {
+            deleteCompletedSegments();
+        }
+    }
+
+    /**
+     * Return the number of pending records.
+     *
+     * @return the count.
+     */
+    public synchronized int getPendingCount() {
+        int count = 0;
+        for (Segment segment : segments.values()) {
+            count += segment.pending;
+        }
+        return count;
+    }
+
+    /**
+     * Return the number of failed attempts to delete a completed segment file. A failed deletion is attempted again
+     * the next time a segment is completed or created.
+     *
+     * @return the count.
+     */
+    public synchronized long getDeleteFailures() {
+        return deleteFailures;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+            segment.channel.close();
+        }
+        segments.clear();
+    }
+
+    private Segment open(int index) throws IOException {
+        Path file = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        FileChannel channel =
+            FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        return new Segment(index, file, channel, buffer);
+    }
+
+    private void recover(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        while (offset + HEADER_SIZE <= segmentSize) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER_SIZE + length > segmentSize) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            for (int i = 0; i < length; i++) {
+                payload[i] = buffer.get(offset + HEADER_SIZE + i);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                // A record torn by a crash ends the segment.
+                break;
+            }
+            if (buffer.get(offset + 8) == STATE_PENDING) {
+                recovered.add(new Record(segment.index, offset, payload));
+                segment.pending++;
+            }
+            offset += HEADER_SIZE + length;
+        }
+        segment.writePosition = segmentSize;
+    }
+
+    private void deleteCompletedSegments() {
+        Iterator<Map.Entry<Integer, Segment>> iterator = segments.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next().getValue();
+            if (segment == active || segment.pending > 0) {
+                continue;
+            }
+            try {
+                segment.channel.close();
+                Files.deleteIfExists(segment.file);
+                iterator.remove();
+            } catch (IOException e) {
+                // A mapped file may not be deletable on some platforms. It's retried later.
+                deleteFailures++;
+            }
+        }
+    }
+
+    /**
+     * A journal record.
+     */
+    public static final class Record {
+        private final int segmentIndex;
+
+        private final int offset;
+
+        private final byte[] payload;
+
+        private Record(int segmentIndex, int offset, byte[] payload) {
+            this.segmentIndex = segmentIndex;
+            this.offset = offset;
+            this.payload = payload;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    /**
+     * A segment file.
+     */
+    private static final class Segment {
+        private final int index;
+
+        private final Path file;
+
+        private final FileChannel channel;
+
+        private final MappedByteBuffer buffer;
+
+        private int writePosition;
+
+        private int pending;
+
+        private Segment(int index, Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.index = index;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
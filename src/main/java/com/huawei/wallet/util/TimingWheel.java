@@ -0,0 +1,263 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel of timers with millisecond deadlines.
+ * <p>
+ * Level 0 has wheelSize buckets of tickMillis each. Every higher level has wheelSize buckets, each as long as a whole
+ * turn of the level below, and is created when a timer is too far in the future for the existing levels. A timer is
+ * put in a bucket of the lowest level that covers its deadline, and moved down a level when its bucket comes due.
+ * Scheduling and cancelling a timer are O(1). A timer fires in the first tick at or after its deadline, and the
+ * timers that come due in the same tick are delivered as one batch.
+ *
+ * @param <T> type of the timer tasks.
+ * @since 2020-12-03
+ */
+public class TimingWheel<T> {
+    private final long tickMillis;
+
+    private final int wheelSize;
+
+    /**
+     * Buckets of each level. Guarded by this, like all state below.
+     */
+    private final List<Bucket<T>[]> levels = new ArrayList<>();
+
+    /**
+     * Timers due at the next advance.
+     */
+    private final Bucket<T> due = new Bucket<>();
+
+    /**
+     * Start of the current tick, a multiple of tickMillis.
+     */
+    private long currentTime;
+
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param tickMillis duration of a level 0 bucket.
+     * @param wheelSize number of buckets of each level.
+     * @param startMillis current time.
+     */
+    public TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        if (tickMillis <= 0 || wheelSize < 2) {
+            throw new IllegalArgumentException("Invalid timing wheel size.");
+        }
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.currentTime = startMillis - startMillis % tickMillis;
+    }
+
+    /**
+     * Schedule a timer.
+     *
+     * @param deadlineMillis time the timer is due. A timer in the past is due at the next advance.
+     * @param task the timer task.
+     * @return the timer, which can be cancelled.
+     */
+    public synchronized Timeout<T> schedule(long deadlineMillis, T task) {
+        Timeout<T> timeout = new Timeout<>(this, deadlineMillis, task);
+        // Round up, so a timer never fires before its deadline.
+        timeout.expiration = Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis) * tickMillis;
+        add(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Advance the wheel to a time, delivering the timers that came due, one batch per tick.
+     *
+     * @param nowMillis the current time.
+     * @param sink receives the tasks of each batch. It's called while the wheel is locked, so it must not block.
+     */
+    public synchronized void advance(long nowMillis, Consumer<List<T>> sink) {
+        fire(due, sink);
+        while (currentTime + tickMillis <= nowMillis) {
+            currentTime += tickMillis;
+            long tick = tickMillis;
+            for (Bucket<T>[] buckets : levels) {
+                if (currentTime % tick != 0) {
+                    break;
+                }
+                // Timers of a due bucket are due now, or moved down to a finer level.
+                Bucket<T> bucket = buckets[(int) ((currentTime / tick) % wheelSize)];
+                for (Timeout<T> timeout = bucket.removeAll(); timeout != null; ) {
+                    Timeout<T> next = timeout.next;
+                    timeout.next = null;
+                    add(timeout);
+                    timeout = next;
+                }
+                tick *= wheelSize;
+            }
+            fire(due, sink);
+        }
+    }
+
+    /**
+     * Return the number of scheduled timers.
+     *
+     * @return the count.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private void add(Timeout<T> timeout) {
+        if (timeout.expiration <= currentTime) {
+            due.add(timeout);
+            return;
+        }
+        long tick = tickMillis;
+        for (int level = 0;; level++) {
+            long levelStart = currentTime - currentTime % tick;
+            if (timeout.expiration < levelStart + tick * wheelSize) {
+                getBuckets(level)[(int) ((timeout.expiration / tick) % wheelSize)].add(timeout);
+                return;
+            }
+            tick *= wheelSize;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Bucket<T>[] getBuckets(int level) {
+        while (levels.size() <= level) {
+            Bucket<T>[] buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket<>();
+            }
+            levels.add(buckets);
+        }
+        return levels.get(level);
+    }
+
+    private void fire(Bucket<T> bucket, Consumer<List<T>> sink) {
+        if (bucket.head == null) {
+            return;
+        }
+        List<T> batch = new ArrayList<>();
+        for (Timeout<T> timeout = bucket.removeAll(); timeout != null; timeout = timeout.next) {
+            batch.add(timeout.task);
+            size--;
+        }
+        sink.accept(batch);
+    }
+
+    private synchronized boolean cancel(Timeout<T> timeout) {
+        if (timeout.bucket == null) {
+            return false;
+        }
+        timeout.bucket.remove(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+     * A scheduled timer.
+     *
+     * @param <T> type of the timer task.
+     */
+    public static final class Timeout<T> {
+        private final TimingWheel<T> wheel;
+
+        private final long deadlineMillis;
+
+        private final T task;
+
+        private long expiration;
+
+        private Bucket<T> bucket;
+
+        private Timeout<T> previous;
+
+        private Timeout<T> next;
+
+        private Timeout(TimingWheel<T> wheel, long deadlineMillis, T task) {
+            this.wheel = wheel;
+            this.deadlineMillis = deadlineMillis;
+            this.task = task;
+        }
+
+        /**
+         * Cancel the timer.
+         *
+         * @return true if the timer was cancelled, false if it had already fired or been cancelled.
+         */
+        public boolean cancel() {
+            return wheel.cancel(this);
+        }
+
+        public long getDeadlineMillis() {
+            return deadlineMillis;
+        }
+
+        public T getTask() {
+            return task;
+        }
+    }
+
+    /**
+     * Doubly linked list of timers.
+     */
+    private static final class Bucket<T> {
+        private Timeout<T> head;
+
+        private void add(Timeout<T> timeout) {
+            timeout.bucket = this;
+            timeout.previous = null;
+            timeout.next = head;
+            if (head != null) {
+                head.previous = timeout;
+            }
+            head = timeout;
+        }
+
+        private void remove(Timeout<T> timeout) {
+            if (timeout.previous == null) {
+                head = timeout.next;
+            } else {
+                timeout.previous.next = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.bucket = null;
+            timeout.previous = null;
+            timeout.next = null;
+        }
+
+        /**
+         * Detach all timers and return the first one. The timers stay linked by next.
+         */
+        private Timeout<T> removeAll() {
+            Timeout<T> first = head;
+            for (Timeout<T> timeout = first; timeout != null; timeout = timeout.next) {
+                timeout.bucket = null;
+                timeout.previous = null;
+            }
+            head = null;
+            return first;
+        }
+    }
+}
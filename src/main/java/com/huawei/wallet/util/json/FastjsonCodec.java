@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.huawei.wallet.util.json;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * Codec based on fastjson. Typed objects are read and written by the serializers fastjson generates for their class.
+ *
+ * @since 2020-12-08
+ */
+public class FastjsonCodec implements JsonCodec {
+    @Override
+    public String getName() {
+        return "fastjson";
+    }
+
+    @Override
+    public JSONObject parseObject(byte[] json) {
+        return parseObject(json, JSONObject.class);
+    }
+
+    @Override
+    public <T> T parseObject(byte[] json, Class<T> type) {
+        if (json == null || json.length == 0) {
+            return null;
+        }
+        try {
+            return JSON.parseObject(json, type);
+        } catch (JSONException | ClassCastException e) {
+            throw new IllegalArgumentException("Invalid JSON: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public byte[] toJsonBytes(Object value) {
+        return JSON.toJSONBytes(value);
+    }
+}
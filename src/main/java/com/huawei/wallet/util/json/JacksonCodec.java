@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.huawei.wallet.util.json;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Codec based on Jackson databind. Nested objects and arrays are read as JSONObject and JSONArray, and decimals as
+ * BigDecimal, like fastjson reads them.
+ *
+ * @since 2020-12-08
+ */
+public class JacksonCodec implements JsonCodec {
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Constructor.
+     */
+    public JacksonCodec() {
+        SimpleModule fastjsonTrees = new SimpleModule("fastjson-trees");
+        fastjsonTrees.addAbstractTypeMapping(Map.class, JSONObject.class);
+        fastjsonTrees.addAbstractTypeMapping(List.class, JSONArray.class);
+        objectMapper = new ObjectMapper().registerModule(fastjsonTrees)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .configure(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS, true)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    }
+
+    @Override
+    public String getName() {
+        return "jackson";
+    }
+
+    @Override
+    public JSONObject parseObject(byte[] json) {
+        return parseObject(json, JSONObject.class);
+    }
+
+    @Override
+    public <T> T parseObject(byte[] json, Class<T> type) {
+        if (json == null || json.length == 0) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid JSON: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public byte[] toJsonBytes(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Write JSON failed: " + e.getMessage(), e);
+        }
+    }
+}
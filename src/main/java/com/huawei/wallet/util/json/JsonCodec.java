@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.huawei.wallet.util.json;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads and writes JSON. Every JSON body the client sends or receives goes through a codec, selected by json.codec in
+ * release.config.properties. Trees are always fastjson JSONObject and JSONArray, the types of the client API, whatever
+ * library parses them. Other codecs can be plugged in with java.util.ServiceLoader, see {@link JsonCodecs}.
+ * <p>
+ * HwWalletObjectUtil does not use a codec because it only works on trees that are already parsed. Callback signatures
+ * do not use one either: the signed string is built from the sorted keys and values of the callback body, not from
+ * JSON text, so it must not depend on how a codec writes JSON.
+ *
+ * @since 2020-12-08
+ */
+public interface JsonCodec {
+    /**
+     * Return the name of the codec, the value of json.codec that selects it.
+     *
+     * @return the name.
+     */
+    String getName();
+
+    /**
+     * Parse a JSON object.
+     *
+     * @param json UTF-8 JSON bytes.
+     * @return the object, or null if the bytes are empty.
+     * @throws IllegalArgumentException if the bytes are not a JSON object.
+     */
+    JSONObject parseObject(byte[] json);
+
+    /**
+     * Parse a JSON object into a typed object, e.g. a HwWalletObject. Unknown attributes are ignored.
+     *
+     * @param json UTF-8 JSON bytes.
+     * @param type the class of the object.
+     * @param <T> the type of the object.
+     * @return the object, or null if the bytes are empty.
+     * @throws IllegalArgumentException if the bytes are not a JSON object of the type.
+     */
+    <T> T parseObject(byte[] json, Class<T> type);
+
+    /**
+     * Parse a JSON object from text.
+     *
+     * @param json JSON text.
+     * @return the object, or null if the text is empty.
+     * @throws IllegalArgumentException if the text is not a JSON object.
+     */
+    default JSONObject parseObject(String json) {
+        return json == null ? null : parseObject(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Write a value as JSON: a tree, a map, a list, or a typed object. Null attributes are left out.
+     *
+     * @param value the value.
+     * @return UTF-8 JSON bytes.
+     */
+    byte[] toJsonBytes(Object value);
+
+    /**
+     * Write a value as JSON text, like {@link #toJsonBytes(Object)}.
+     *
+     * @param value the value.
+     * @return JSON text.
+     */
+    default String toJsonString(Object value) {
+        return new String(toJsonBytes(value), StandardCharsets.UTF_8);
+    }
+}
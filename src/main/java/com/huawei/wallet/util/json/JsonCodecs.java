@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.huawei.wallet.util.json;
+
+import com.huawei.wallet.util.ConfigUtil;
+
+import java.util.ServiceLoader;
+
+/**
+ * Finds JSON codecs by name: the built-in "fastjson", "jackson" and "streaming" codecs, and codecs registered in
+ * META-INF/services/com.huawei.wallet.util.json.JsonCodec.
+ *
+ * @since 2020-12-08
+ */
+public final class JsonCodecs {
+    private JsonCodecs() {
+    }
+
+    /**
+     * Return the codec selected by json.codec in release.config.properties, fastjson by default.
+     *
+     * @return the codec.
+     */
+    public static JsonCodec getDefault() {
+        return DefaultHolder.DEFAULT;
+    }
+
+    /**
+     * Return a codec by name.
+     *
+     * @param name the codec name.
+     * @return the codec.
+     * @throws IllegalArgumentException if there is no codec with this name.
+     */
+    public static JsonCodec get(String name) {
+        switch (name) {
+            case "fastjson":
+                return new FastjsonCodec();
+            case "jackson":
+                return new JacksonCodec();
+            case "streaming":
+                return new StreamingJsonCodec();
+            default:
+                for (JsonCodec codec : ServiceLoader.load(JsonCodec.class)) {
+                    if (name.equals(codec.getName())) {
+                        return codec;
+                    }
+                }
+                throw new IllegalArgumentException("Unknown JSON codec: " + name);
+        }
+    }
+
+    /**
+     * Holds the default codec, created on first use.
+     */
+    private static final class DefaultHolder {
+        private static final JsonCodec DEFAULT = create();
+
+        private static JsonCodec create() {
+            String name = ConfigUtil.instants().getValue("json.codec");
+            return get(name == null || name.trim().isEmpty() ? "fastjson" : name.trim());
+        }
+    }
+}
@@ -0,0 +1,646 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.util.json;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Read-only view of a JSON object held as its raw UTF-8 bytes. Nothing is decoded up front. The first access scans the
+ * bytes once and records where each object and array of the document ends. Indexing an object then records where the
+ * value of each attribute starts and ends, and jumps over nested objects and arrays instead of scanning them again.
+ * An attribute is decoded only when it's read, and a nested object is returned as a view of the same bytes. Callers
+ * reading a few attributes of a large object, e.g. serialNumber and fields.status.state of each instance of a crawl,
+ * never build the rest of the tree. Use {@link #toJSONObject()} to get the whole tree.
+ * <p>
+ * A view is immutable and can be shared between threads. It holds on to the bytes it was created from.
+ *
+ * @since 2020-12-10
+ */
+public final class LazyJsonObject {
+    /**
+     * Bytes that matter when scanning the document: quotes, opening and closing brackets, and colons.
+     */
+    private static final byte[] STRUCTURE = new byte[256];
+
+    private static final byte QUOTE = 1;
+
+    private static final byte OPEN = 2;
+
+    private static final byte CLOSE = 3;
+
+    private static final byte COLON = 4;
+
+    /**
+     * Slot layout of the attribute index: position and hash of the name, position of the value, and the end of a
+     * scalar value or the complement of the number of an object or array value among those of the document.
+     */
+    private static final int NAME_START = 0;
+
+    private static final int NAME_HASH = 1;
+
+    private static final int VALUE_START = 2;
+
+    private static final int VALUE_END = 3;
+
+    private static final int SLOT_SIZE = 4;
+
+    static {
+        STRUCTURE['"'] = QUOTE;
+        STRUCTURE['{'] = OPEN;
+        STRUCTURE['['] = OPEN;
+        STRUCTURE['}'] = CLOSE;
+        STRUCTURE[']'] = CLOSE;
+        STRUCTURE[':'] = COLON;
+    }
+
+    private final byte[] json;
+
+    private final int start;
+
+    /**
+     * Number of the object among the objects and arrays of the document, counted in the order they open.
+     */
+    private final int ordinal;
+
+    /**
+     * Ends of the objects and arrays of the document, shared by the views of one document. Built on first access of
+     * the root view; views of nested objects are created with it.
+     */
+    private volatile Containers containers;
+
+    /**
+     * Attribute index, one slot per attribute, built on first access. Names are kept as positions and hashes, and
+     * compared with the bytes only when the hashes match, so indexing allocates no strings. A racing first access
+     * builds the same index twice, which is harmless.
+     */
+    private volatile int[] attributes;
+
+    private LazyJsonObject(byte[] json, int start, int ordinal, Containers containers) {
+        this.json = json;
+        this.start = start;
+        this.ordinal = ordinal;
+        this.containers = containers;
+    }
+
+    /**
+     * Create a view of a JSON object. The bytes are not copied, so they must not be modified afterwards.
+     *
+     * @param json UTF-8 JSON bytes of an object.
+     * @return the view.
+     * @throws IllegalArgumentException if the bytes are not a JSON object.
+     */
+    public static LazyJsonObject of(byte[] json) {
+        int first = skipWhitespace(json, 0, json.length);
+        if (first >= json.length || json[first] != '{') {
+            throw new IllegalArgumentException("Invalid JSON: not an object.");
+        }
+        return new LazyJsonObject(json, first, 0, null);
+    }
+
+    /**
+     * Return whether the object has an attribute.
+     *
+     * @param name the attribute name.
+     * @return true if the attribute exists, even with a null value.
+     */
+    public boolean containsKey(String name) {
+        return find(getAttributes(), name) >= 0;
+    }
+
+    /**
+     * Return the attribute names, in the order of the JSON text.
+     *
+     * @return the names.
+     */
+    public Set<String> keySet() {
+        int[] slots = getAttributes();
+        Set<String> names = new LinkedHashSet<>();
+        for (int at = 0; at < slots.length; at += SLOT_SIZE) {
+            int nameStart = slots[at + NAME_START];
+            names.add(decodeString(json, nameStart, skipString(json, nameStart, json.length)));
+        }
+        return Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * Return an attribute as a string. Other scalars are returned as their JSON text, like JSONObject.getString.
+     *
+     * @param name the attribute name.
+     * @return the value, or null if the attribute is missing or null.
+     */
+    public String getString(String name) {
+        int[] slots = getAttributes();
+        int at = find(slots, name);
+        if (at < 0) {
+            return null;
+        }
+        int valueStart = slots[at + VALUE_START];
+        int valueEnd = valueEnd(slots, at);
+        if (json[valueStart] == '"') {
+            return decodeString(json, valueStart, valueEnd);
+        }
+        if (isNull(valueStart, valueEnd)) {
+            return null;
+        }
+        return new String(json, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Return an attribute as an integer.
+     *
+     * @param name the attribute name.
+     * @return the value, or null if the attribute is missing or null.
+     * @throws NumberFormatException if the value is not a number.
+     */
+    public Integer getInteger(String name) {
+        BigDecimal value = getBigDecimal(name);
+        return value == null ? null : value.intValue();
+    }
+
+    /**
+     * Return an attribute as a long.
+     *
+     * @param name the attribute name.
+     * @return the value, or null if the attribute is missing or null.
+     * @throws NumberFormatException if the value is not a number.
+     */
+    public Long getLong(String name) {
+        BigDecimal value = getBigDecimal(name);
+        return value == null ? null : value.longValue();
+    }
+
+    /**
+     * Return an attribute as a decimal, e.g. an amount.
+     *
+     * @param name the attribute name.
+     * @return the value, or null if the attribute is missing or null.
+     * @throws NumberFormatException if the value is not a number.
+     */
+    public BigDecimal getBigDecimal(String name) {
+        String text = getString(name);
+        return text == null || text.isEmpty() ? null : new BigDecimal(text.trim());
+    }
+
+    /**
+     * Return an attribute as a boolean.
+     *
+     * @param name the attribute name.
+     * @return the value, or null if the attribute is missing or null.
+     */
+    public Boolean getBoolean(String name) {
+        String text = getString(name);
+        return text == null ? null : Boolean.valueOf(text);
+    }
+
+    /**
+     * Return an object attribute as a view of the same bytes.
+     *
+     * @param name the attribute name.
+     * @return the view, or null if the attribute is missing or null.
+     * @throws IllegalArgumentException if the value is not an object.
+     */
+    public LazyJsonObject getObject(String name) {
+        int[] slots = getAttributes();
+        int at = find(slots, name);
+        if (at < 0 || isNull(slots[at + VALUE_START], valueEnd(slots, at))) {
+            return null;
+        }
+        if (json[slots[at + VALUE_START]] != '{') {
+            throw new IllegalArgumentException("Attribute " + name + " is not an object.");
+        }
+        return new LazyJsonObject(json, slots[at + VALUE_START], ~slots[at + VALUE_END], getContainers());
+    }
+
+    /**
+     * Return an array of objects as views of the same bytes, e.g. data of a batch query result, or commonFields of an
+     * instance. Null elements are left out.
+     *
+     * @param name the attribute name.
+     * @return the views, empty if the attribute is missing or null.
+     * @throws IllegalArgumentException if the value is not an array of objects.
+     */
+    public List<LazyJsonObject> getObjectList(String name) {
+        int[] slots = getAttributes();
+        int at = find(slots, name);
+        if (at < 0 || isNull(slots[at + VALUE_START], valueEnd(slots, at))) {
+            return Collections.emptyList();
+        }
+        if (json[slots[at + VALUE_START]] != '[') {
+            throw new IllegalArgumentException("Attribute " + name + " is not an array.");
+        }
+        Containers document = getContainers();
+        // The closing bracket, and the number of the first object or array inside the array.
+        int limit = document.ends[~slots[at + VALUE_END]] - 1;
+        int nested = ~slots[at + VALUE_END] + 1;
+        List<LazyJsonObject> objects = new ArrayList<>();
+        int position = skipWhitespace(json, slots[at + VALUE_START] + 1, limit);
+        while (position < limit) {
+            int elementEnd;
+            if (json[position] == '{') {
+                objects.add(new LazyJsonObject(json, position, nested, document));
+                elementEnd = document.ends[nested];
+                nested = document.next[nested];
+            } else {
+                elementEnd = skipScalar(json, position, limit);
+                if (!isNull(position, elementEnd)) {
+                    throw new IllegalArgumentException("Attribute " + name + " is not an array of objects.");
+                }
+            }
+            position = skipWhitespace(json, elementEnd, limit);
+            if (position < limit && json[position] == ',') {
+                position = skipWhitespace(json, position + 1, limit);
+            }
+        }
+        return objects;
+    }
+
+    /**
+     * Return an array attribute, decoded as a whole.
+     *
+     * @param name the attribute name.
+     * @return the array, or null if the attribute is missing or null.
+     */
+    public JSONArray getJSONArray(String name) {
+        int[] slots = getAttributes();
+        int at = find(slots, name);
+        if (at < 0 || isNull(slots[at + VALUE_START], valueEnd(slots, at))) {
+            return null;
+        }
+        return JSON.parseArray(new String(json, slots[at + VALUE_START],
+            valueEnd(slots, at) - slots[at + VALUE_START], StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Return an attribute, decoded: a JSONObject, JSONArray, String, Number or Boolean.
+     *
+     * @param name the attribute name.
+     * @return the value, or null if the attribute is missing or null.
+     */
+    public Object get(String name) {
+        int[] slots = getAttributes();
+        int at = find(slots, name);
+        if (at < 0) {
+            return null;
+        }
+        int valueStart = slots[at + VALUE_START];
+        int valueEnd = valueEnd(slots, at);
+        switch (json[valueStart]) {
+            case '{':
+                return getObject(name).toJSONObject();
+            case '[':
+                return getJSONArray(name);
+            case '"':
+                return decodeString(json, valueStart, valueEnd);
+            case 't':
+            case 'f':
+                return Boolean.valueOf(getString(name));
+            case 'n':
+                return null;
+            default:
+                return decodeNumber(getString(name));
+        }
+    }
+
+    /**
+     * Decode the whole object.
+     *
+     * @return the tree.
+     */
+    public JSONObject toJSONObject() {
+        return JsonCodecs.getDefault().parseObject(toJsonBytes());
+    }
+
+    /**
+     * Return the JSON bytes of the object.
+     *
+     * @return a copy of the bytes.
+     */
+    public byte[] toJsonBytes() {
+        return Arrays.copyOfRange(json, start, getContainers().ends[ordinal]);
+    }
+
+    @Override
+    public String toString() {
+        return new String(json, start, getContainers().ends[ordinal] - start, StandardCharsets.UTF_8);
+    }
+
+    private Containers getContainers() {
+        Containers document = containers;
+        if (document == null) {
+            document = new Containers(json, start);
+            containers = document;
+        }
+        return document;
+    }
+
+    private int[] getAttributes() {
+        int[] slots = attributes;
+        if (slots == null) {
+            slots = index(getContainers());
+            attributes = slots;
+        }
+        return slots;
+    }
+
+    /**
+     * Index the attributes of the object, jumping over nested objects and arrays.
+     */
+    private int[] index(Containers document) {
+        int[] slots = new int[document.members[ordinal] * SLOT_SIZE];
+        // The closing brace, and the number of the first object or array inside the object.
+        int limit = document.ends[ordinal] - 1;
+        int nested = ordinal + 1;
+        int at = 0;
+        int i = skipWhitespace(json, start + 1, limit);
+        while (i < limit) {
+            if (json[i] != '"' || at == slots.length) {
+                throw new IllegalArgumentException("Invalid JSON: expected a name at " + i + ".");
+            }
+            int nameEnd = skipString(json, i, limit);
+            slots[at + NAME_START] = i;
+            slots[at + NAME_HASH] = hashName(json, i, nameEnd);
+            i = skipWhitespace(json, nameEnd, limit);
+            if (i >= limit || json[i] != ':') {
+                throw new IllegalArgumentException("Invalid JSON: expected ':' at " + i + ".");
+            }
+            int valueStart = skipWhitespace(json, i + 1, limit);
+            int valueEnd;
+            slots[at + VALUE_START] = valueStart;
+            if (valueStart < limit && (json[valueStart] == '{' || json[valueStart] == '[')) {
+                valueEnd = document.ends[nested];
+                slots[at + VALUE_END] = ~nested;
+                nested = document.next[nested];
+            } else {
+                valueEnd = skipScalar(json, valueStart, limit);
+                slots[at + VALUE_END] = valueEnd;
+            }
+            at += SLOT_SIZE;
+            i = skipWhitespace(json, valueEnd, limit);
+            if (i < limit && json[i] == ',') {
+                i = skipWhitespace(json, i + 1, limit);
+            }
+        }
+        if (at != slots.length) {
+            throw new IllegalArgumentException("Invalid JSON: unexpected ':' in object at " + start + ".");
+        }
+        return slots;
+    }
+
+    /**
+     * Find an attribute. Objects of wallet server have a few attributes each, so a linear search of the hashes is
+     * faster than a hash table.
+     *
+     * @return the offset of its slot, or -1 if there is no such attribute.
+     */
+    private int find(int[] slots, String name) {
+        int hash = name.hashCode();
+        for (int at = 0; at < slots.length; at += SLOT_SIZE) {
+            if (slots[at + NAME_HASH] == hash && matches(slots[at + NAME_START], name)) {
+                return at;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return the end of the value of an attribute.
+     */
+    private int valueEnd(int[] slots, int at) {
+        int end = slots[at + VALUE_END];
+        return end >= 0 ? end : getContainers().ends[~end];
+    }
+
+    private boolean matches(int nameStart, String name) {
+        for (int i = nameStart + 1, k = 0; ; i++, k++) {
+            byte b = json[i];
+            if (b == '"') {
+                return k == name.length();
+            }
+            if (b < 0 || b == '\\') {
+                // A non-ASCII or escaped name is decoded to be compared.
+                return decodeString(json, nameStart, skipString(json, nameStart, json.length)).equals(name);
+            }
+            if (k >= name.length() || b != name.charAt(k)) {
+                return false;
+            }
+        }
+    }
+
+    private boolean isNull(int valueStart, int valueEnd) {
+        return valueEnd - valueStart == 4 && json[valueStart] == 'n';
+    }
+
+    private static Number decodeNumber(String text) {
+        if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0) {
+            BigInteger value = new BigInteger(text);
+            if (value.bitLength() < Integer.SIZE) {
+                return value.intValue();
+            }
+            return value.bitLength() < Long.SIZE ? (Number) value.longValue() : value;
+        }
+        return new BigDecimal(text);
+    }
+
+    private static int skipWhitespace(byte[] json, int position, int limit) {
+        int i = position;
+        while (i < limit && (json[i] == ' ' || json[i] == '\n' || json[i] == '\r' || json[i] == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Return the position after the string starting at a quote.
+     */
+    private static int skipString(byte[] json, int position, int limit) {
+        for (int i = position + 1; i < limit; i++) {
+            if (json[i] == '\\') {
+                i++;
+            } else if (json[i] == '"') {
+                return i + 1;
+            }
+        }
+        throw new IllegalArgumentException("Invalid JSON: unterminated string at " + position + ".");
+    }
+
+    /**
+     * Return the position after the string or other scalar starting at a position, without decoding it.
+     */
+    private static int skipScalar(byte[] json, int position, int limit) {
+        if (position >= limit) {
+            throw new IllegalArgumentException("Invalid JSON: missing value at " + position + ".");
+        }
+        if (json[position] == '"') {
+            return skipString(json, position, limit);
+        }
+        if (json[position] == '{' || json[position] == '[') {
+            throw new IllegalArgumentException("Invalid JSON: unexpected value at " + position + ".");
+        }
+        int i = position;
+        while (i < limit && json[i] != ',' && json[i] != '}' && json[i] != ']' && json[i] != ' ' && json[i] != '\n'
+            && json[i] != '\r' && json[i] != '\t') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Return the hash of a name, equal to the hashCode of the decoded name.
+     */
+    private static int hashName(byte[] json, int nameStart, int nameEnd) {
+        int hash = 0;
+        for (int i = nameStart + 1; i < nameEnd - 1; i++) {
+            byte b = json[i];
+            if (b < 0 || b == '\\') {
+                return decodeString(json, nameStart, nameEnd).hashCode();
+            }
+            hash = 31 * hash + b;
+        }
+        return hash;
+    }
+
+    /**
+     * Decode the string between a quote and the position after the closing quote.
+     */
+    private static String decodeString(byte[] json, int quote, int stringEnd) {
+        int contentStart = quote + 1;
+        int contentEnd = stringEnd - 1;
+        int escape = contentStart;
+        while (escape < contentEnd && json[escape] != '\\') {
+            escape++;
+        }
+        if (escape == contentEnd) {
+            return new String(json, contentStart, contentEnd - contentStart, StandardCharsets.UTF_8);
+        }
+        // Bytes of multi-byte UTF-8 characters are never '\\', so the text between escapes can be decoded as it is.
+        StringBuilder text = new StringBuilder(contentEnd - contentStart);
+        int segmentStart = contentStart;
+        int i = escape;
+        while (i < contentEnd) {
+            if (json[i] != '\\') {
+                i++;
+                continue;
+            }
+            text.append(new String(json, segmentStart, i - segmentStart, StandardCharsets.UTF_8));
+            byte escaped = json[i + 1];
+            switch (escaped) {
+                case 'b':
+                    text.append('\b');
+                    break;
+                case 'f':
+                    text.append('\f');
+                    break;
+                case 'n':
+                    text.append('\n');
+                    break;
+                case 'r':
+                    text.append('\r');
+                    break;
+                case 't':
+                    text.append('\t');
+                    break;
+                case 'u':
+                    text.append((char) Integer.parseInt(new String(json, i + 2, 4, StandardCharsets.US_ASCII), 16));
+                    i += 4;
+                    break;
+                default:
+                    text.append((char) escaped);
+                    break;
+            }
+            i += 2;
+            segmentStart = i;
+        }
+        text.append(new String(json, segmentStart, contentEnd - segmentStart, StandardCharsets.UTF_8));
+        return text.toString();
+    }
+
+    /**
+     * Ends of the objects and arrays of a document, and the attribute counts of the objects, found in one scan of its
+     * bytes. Objects and arrays are numbered in the order they open, so the first one inside object or array k is
+     * k + 1, and the one following it is next[k].
+     */
+    private static final class Containers {
+        /**
+         * Position after the closing bracket of each object or array.
+         */
+        private final int[] ends;
+
+        /**
+         * Number of the first object or array that opens after each one closes.
+         */
+        private final int[] next;
+
+        /**
+         * Number of attributes of each object.
+         */
+        private final int[] members;
+
+        private Containers(byte[] json, int start) {
+            // Models and instances take about 64 bytes per object or array, so with room for one per 48 bytes the
+            // arrays rarely grow.
+            int capacity = Math.max(16, (json.length - start) / 48);
+            int[] closes = new int[capacity];
+            int[] following = new int[capacity];
+            int[] names = new int[capacity];
+            int[] open = new int[16];
+            int depth = 0;
+            int count = 0;
+            for (int i = start; i < json.length; i++) {
+                byte structure = STRUCTURE[json[i] & 0xFF];
+                if (structure == QUOTE) {
+                    i = skipString(json, i, json.length) - 1;
+                } else if (structure == OPEN) {
+                    if (count == closes.length) {
+                        closes = Arrays.copyOf(closes, count * 2);
+                        following = Arrays.copyOf(following, count * 2);
+                        names = Arrays.copyOf(names, count * 2);
+                    }
+                    if (depth == open.length) {
+                        open = Arrays.copyOf(open, depth * 2);
+                    }
+                    open[depth++] = count++;
+                } else if (structure == COLON) {
+                    // Outside strings, a colon follows the name of an attribute of the innermost object.
+                    names[open[depth - 1]]++;
+                } else if (structure == CLOSE) {
+                    int container = open[--depth];
+                    closes[container] = i + 1;
+                    following[container] = count;
+                    if (depth == 0) {
+                        this.ends = closes;
+                        this.next = following;
+                        this.members = names;
+                        return;
+                    }
+                }
+            }
+            throw new IllegalArgumentException("Invalid JSON: unterminated value at " + start + ".");
+        }
+    }
+}
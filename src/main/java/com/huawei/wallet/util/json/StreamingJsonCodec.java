@@ -0,0 +1,171 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.huawei.wallet.util.json;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Codec that builds JSONObject and JSONArray trees straight from the tokens of a Jackson streaming parser, and writes
+ * trees with a streaming generator, without any data binding. Typed objects are bound by fastjson.
+ *
+ * @since 2020-12-08
+ */
+public class StreamingJsonCodec implements JsonCodec {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final JsonCodec BINDING_CODEC = new FastjsonCodec();
+
+    @Override
+    public String getName() {
+        return "streaming";
+    }
+
+    @Override
+    public JSONObject parseObject(byte[] json) {
+        if (json == null || json.length == 0) {
+            return null;
+        }
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Invalid JSON: not an object.");
+            }
+            return readObject(parser);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid JSON: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public <T> T parseObject(byte[] json, Class<T> type) {
+        if (type.isAssignableFrom(JSONObject.class)) {
+            return type.cast(parseObject(json));
+        }
+        return BINDING_CODEC.parseObject(json, type);
+    }
+
+    @Override
+    public byte[] toJsonBytes(Object value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            write(generator, value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Write JSON failed: " + e.getMessage(), e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Read the value at the current token of a parser, e.g. one element of a large array read incrementally.
+     *
+     * @param parser a parser positioned on the first token of the value.
+     * @return the value: a JSONObject, JSONArray, String, Number, Boolean or null.
+     * @throws IOException if the JSON is invalid.
+     */
+    public static Object readValue(JsonParser parser) throws IOException {
+        switch (parser.currentToken()) {
+            case START_OBJECT:
+                return readObject(parser);
+            case START_ARRAY:
+                JSONArray array = new JSONArray();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    array.add(readValue(parser));
+                }
+                return array;
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                return parser.getNumberValue();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDecimalValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            default:
+                throw new IOException("Unexpected token " + parser.currentToken() + ".");
+        }
+    }
+
+    /**
+     * Read the object at the current START_OBJECT token of a parser.
+     *
+     * @param parser a parser positioned on START_OBJECT.
+     * @return the object.
+     * @throws IOException if the JSON is invalid.
+     */
+    public static JSONObject readObject(JsonParser parser) throws IOException {
+        JSONObject object = new JSONObject();
+        String name;
+        while ((name = parser.nextFieldName()) != null) {
+            parser.nextToken();
+            object.put(name, readValue(parser));
+        }
+        return object;
+    }
+
+    private static void write(JsonGenerator generator, Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Map) {
+            generator.writeStartObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                // Null attributes are left out, like fastjson does.
+                if (entry.getValue() == null) {
+                    continue;
+                }
+                generator.writeFieldName(String.valueOf(entry.getKey()));
+                write(generator, entry.getValue());
+            }
+            generator.writeEndObject();
+        } else if (value instanceof Collection) {
+            generator.writeStartArray();
+            for (Object item : (Collection<?>) value) {
+                write(generator, item);
+            }
+            generator.writeEndArray();
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof BigDecimal) {
+            generator.writeNumber((BigDecimal) value);
+        } else if (value instanceof BigInteger) {
+            generator.writeNumber((BigInteger) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            generator.writeNumber(((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            generator.writeNumber(((Number) value).longValue());
+        } else {
+            // A typed object, null attributes left out.
+            generator.writeRawValue(new String(BINDING_CODEC.toJsonBytes(value), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.huawei.wallet.util.ConfigUtil;
+
+import com.alibaba.fastjson.JSONObject;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Streamed batch query tests.
+ *
+ * @since 2020-12-09
+ */
+public class BatchQueryReaderTest {
+    /**
+     * Build the response of a page of instances.
+     *
+     * @param pageIndex index of the page, the session of the following page is pageIndex + 1.
+     * @param size number of instances.
+     * @param last whether the page is the last one.
+     * @param pageInfoFirst whether pageInfo comes before data.
+     * @return the response body.
+     */
+    private static byte[] page(int pageIndex, int size, boolean last, boolean pageInfoFirst) {
+        JSONObject instance = JSONObject.parseObject(ConfigUtil.readFile("LoyaltyInstance.json"));
+        String pageInfo = "\"pageInfo\":{\"pageSize\":" + size + (last ? "" : ",\"nextSession\":\"" + (pageIndex + 1)
+            + "\"") + "}";
+        StringBuilder json = new StringBuilder("{\"unknown\":{\"data\":[1,2]},");
+        if (pageInfoFirst) {
+            json.append(pageInfo).append(',');
+        }
+        json.append("\"data\":[");
+        for (int i = 0; i < size; i++) {
+            instance.put("serialNumber", "pass" + (pageIndex * size + i));
+            json.append(i == 0 ? "" : ",").append(instance.toJSONString());
+        }
+        json.append(']');
+        if (!pageInfoFirst) {
+            json.append(',').append(pageInfo);
+        }
+        return json.append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Records are parsed one at a time, so the first one is returned long before the whole response has been read.
+     */
+    @Test
+    public void readRecordsIncrementally() {
+        System.out.println("readRecordsIncrementally begin.");
+
+        byte[] body = page(0, 2000, false, false);
+        AtomicInteger bytesRead = new AtomicInteger();
+        InputStream counting = new FilterInputStream(new ByteArrayInputStream(body)) {
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int count = super.read(buffer, offset, length);
+                bytesRead.addAndGet(Math.max(count, 0));
+                return count;
+            }
+        };
+        try (BatchQueryReader reader = new BatchQueryReader(counting, "Get instances failed.")) {
+            JSONObject first = reader.nextRecord();
+            assertEquals("pass0", first.getString("serialNumber"));
+            assertTrue(bytesRead.get() < body.length / 20);
+            assertFalse(reader.isPageInfoRead());
+
+            int count = 1;
+            while (reader.nextRecord() != null) {
+                count++;
+            }
+            assertEquals(2000, count);
+            assertTrue(reader.isPageInfoRead());
+            assertEquals("1", reader.getNextSession());
+            assertNull(reader.nextRecord());
+        }
+    }
+
+    /**
+     * A prefetching streaming iterator returns all records in order, wherever pageInfo is, and closing it early
+     * releases every open response.
+     */
+    @Test
+    public void streamPages() {
+        System.out.println("streamPages begin.");
+
+        List<String> sessions = new ArrayList<>();
+        AtomicInteger open = new AtomicInteger();
+        Function<String, BatchQueryReader> pageOpener = session -> {
+            synchronized (sessions) {
+                sessions.add(session);
+            }
+            int pageIndex = session.isEmpty() ? 0 : Integer.parseInt(session);
+            open.incrementAndGet();
+            InputStream body = new ByteArrayInputStream(page(pageIndex, 3, pageIndex == 4, pageIndex % 2 == 0)) {
+                private boolean closed;
+
+                @Override
+                public synchronized void close() {
+                    if (!closed) {
+                        closed = true;
+                        open.decrementAndGet();
+                    }
+                }
+            };
+            return new BatchQueryReader(body, "Get instances failed.");
+        };
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            List<String> serialNumbers = HwWalletObjectIterator.streaming(pageOpener, "Get instances failed.",
+                executor, 2).stream().map(instance -> instance.getString("serialNumber")).collect(Collectors.toList());
+            assertEquals(15, serialNumbers.size());
+            for (int i = 0; i < serialNumbers.size(); i++) {
+                assertEquals("pass" + i, serialNumbers.get(i));
+            }
+            assertEquals(5, sessions.size());
+
+            HwWalletObjectIterator iterator =
+                HwWalletObjectIterator.streaming(pageOpener, "Get instances failed.", executor, 2);
+            assertEquals("pass0", iterator.next().getString("serialNumber"));
+            iterator.close();
+            assertFalse(iterator.hasNext());
+        } finally {
+            executor.shutdownNow();
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (open.get() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        assertEquals(0, open.get());
+    }
+
+    /**
+     * Closing the reader closes the HTTP response, and a failure to close the body is recorded instead of thrown.
+     */
+    @Test
+    public void releaseResponse() throws IOException {
+        System.out.println("releaseResponse begin.");
+
+        AtomicInteger responsesClosed = new AtomicInteger();
+        InputStream body = new ByteArrayInputStream(page(0, 3, true, false)) {
+            @Override
+            public void close() throws IOException {
+                throw new IOException("Connection reset.");
+            }
+        };
+        ClientHttpResponse response = new ClientHttpResponse() {
+            @Override
+            public HttpStatus getStatusCode() {
+                return HttpStatus.OK;
+            }
+
+            @Override
+            public int getRawStatusCode() {
+                return HttpStatus.OK.value();
+            }
+
+            @Override
+            public String getStatusText() {
+                return HttpStatus.OK.getReasonPhrase();
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return new HttpHeaders();
+            }
+
+            @Override
+            public InputStream getBody() {
+                return body;
+            }
+
+            @Override
+            public void close() {
+                responsesClosed.incrementAndGet();
+            }
+        };
+        BatchQueryReader reader = new BatchQueryReader(response, "Get instances failed.");
+        assertEquals("pass0", reader.nextRecord().getString("serialNumber"));
+        assertNull(reader.getCloseFailure());
+        reader.close();
+        assertEquals(1, responsesClosed.get());
+        assertEquals("Connection reset.", reader.getCloseFailure().getMessage());
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.alibaba.fastjson.JSONObject;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bulk provisioning tests.
+ *
+ * @since 2020-11-13
+ */
+public class BulkInstanceProvisionerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A rerun posts only the records that failed in the previous run.
+     */
+    @Test
+    public void resumeAfterFailures() throws Exception {
+        System.out.println("resumeAfterFailures begin.");
+
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            JSONObject instance = new JSONObject();
+            instance.put("passTypeIdentifier", "hwpass.com.huawei.wallet.loyalty");
+            instance.put("passStyleIdentifier", "LoyaltyTestModel");
+            instance.put("organizationPassId", "org" + i);
+            instance.put("serialNumber", "LoyaltyPass" + i);
+            lines.add(instance.toJSONString());
+        }
+        lines.add("");
+        lines.add("{\"serialNumber\":\"InvalidPass\"}");
+        Path input = folder.newFile("instances.ndjson").toPath();
+        Files.write(input, lines, StandardCharsets.UTF_8);
+        Path resultLog = folder.getRoot().toPath().resolve("result.log");
+        Path checkpoint = folder.getRoot().toPath().resolve("checkpoint");
+
+        Set<String> posted = ConcurrentHashMap.newKeySet();
+        Set<String> failOnce = ConcurrentHashMap.newKeySet();
+        failOnce.add("LoyaltyPass7");
+        failOnce.add("LoyaltyPass31");
+        ServerApiService stub = new ServerApiServiceImpl() {
+            @Override
+            public JSONObject postToWalletServer(String urlSegment, byte[] body) {
+                String serialNumber = JSONObject.parseObject(new String(body, StandardCharsets.UTF_8))
+                    .getString("serialNumber");
+                if (failOnce.remove(serialNumber)) {
+                    throw new IllegalStateException("Service unavailable.");
+                }
+                if (!posted.add(serialNumber)) {
+                    throw new IllegalStateException(serialNumber + " was posted twice.");
+                }
+                return JSONObject.parseObject(new String(body, StandardCharsets.UTF_8));
+            }
+        };
+        BulkInstanceProvisioner provisioner = new BulkInstanceProvisioner(stub, "/v1/loyalty/instance", 4);
+
+        BulkInstanceProvisioner.Result first = provisioner.provision(input, resultLog, checkpoint);
+        System.out.println("First run: " + first);
+        assertEquals(48, first.getSucceeded());
+        assertEquals(3, first.getFailed());
+        // Every record before the first failure has succeeded.
+        assertEquals("7", new String(Files.readAllBytes(checkpoint), StandardCharsets.UTF_8));
+
+        BulkInstanceProvisioner.Result second = provisioner.provision(input, resultLog, checkpoint);
+        System.out.println("Second run: " + second);
+        assertEquals(2, second.getSucceeded());
+        assertEquals(1, second.getFailed());
+        assertEquals(50, posted.size());
+        assertEquals("51", new String(Files.readAllBytes(checkpoint), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * A failure of a worker that is not about its record stops the run and is thrown, with a failure to write the
+     * checkpoint added as suppressed.
+     */
+    @Test
+    public void throwWorkerFailures() throws Exception {
+        System.out.println("throwWorkerFailures begin.");
+
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            lines.add("{\"passTypeIdentifier\":\"hwpass.com.huawei.wallet.loyalty\",\"passStyleIdentifier\":"
+                + "\"LoyaltyTestModel\",\"organizationPassId\":\"org" + i + "\",\"serialNumber\":\"LoyaltyPass" + i
+                + "\"}");
+        }
+        Path input = folder.newFile("instances.ndjson").toPath();
+        Files.write(input, lines, StandardCharsets.UTF_8);
+        Path checkpoint = folder.getRoot().toPath().resolve("checkpoint");
+        // The temporary checkpoint file cannot be written, so writing the checkpoint fails too.
+        folder.newFolder("checkpoint.tmp");
+
+        AtomicInteger posts = new AtomicInteger();
+        ServerApiService stub = new ServerApiServiceImpl() {
+            @Override
+            public JSONObject postToWalletServer(String urlSegment, byte[] body) {
+                if (posts.incrementAndGet() == 10) {
+                    throw new NoClassDefFoundError("com/huawei/wallet/Missing");
+                }
+                return JSONObject.parseObject(new String(body, StandardCharsets.UTF_8));
+            }
+        };
+        try {
+            new BulkInstanceProvisioner(stub, "/v1/loyalty/instance", 4).provision(input,
+                folder.getRoot().toPath().resolve("result.log"), checkpoint);
+            fail("The worker failure should be thrown.");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof NoClassDefFoundError);
+            // The checkpoint failure does not replace the worker failure.
+            assertEquals(1, e.getSuppressed().length);
+            assertTrue(e.getSuppressed()[0].getMessage().startsWith("Write checkpoint"));
+        }
+        // Reading stopped soon after the failure.
+        assertTrue(posts.get() < 100);
+    }
+}
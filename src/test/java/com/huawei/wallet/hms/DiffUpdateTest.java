@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.huawei.wallet.util.ConfigUtil;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Diff update tests.
+ *
+ * @since 2020-11-30
+ */
+public class DiffUpdateTest {
+    /**
+     * Only changed entries are sent, nothing is sent if nothing changed, attributes managed by wallet server are
+     * ignored, and a removal needs a full update.
+     */
+    @Test
+    public void diffUpdateLoyaltyInstance() {
+        System.out.println("diffUpdateLoyaltyInstance begin.");
+
+        List<String> requests = new CopyOnWriteArrayList<>();
+        ServerApiService stub = new ServerApiServiceImpl() {
+            @Override
+            public JSONObject fullUpdateHwWalletObject(String urlSegment, String id, String body) {
+                requests.add("PUT " + body);
+                return JSONObject.parseObject(body);
+            }
+
+            @Override
+            public JSONObject partialUpdateHwWalletObject(String urlSegment, String id, String body) {
+                requests.add("PATCH " + body);
+                return JSONObject.parseObject(body);
+            }
+        };
+        String urlSegment = "/v1/loyalty/instance/";
+        String instanceStr = ConfigUtil.readFile("LoyaltyInstance.json");
+        JSONObject lastKnown = JSONObject.parseObject(instanceStr);
+
+        assertSame(lastKnown, stub.diffUpdateHwWalletObject(urlSegment, "LoyaltyPass40001", lastKnown, instanceStr));
+        assertEquals(0, requests.size());
+
+        JSONObject desired = JSONObject.parseObject(instanceStr);
+        JSONArray commonFields = desired.getJSONObject("fields").getJSONArray("commonFields");
+        commonFields.getJSONObject(1).put("value", "$150");
+        commonFields.add(JSONObject.parseObject("{\"key\":\"tier\",\"value\":\"Gold\"}"));
+        desired.getJSONObject("fields").getJSONObject("status").put("state", "inactive");
+        stub.diffUpdateHwWalletObject(urlSegment, "LoyaltyPass40001", lastKnown, desired.toJSONString());
+        JSONObject patch = JSONObject.parseObject(requests.get(0).substring("PATCH ".length()));
+        assertEquals(1, patch.size());
+        JSONObject fields = patch.getJSONObject("fields");
+        assertEquals(2, fields.size());
+        assertEquals(JSONObject.parseObject("{\"state\":\"inactive\"}"), fields.getJSONObject("status"));
+        JSONArray changedFields = fields.getJSONArray("commonFields");
+        assertEquals(2, changedFields.size());
+        assertEquals(commonFields.get(1), changedFields.get(0));
+        assertEquals("tier", changedFields.getJSONObject(1).getString("key"));
+
+        // An attribute added by wallet server to the fetched instance doesn't force a full update.
+        lastKnown.put("updateTime", "2020-11-30T08:00:00.000Z");
+        stub.diffUpdateHwWalletObject(urlSegment, "LoyaltyPass40001", lastKnown, desired.toJSONString());
+        assertEquals(requests.get(0), requests.get(1));
+
+        desired.getJSONObject("fields").remove("appendFields");
+        stub.diffUpdateHwWalletObject(urlSegment, "LoyaltyPass40001", lastKnown, desired.toJSONString());
+        assertEquals("PUT ", requests.get(2).substring(0, 4));
+    }
+}
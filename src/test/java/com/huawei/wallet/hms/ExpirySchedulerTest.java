@@ -0,0 +1,143 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import static org.junit.Assert.assertEquals;
+
+import com.huawei.wallet.util.ConfigUtil;
+
+import com.alibaba.fastjson.JSONObject;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Expiry scheduling tests.
+ *
+ * @since 2020-12-03
+ */
+public class ExpirySchedulerTest {
+    /**
+     * Instances expiring in the same tick are moved to expired in one batch, and re-registering replaces a transition.
+     */
+    @Test
+    public void expireInstances() {
+        System.out.println("expireInstances begin.");
+
+        Map<String, String> states = new ConcurrentHashMap<>();
+        ServerApiService stub = new ServerApiServiceImpl() {
+            @Override
+            public JSONObject partialUpdateHwWalletObject(String urlSegment, String id, String body) {
+                states.put(id, JSONObject.parseObject(body).getJSONObject("fields").getJSONObject("status")
+                    .getString("state"));
+                return new JSONObject();
+            }
+        };
+        String urlSegment = "/v1/loyalty/instance/";
+        long now = System.currentTimeMillis();
+        String expireTime = Instant.ofEpochMilli(now + 60_000).toString();
+        ExpiryScheduler scheduler = new ExpiryScheduler(stub, 1000, 64, 2);
+        for (int i = 0; i < 3; i++) {
+            JSONObject instance = JSONObject.parseObject(ConfigUtil.readFile("LoyaltyInstance.json"));
+            instance.put("serialNumber", "LoyaltyPass" + i);
+            instance.getJSONObject("fields").getJSONObject("status").put("expireTime", expireTime);
+            scheduler.register(urlSegment, instance);
+        }
+        // The third instance was extended by a day.
+        JSONObject extended = JSONObject.parseObject(ConfigUtil.readFile("LoyaltyInstance.json"));
+        extended.put("serialNumber", "LoyaltyPass2");
+        extended.getJSONObject("fields").getJSONObject("status")
+            .put("expireTime", Instant.ofEpochMilli(now + 86_400_000).toString());
+        scheduler.register(urlSegment, extended);
+        assertEquals(3, scheduler.getPending());
+
+        scheduler.advanceTo(now + 30_000);
+        assertEquals(0, scheduler.getBatches());
+        scheduler.advanceTo(now + 62_000);
+        scheduler.close();
+        assertEquals(1, scheduler.getBatches());
+        assertEquals(2, scheduler.getTransitions());
+        assertEquals("expired", states.get("LoyaltyPass0"));
+        assertEquals("expired", states.get("LoyaltyPass1"));
+        assertEquals(1, scheduler.getPending());
+
+        // Nothing is sent once the scheduler is closed, and the pending transition stays registered.
+        scheduler.advanceTo(now + 86_402_000);
+        assertEquals(1, scheduler.getBatches());
+        assertEquals(1, scheduler.getPending());
+    }
+
+    /**
+     * An inactive instance is activated at its effectTime, then expired at its expireTime, and a failed transition is
+     * sent again after the retry delay.
+     */
+    @Test
+    public void activateThenExpire() {
+        System.out.println("activateThenExpire begin.");
+
+        List<String> states = new CopyOnWriteArrayList<>();
+        ServerApiService stub = new ServerApiServiceImpl() {
+            private boolean failedOnce;
+
+            @Override
+            public synchronized JSONObject partialUpdateHwWalletObject(String urlSegment, String id, String body) {
+                if (!failedOnce) {
+                    failedOnce = true;
+                    throw new IllegalStateException("Update instance failed.");
+                }
+                states.add(JSONObject.parseObject(body).getJSONObject("fields").getJSONObject("status")
+                    .getString("state"));
+                return new JSONObject();
+            }
+        };
+        long now = System.currentTimeMillis();
+        JSONObject instance = JSONObject.parseObject(ConfigUtil.readFile("LoyaltyInstance.json"));
+        JSONObject status = instance.getJSONObject("fields").getJSONObject("status");
+        status.put("state", "inactive");
+        status.put("effectTime", Instant.ofEpochMilli(now + 10_000).toString());
+        status.put("expireTime", Instant.ofEpochMilli(now + 60_000).toString());
+        ExpiryScheduler scheduler = new ExpiryScheduler(stub, 1000, 64, 2, 5000);
+        scheduler.register("/v1/loyalty/instance/", instance);
+
+        scheduler.advanceTo(now + 12_000);
+        awaitAttempts(scheduler, 1);
+        assertEquals(1, scheduler.getFailed());
+        assertEquals(1, scheduler.getPending());
+        scheduler.advanceTo(now + 18_000);
+        awaitAttempts(scheduler, 2);
+        assertEquals(1, scheduler.getPending());
+        scheduler.advanceTo(now + 62_000);
+        scheduler.close();
+        assertEquals(Arrays.asList("active", "expired"), states);
+        assertEquals(0, scheduler.getPending());
+    }
+
+    private static void awaitAttempts(ExpiryScheduler scheduler, long attempts) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (scheduler.getTransitions() + scheduler.getFailed() < attempts
+            && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        assertEquals(attempts, scheduler.getTransitions() + scheduler.getFailed());
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.huawei.wallet.util.json.LazyJsonObject;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Paged iterator tests.
+ *
+ * @since 2020-11-09
+ */
+public class HwWalletObjectIteratorTest {
+    /**
+     * Build a stub batch query with a given number of pages of two instances each.
+     *
+     * @param pageCount number of pages.
+     * @param requestedSessions records the requested sessions.
+     * @return the page fetcher.
+     */
+    static Function<String, JSONObject> stubPages(int pageCount, List<String> requestedSessions) {
+        return session -> {
+            requestedSessions.add(session);
+            int pageIndex = session.isEmpty() ? 0 : Integer.parseInt(session);
+            JSONArray data = new JSONArray();
+            for (int i = 0; i < 2; i++) {
+                JSONObject instance = new JSONObject();
+                instance.put("serialNumber", "pass" + (pageIndex * 2 + i));
+                data.add(instance);
+            }
+            JSONObject pageInfo = new JSONObject();
+            if (pageIndex + 1 < pageCount) {
+                pageInfo.put("nextSession", String.valueOf(pageIndex + 1));
+            }
+            JSONObject batchQueryResult = new JSONObject();
+            batchQueryResult.put("data", data);
+            batchQueryResult.put("pageInfo", pageInfo);
+            return batchQueryResult;
+        };
+    }
+
+    /**
+     * All pages are returned in order.
+     */
+    @Test
+    public void iterateAllPages() {
+        System.out.println("iterateAllPages begin.");
+
+        List<String> sessions = new ArrayList<>();
+        HwWalletObjectIterator iterator = new HwWalletObjectIterator(stubPages(3, sessions), "Get instances failed.");
+        List<String> serialNumbers =
+            iterator.stream().map(instance -> instance.getString("serialNumber")).collect(Collectors.toList());
+
+        assertEquals(6, serialNumbers.size());
+        assertEquals("pass0", serialNumbers.get(0));
+        assertEquals("pass5", serialNumbers.get(5));
+        assertEquals(3, sessions.size());
+        assertFalse(iterator.hasNext());
+    }
+
+    /**
+     * Pages after an early stop are never requested.
+     */
+    @Test
+    public void stopEarly() {
+        System.out.println("stopEarly begin.");
+
+        List<String> sessions = new ArrayList<>();
+        HwWalletObjectIterator iterator = new HwWalletObjectIterator(stubPages(100, sessions), "Get instances failed.");
+        assertEquals(3, iterator.stream().limit(3).count());
+        assertEquals(2, sessions.size());
+    }
+
+    /**
+     * Pages are requested ahead of the consumer, up to the prefetch depth.
+     */
+    @Test
+    public void prefetchPages() throws Exception {
+        System.out.println("prefetchPages begin.");
+
+        List<String> sessions = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (HwWalletObjectIterator iterator =
+            new HwWalletObjectIterator(stubPages(10, sessions), "Get instances failed.", executor, 2)) {
+            assertEquals("pass0", iterator.next().getString("serialNumber"));
+            // The first page is being consumed, two more are buffered and one is waiting for room in the buffer.
+            Thread.sleep(200);
+            assertEquals(4, sessions.size());
+
+            int count = 1;
+            while (iterator.hasNext()) {
+                iterator.next();
+                count++;
+            }
+            assertEquals(20, count);
+            assertEquals(10, sessions.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Closing the iterator stops the background task.
+     */
+    @Test
+    public void closeStopsPrefetching() throws Exception {
+        System.out.println("closeStopsPrefetching begin.");
+
+        List<String> sessions = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        HwWalletObjectIterator iterator =
+            new HwWalletObjectIterator(stubPages(100, sessions), "Get instances failed.", executor, 1);
+        iterator.next();
+        iterator.close();
+        Thread.sleep(200);
+        int requested = sessions.size();
+        Thread.sleep(200);
+
+        assertEquals(requested, sessions.size());
+        assertFalse(iterator.hasNext());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Lazy views of all pages are returned in order, and a page is requested only when the previous one is consumed.
+     */
+    @Test
+    public void iterateViewsOnDemand() {
+        System.out.println("iterateViewsOnDemand begin.");
+
+        List<String> sessions = new ArrayList<>();
+        Function<String, JSONObject> pages = stubPages(3, sessions);
+        Iterator<LazyJsonObject> iterator = new LazyPageIterator(
+            session -> pages.apply(session).toJSONString().getBytes(StandardCharsets.UTF_8), "Get instances failed.");
+        assertEquals("pass0", iterator.next().getString("serialNumber"));
+        assertEquals("pass1", iterator.next().getString("serialNumber"));
+        assertEquals(1, sessions.size());
+        List<String> serialNumbers = new ArrayList<>();
+        iterator.forEachRemaining(view -> serialNumbers.add(view.getString("serialNumber")));
+        assertEquals(4, serialNumbers.size());
+        assertEquals("pass5", serialNumbers.get(3));
+        assertEquals(3, sessions.size());
+        assertFalse(iterator.hasNext());
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.huawei.wallet.util.ConfigUtil;
+
+import com.alibaba.fastjson.JSONObject;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Instance mirror tests.
+ *
+ * @since 2020-12-02
+ */
+public class InstanceMirrorTest {
+    /**
+     * Instances are found by each index, and the indexes follow updates of an instance.
+     */
+    @Test
+    public void queryIndexes() {
+        System.out.println("queryIndexes begin.");
+
+        InstanceMirror mirror = new InstanceMirror();
+        JSONObject template = JSONObject.parseObject(ConfigUtil.readFile("LoyaltyInstance.json"));
+        for (int i = 0; i < 100; i++) {
+            JSONObject instance = (JSONObject) template.clone();
+            instance.put("serialNumber", "LoyaltyPass" + i);
+            instance.put("organizationPassId", "member" + i);
+            JSONObject status = new JSONObject();
+            status.put("state", i % 10 == 0 ? "expired" : "active");
+            status.put("expireTime", Instant.parse("2030-01-01T00:00:00Z").plusSeconds(86400L * i).toString());
+            JSONObject fields = new JSONObject();
+            fields.put("status", status);
+            instance.put("fields", fields);
+            mirror.accept(null, instance);
+        }
+        mirror.onWrite("/v1/loyalty/model", JSONObject.parseObject(ConfigUtil.readFile("LoyaltyModel.json")));
+
+        assertEquals(100, mirror.getInstanceCount());
+        assertEquals(1, mirror.getModelCount());
+        assertEquals(100, mirror.findByPassStyleIdentifier("LoyaltyTestModel").size());
+        assertEquals("LoyaltyPass42", mirror.findByOrganizationPassId("member42").get(0).getString("serialNumber"));
+        assertEquals(10, mirror.findByState("expired").size());
+        assertEquals(10, mirror.findByState("EXPIRED").size());
+        List<JSONObject> nextWeek = mirror.findExpiringBetween(Instant.parse("2030-01-08T00:00:00Z"),
+            Instant.parse("2030-01-15T00:00:00Z"));
+        assertEquals(7, nextWeek.size());
+        assertEquals("LoyaltyPass7", nextWeek.get(0).getString("serialNumber"));
+
+        // An instance returned by a write replaces the mirrored one and moves in the indexes.
+        JSONObject updated = mirror.getInstance("LoyaltyPass42");
+        updated.put("organizationPassId", "member4200");
+        // The returned copy was modified, not the mirrored instance.
+        assertEquals(1, mirror.findByOrganizationPassId("member42").size());
+        mirror.onWrite("/v1/loyalty/instance/", updated);
+        assertTrue(mirror.findByOrganizationPassId("member42").isEmpty());
+        assertEquals(1, mirror.findByOrganizationPassId("member4200").size());
+
+        // Modifying a written object afterwards doesn't change the mirror either.
+        updated.put("organizationPassId", "member4201");
+        assertEquals("member4200", mirror.getInstance("LoyaltyPass42").getString("organizationPassId"));
+
+        mirror.removeInstance("LoyaltyPass7");
+        assertEquals(6, mirror.findExpiringBetween(Instant.parse("2030-01-08T00:00:00Z"),
+            Instant.parse("2030-01-15T00:00:00Z")).size());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.huawei.wallet.util.ConfigUtil;
+
+import com.alibaba.fastjson.JSONObject;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpServerErrorException;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Message batching tests.
+ *
+ * @since 2020-11-27
+ */
+public class MessageAggregatorTest {
+    /**
+     * Messages are sent 10 per request, duplicates are dropped, and the rest is sent when the window ends.
+     */
+    @Test
+    public void batchMessages() throws Exception {
+        System.out.println("batchMessages begin.");
+
+        List<Integer> requestSizes = new CopyOnWriteArrayList<>();
+        ServerApiService stub = new ServerApiServiceImpl() {
+            @Override
+            public JSONObject addMessageToHwWalletObject(String urlSegment, String id, String body) {
+                requestSizes.add(JSONObject.parseObject(body).getJSONArray("messageList").size());
+                return new JSONObject();
+            }
+        };
+        JSONObject template = JSONObject.parseObject(ConfigUtil.readFile("Messages.json"))
+            .getJSONArray("messageList").getJSONObject(0);
+        String urlSegment = "/v1/loyalty/instance/";
+        try (MessageAggregator aggregator = new MessageAggregator(stub, 200, 2)) {
+            CompletableFuture<JSONObject> last = null;
+            for (int i = 0; i < 13; i++) {
+                JSONObject message = (JSONObject) template.clone();
+                message.put("key", "message[" + i + "]");
+                last = aggregator.add(urlSegment, "LoyaltyPass1", message);
+            }
+            // A newer version of a queued message replaces it.
+            JSONObject update = (JSONObject) template.clone();
+            update.put("key", "message[12]");
+            aggregator.add(urlSegment, "LoyaltyPass1", update);
+            assertEquals(3, aggregator.getQueueDepth());
+
+            last.get(5, TimeUnit.SECONDS);
+            assertEquals(2, requestSizes.size());
+            assertEquals(10, requestSizes.get(0).intValue());
+            assertEquals(3, requestSizes.get(1).intValue());
+            assertEquals(1, aggregator.getFullFlushes());
+            assertEquals(1, aggregator.getWindowFlushes());
+            assertEquals(1, aggregator.getDeduplicated());
+            assertEquals(13, aggregator.getSentMessages());
+            assertEquals(0, aggregator.getQueueDepth());
+        }
+    }
+
+    /**
+     * A failed request is reported to the callers of its messages and thrown by close.
+     */
+    @Test
+    public void reportFailedFlush() {
+        System.out.println("reportFailedFlush begin.");
+
+        ServerApiService stub = new ServerApiServiceImpl() {
+            @Override
+            public JSONObject addMessageToHwWalletObject(String urlSegment, String id, String body) {
+                throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+            }
+        };
+        MessageAggregator aggregator = new MessageAggregator(stub, 10000, 1);
+        JSONObject message = new JSONObject();
+        message.put("key", "welcome");
+        message.put("value", "Welcome!");
+        CompletableFuture<JSONObject> future = aggregator.add("/v1/loyalty/instance/", "LoyaltyPass1", message);
+        try {
+            aggregator.close();
+            fail("The failed request should be thrown.");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof HttpServerErrorException);
+        }
+        assertTrue(future.isCompletedExceptionally());
+        assertEquals(0, aggregator.getQueueDepth());
+    }
+
+    /**
+     * Messages added after close are rejected and nothing is left queued.
+     */
+    @Test
+    public void rejectAfterClose() {
+        System.out.println("rejectAfterClose begin.");
+
+        MessageAggregator aggregator = new MessageAggregator(new ServerApiServiceImpl(), 10000, 1);
+        aggregator.close();
+        JSONObject message = new JSONObject();
+        message.put("key", "welcome");
+        message.put("value", "Welcome!");
+        try {
+            aggregator.add("/v1/loyalty/instance/", "LoyaltyPass1", message);
+            fail("The message should be rejected.");
+        } catch (IllegalStateException e) {
+            assertTrue(aggregator.pending.isEmpty());
+            assertEquals(0, aggregator.getQueueDepth());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import com.alibaba.fastjson.JSONObject;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Model cache tests.
+ *
+ * @since 2020-11-25
+ */
+public class ModelCacheTest {
+    private static JSONObject model(String modelId) {
+        JSONObject model = new JSONObject();
+        model.put("passStyleIdentifier", modelId);
+        return model;
+    }
+
+    /**
+     * Cached models are served as copies until invalidated, and the least recently used model is evicted.
+     */
+    @Test
+    public void readThroughAndEvict() {
+        System.out.println("readThroughAndEvict begin.");
+
+        ModelCache cache = new ModelCache(2, 300);
+        AtomicInteger loads = new AtomicInteger();
+        JSONObject first = cache.get("/v1/loyalty/model/a", () -> {
+            loads.incrementAndGet();
+            return model("a");
+        });
+        // Changing a returned model does not change the cached one.
+        first.put("passStyleIdentifier", "changed");
+        JSONObject second = cache.get("/v1/loyalty/model/a", () -> model("other"));
+        assertEquals("a", second.getString("passStyleIdentifier"));
+        assertNotSame(second, cache.get("/v1/loyalty/model/a", () -> model("other")));
+        assertEquals(1, loads.get());
+
+        cache.invalidate("/v1/loyalty/model/a");
+        assertEquals("b", cache.get("/v1/loyalty/model/a", () -> model("b")).getString("passStyleIdentifier"));
+
+        cache.put("/v1/loyalty/model/c", model("c"));
+        cache.get("/v1/loyalty/model/a", () -> model("unused"));
+        cache.put("/v1/loyalty/model/d", model("d"));
+        // "c" was used least recently.
+        assertEquals(1, cache.getEvictions());
+        assertEquals("e", cache.get("/v1/loyalty/model/c", () -> model("e")).getString("passStyleIdentifier"));
+        System.out.println(cache);
+        assertEquals(3, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    /**
+     * A model loaded while it's being invalidated is not cached, so the cache does not keep the old version.
+     */
+    @Test
+    public void skipLoadOverlappingUpdate() {
+        System.out.println("skipLoadOverlappingUpdate begin.");
+
+        ModelCache cache = new ModelCache(10, 300);
+        JSONObject stale = cache.get("/v1/loyalty/model/a", () -> {
+            // An update of the model completes while it's being read.
+            cache.invalidate("/v1/loyalty/model/a");
+            return model("old");
+        });
+        assertEquals("old", stale.getString("passStyleIdentifier"));
+        assertEquals(0, cache.size());
+
+        // Expired models are loaded again.
+        ModelCache expiring = new ModelCache(10, 0);
+        expiring.get("/v1/loyalty/model/a", () -> model("a"));
+        expiring.get("/v1/loyalty/model/a", () -> model("a"));
+        assertEquals(2, expiring.getMisses());
+    }
+}
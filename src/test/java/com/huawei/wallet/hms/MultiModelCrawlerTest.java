@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Multi-model crawler tests.
+ *
+ * @since 2020-11-11
+ */
+public class MultiModelCrawlerTest {
+    /**
+     * All models are crawled, and no more than the global cap run at the same time.
+     */
+    @Test
+    public void crawlModelsConcurrently() {
+        System.out.println("crawlModelsConcurrently begin.");
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ServerApiService stub = new ServerApiServiceImpl() {
+            @Override
+            public HwWalletObjectIterator iterateInstances(String urlSegment, String modelId, int pageSize,
+                int prefetchDepth) {
+                if ("BrokenModel".equals(modelId)) {
+                    throw new IllegalStateException("Get instances failed.");
+                }
+                List<String> sessions = new ArrayList<>();
+                return new HwWalletObjectIterator(HwWalletObjectIteratorTest.stubPages(3, sessions).andThen(page -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    return page;
+                }), "Get instances failed.");
+            }
+        };
+
+        List<CrawlTarget> targets = new ArrayList<>();
+        for (String type : Arrays.asList("loyalty", "offer", "giftcard", "eventticket", "flight", "transit")) {
+            targets.add(new CrawlTarget("/v1/" + type + "/instance", type + "Model"));
+        }
+        targets.add(new CrawlTarget("/v1/loyalty/instance", "BrokenModel"));
+
+        ConcurrentHashMap<CrawlTarget, AtomicInteger> received = new ConcurrentHashMap<>();
+        MultiModelCrawler crawler = new MultiModelCrawler(stub, 3, 0, 2);
+        MultiModelCrawler.Progress progress = crawler.crawl(targets,
+            (target, instance) -> received.computeIfAbsent(target, key -> new AtomicInteger()).incrementAndGet(),
+            System.out::println, 50L);
+
+        assertEquals(6, progress.getCompletedModels());
+        assertEquals(1, progress.getFailedModels().size());
+        assertEquals(36, progress.getInstances());
+        assertEquals(6, received.size());
+        assertTrue(maxRunning.get() <= 3);
+    }
+}
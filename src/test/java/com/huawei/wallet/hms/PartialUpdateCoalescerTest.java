@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.huawei.wallet.util.ConfigUtil;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpServerErrorException;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Partial update coalescing tests.
+ *
+ * @since 2020-11-26
+ */
+public class PartialUpdateCoalescerTest {
+    /**
+     * Updates of an instance within the window are merged into one PATCH, the later update winning per field key.
+     */
+    @Test
+    public void coalescePointsUpdates() throws Exception {
+        System.out.println("coalescePointsUpdates begin.");
+
+        List<String> patches = new CopyOnWriteArrayList<>();
+        ServerApiService stub = new ServerApiServiceImpl() {
+            @Override
+            public JSONObject partialUpdateHwWalletObject(String urlSegment, String id, String body) {
+                patches.add(id + " " + body);
+                return JSONObject.parseObject(body);
+            }
+        };
+        String urlSegment = "/v1/loyalty/instance/";
+        try (PartialUpdateCoalescer coalescer = new PartialUpdateCoalescer(stub, 10000, 2)) {
+            CompletableFuture<JSONObject> first =
+                coalescer.submit(urlSegment, "LoyaltyPass1", ConfigUtil.readFile("PartialUpdateLoyaltyInstance.json"));
+            CompletableFuture<JSONObject> second = coalescer.submit(urlSegment, "LoyaltyPass1",
+                "{\"fields\":{\"appendFields\":[{\"key\":\"points\",\"value\":\"1600\"},"
+                    + "{\"key\":\"level\",\"value\":\"gold\"}]}}");
+            CompletableFuture<JSONObject> other = coalescer.submit(urlSegment, "LoyaltyPass2",
+                "{\"fields\":{\"appendFields\":[{\"key\":\"points\",\"value\":\"10\"}]}}");
+            assertSame(first, second);
+
+            JSONObject response = coalescer.flush(urlSegment, "LoyaltyPass1").get(5, TimeUnit.SECONDS);
+            JSONArray appendFields = response.getJSONObject("fields").getJSONArray("appendFields");
+            assertEquals(2, appendFields.size());
+            assertEquals("1600", appendFields.getJSONObject(0).getString("value"));
+            assertEquals("gold", appendFields.getJSONObject(1).getString("value"));
+            assertEquals(1, patches.size());
+
+            coalescer.flushAll().get(5, TimeUnit.SECONDS);
+            assertEquals("10", other.get().getJSONObject("fields").getJSONArray("appendFields").getJSONObject(0)
+                .getString("value"));
+            assertEquals(3, coalescer.getSubmitted());
+            assertEquals(2, coalescer.getSent());
+        }
+    }
+
+    /**
+     * A failed update is reported to its caller and thrown by close.
+     */
+    @Test
+    public void reportFailedFlush() {
+        System.out.println("reportFailedFlush begin.");
+
+        ServerApiService stub = new ServerApiServiceImpl() {
+            @Override
+            public JSONObject partialUpdateHwWalletObject(String urlSegment, String id, String body) {
+                throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+            }
+        };
+        PartialUpdateCoalescer coalescer = new PartialUpdateCoalescer(stub, 10000, 1);
+        CompletableFuture<JSONObject> update = coalescer.submit("/v1/loyalty/instance/", "LoyaltyPass1",
+            "{\"fields\":{\"appendFields\":[{\"key\":\"points\",\"value\":\"10\"}]}}");
+        try {
+            coalescer.close();
+            fail("The failed update should be thrown.");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof HttpServerErrorException);
+        }
+        assertTrue(update.isCompletedExceptionally());
+    }
+
+    /**
+     * Updates submitted after close are rejected and nothing is left pending.
+     */
+    @Test
+    public void rejectAfterClose() {
+        System.out.println("rejectAfterClose begin.");
+
+        PartialUpdateCoalescer coalescer = new PartialUpdateCoalescer(new ServerApiServiceImpl(), 10000, 1);
+        coalescer.close();
+        try {
+            coalescer.submit("/v1/loyalty/instance/", "LoyaltyPass1",
+                "{\"fields\":{\"appendFields\":[{\"key\":\"points\",\"value\":\"10\"}]}}");
+            fail("The update should be rejected.");
+        } catch (IllegalStateException e) {
+            assertTrue(coalescer.pending.isEmpty());
+        }
+    }
+}
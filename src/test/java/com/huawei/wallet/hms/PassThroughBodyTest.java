@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.huawei.wallet.util.ConfigUtil;
+
+import com.alibaba.fastjson.JSONObject;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Byte body tests.
+ *
+ * @since 2020-12-07
+ */
+public class PassThroughBodyTest {
+    /**
+     * A ByteBuffer body is sent as its remaining bytes, using the backing array when it holds exactly these bytes.
+     */
+    @Test
+    public void sendByteBufferBodies() {
+        System.out.println("sendByteBufferBodies begin.");
+
+        List<byte[]> bodies = new ArrayList<>();
+        ServerApiService stub = new ServerApiServiceImpl() {
+            @Override
+            public JSONObject fullUpdateHwWalletObject(String urlSegment, String id, byte[] body) {
+                bodies.add(body);
+                return new JSONObject();
+            }
+        };
+        byte[] json = ConfigUtil.readFile("FullUpdateFlightModel.json").getBytes(StandardCharsets.UTF_8);
+        stub.fullUpdateHwWalletObject("/v1/flight/model/", "FlightTestModel", ByteBuffer.wrap(json));
+        assertSame(json, bodies.get(0));
+
+        ByteBuffer framed = ByteBuffer.allocate(json.length + 8);
+        framed.putInt(json.length).put(json).putInt(0);
+        framed.position(4).limit(4 + json.length);
+        stub.fullUpdateHwWalletObject("/v1/flight/model/", "FlightTestModel", framed);
+        assertArrayEquals(json, bodies.get(1));
+        assertEquals(4, framed.position());
+    }
+}
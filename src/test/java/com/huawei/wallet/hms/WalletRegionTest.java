@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import static org.junit.Assert.assertEquals;
+
+import com.huawei.wallet.nsp.CircuitBreaker;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpServerErrorException;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Region routing tests.
+ *
+ * @since 2020-11-20
+ */
+public class WalletRegionTest {
+    /**
+     * Requests go to the fastest base URL whose circuit breaker is not open.
+     */
+    @Test
+    public void selectFastestBaseUrl() {
+        System.out.println("selectFastestBaseUrl begin.");
+
+        String first = "https://first.example.com/hmspass";
+        String second = "https://second.example.com/hmspass";
+        WalletRegion region = new WalletRegion("test", Arrays.asList(first, second), "https://token.example.com",
+            0.5, 1000);
+        // Base URLs without samples are tried first.
+        assertEquals(first, region.selectBaseUrl(EndpointFamily.INSTANCE));
+        region.recordLatency(first + "/v1/loyalty/instance/1", TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(second, region.selectBaseUrl(EndpointFamily.INSTANCE));
+        region.recordLatency(second + "/v1/loyalty/instance/1", TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(second, region.selectBaseUrl(EndpointFamily.INSTANCE));
+
+        region.recordFailure(second + "/v1/loyalty/instance/1");
+        assertEquals(525.0, region.getLatencyMillis().get(second), 0.001);
+        assertEquals(first, region.selectBaseUrl(EndpointFamily.INSTANCE));
+
+        // An open circuit breaker takes the faster base URL out of rotation for its endpoint family only.
+        CircuitBreaker breaker = WalletCircuitBreakers.get(first, EndpointFamily.MODEL);
+        for (int i = 0; i < 50; i++) {
+            breaker.onError(new HttpServerErrorException(HttpStatus.BAD_GATEWAY), 0);
+        }
+        assertEquals(second, region.selectBaseUrl(EndpointFamily.MODEL));
+        assertEquals(first, region.selectBaseUrl(EndpointFamily.INSTANCE));
+    }
+
+    /**
+     * A base URL left out after a failure is chosen again once its average has decayed below the others.
+     */
+    @Test
+    public void retryPenalisedBaseUrl() throws Exception {
+        System.out.println("retryPenalisedBaseUrl begin.");
+
+        String first = "https://first.example.com/hmspass";
+        String second = "https://second.example.com/hmspass";
+        WalletRegion region = new WalletRegion("test", Arrays.asList(first, second), "https://token.example.com",
+            0.5, 20000, 50);
+        region.recordLatency(first + "/v1/loyalty/instance/1", TimeUnit.MILLISECONDS.toNanos(100));
+        region.recordFailure(second + "/v1/loyalty/instance/1");
+        assertEquals(first, region.selectBaseUrl(EndpointFamily.INSTANCE));
+
+        // The first base URL keeps serving requests, so its average stays fresh while the penalty decays.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (region.selectBaseUrl(EndpointFamily.INSTANCE).equals(first) && System.currentTimeMillis() < deadline) {
+            region.recordLatency(first + "/v1/loyalty/instance/1", TimeUnit.MILLISECONDS.toNanos(100));
+            Thread.sleep(10);
+        }
+        assertEquals(second, region.selectBaseUrl(EndpointFamily.INSTANCE));
+    }
+}
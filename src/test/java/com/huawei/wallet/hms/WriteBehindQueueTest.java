@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms;
+
+import static org.junit.Assert.assertEquals;
+
+import com.alibaba.fastjson.JSONObject;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind queue tests.
+ *
+ * @since 2020-12-01
+ */
+public class WriteBehindQueueTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Operations left pending by a stopped process are replayed in order when the queue is opened again.
+     */
+    @Test
+    public void replayPendingOperations() throws Exception {
+        System.out.println("replayPendingOperations begin.");
+
+        Path directory = folder.newFolder("journal").toPath();
+        ServerApiService unavailable = new ServerApiServiceImpl() {
+            @Override
+            public JSONObject partialUpdateHwWalletObject(String urlSegment, String id, String body) {
+                throw new ResourceAccessException("Connection refused");
+            }
+        };
+        String urlSegment = "/v1/loyalty/instance/";
+        WriteBehindQueue stopped =
+            new WriteBehindQueue(unavailable, directory, 4096, false, 2, 60000, 0, null);
+        for (int i = 0; i < 3; i++) {
+            stopped.partialUpdate(urlSegment, "LoyaltyPass1", "{\"fields\":{\"points\":" + i + "}}");
+        }
+        stopped.close();
+        assertEquals(3, stopped.getEnqueued());
+        assertEquals(0, stopped.getDispatched());
+
+        List<String> sent = new CopyOnWriteArrayList<>();
+        ServerApiService available = new ServerApiServiceImpl() {
+            @Override
+            public JSONObject partialUpdateHwWalletObject(String urlSegment, String id, String body) {
+                sent.add(id + " " + JSONObject.parseObject(body).getJSONObject("fields").getString("points"));
+                return new JSONObject();
+            }
+        };
+        WriteBehindQueue restarted =
+            new WriteBehindQueue(available, directory, 4096, false, 2, 60000, 5000, null);
+        assertEquals(3, restarted.getReplayed());
+        restarted.close();
+        assertEquals(Arrays.asList("LoyaltyPass1 0", "LoyaltyPass1 1", "LoyaltyPass1 2"), new ArrayList<>(sent));
+        assertEquals(0, restarted.getPending());
+
+        WriteBehindQueue reopened =
+            new WriteBehindQueue(available, directory, 4096, false, 2, 60000, 5000, null);
+        assertEquals(0, reopened.getReplayed());
+        reopened.close();
+    }
+
+    /**
+     * A lane resumes after an operation fails transiently, and the operations of the lane stay in order.
+     */
+    @Test
+    public void resumeLaneAfterTransientFailure() throws Exception {
+        System.out.println("resumeLaneAfterTransientFailure begin.");
+
+        AtomicInteger calls = new AtomicInteger();
+        List<String> sent = new CopyOnWriteArrayList<>();
+        ServerApiService flaky = new ServerApiServiceImpl() {
+            @Override
+            public JSONObject partialUpdateHwWalletObject(String urlSegment, String id, String body) {
+                if (calls.incrementAndGet() == 1) {
+                    throw new ResourceAccessException("Connection refused");
+                }
+                sent.add(JSONObject.parseObject(body).getJSONObject("fields").getString("points"));
+                return new JSONObject();
+            }
+        };
+        WriteBehindQueue queue =
+            new WriteBehindQueue(flaky, folder.newFolder("journal").toPath(), 4096, false, 2, 10, 5000, null);
+        for (int i = 0; i < 3; i++) {
+            queue.partialUpdate("/v1/loyalty/instance/", "LoyaltyPass1", "{\"fields\":{\"points\":" + i + "}}");
+        }
+        queue.close();
+        assertEquals(Arrays.asList("0", "1", "2"), new ArrayList<>(sent));
+        assertEquals(1, queue.getRetried());
+        assertEquals(3, queue.getDispatched());
+        assertEquals(0, queue.getPending());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms.loyalty;
+
+import com.huawei.wallet.hms.AsyncServerApiService;
+import com.huawei.wallet.hms.AsyncServerApiServiceImpl;
+import com.huawei.wallet.util.ConfigUtil;
+
+import com.alibaba.fastjson.JSONObject;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Loyalty instance tests using the non-blocking API.
+ *
+ * @since 2020-11-06
+ */
+public class AsyncLoyaltyInstanceTest {
+    private final AsyncServerApiService asyncServerApiService = new AsyncServerApiServiceImpl();
+
+    /**
+     * Get a loyalty instance by its instance ID without blocking the calling thread.
+     * Run the "createLoyaltyInstance" test before running this test.
+     * GET http://xxx/hmspass/v1/loyalty/instance/{instanceId}
+     */
+    @Test
+    public void getLoyaltyInstanceAsync() {
+        System.out.println("getLoyaltyInstanceAsync begin.");
+
+        // ID of the loyalty instance you want to get.
+        String instanceId = "LoyaltyPass40001";
+
+        // Get the loyalty instance. The returned future is completed when the response arrives.
+        String urlSegment = "/v1/loyalty/instance/";
+        CompletableFuture<JSONObject> future = asyncServerApiService.getHwWalletObjectById(urlSegment, instanceId);
+        System.out.println("Corresponding loyalty instance: " + JSONObject.toJSONString(future.join()));
+    }
+
+    /**
+     * Update many loyalty instances at the same time. All requests are in flight together while only a few I/O
+     * threads are used.
+     * PATCH http://xxx/hmspass/v1/loyalty/instance/{instanceId}
+     */
+    @Test
+    public void partialUpdateLoyaltyInstancesAsync() {
+        System.out.println("partialUpdateLoyaltyInstancesAsync begin.");
+
+        // IDs of the loyalty instances you want to update.
+        List<String> instanceIds = Arrays.asList("LoyaltyPass40001", "LoyaltyPass40002", "LoyaltyPass40003");
+
+        // Read a HwWalletObject from a JSON file. This HwWalletObject will merge with each instance.
+        String instanceStr = ConfigUtil.readFile("PartialUpdateLoyaltyInstance.json");
+
+        // Send all updates, then wait for all of them.
+        String urlSegment = "/v1/loyalty/instance/";
+        List<CompletableFuture<JSONObject>> futures = new ArrayList<>();
+        for (String instanceId : instanceIds) {
+            futures.add(asyncServerApiService.partialUpdateHwWalletObject(urlSegment, instanceId, instanceStr));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        for (CompletableFuture<JSONObject> future : futures) {
+            System.out.println("Updated loyalty instance: " + JSONObject.toJSONString(future.join()));
+        }
+    }
+}
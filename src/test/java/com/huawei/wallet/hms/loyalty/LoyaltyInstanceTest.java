@@ -26,6 +26,8 @@ import com.alibaba.fastjson.JSONObject;
 
 import org.junit.Test;
 
+import java.util.stream.Stream;
+
 /**
  * Loyalty instance tests.
  *
@@ -96,6 +98,28 @@ public class LoyaltyInstanceTest {
         System.out.println("Instances list: " + instances.toJSONString());
     }
 
+    /**
+     * Iterate over loyalty instances belonging to a specific loyalty model. Pages are requested while iterating, so
+     * only one page is held in memory and you can stop early.
+     * Run the "createLoyaltyInstance" test before running this test.
+     * GET http://xxx/hmspass/v1/loyalty/instance?modelId=XXX&session=XXX&pageSize=XXX
+     */
+    @Test
+    public void iterateLoyaltyInstances() {
+        System.out.println("iterateLoyaltyInstances begin.");
+
+        // Model ID of loyalty instances you want to get.
+        String modelId = "LoyaltyTestModel";
+
+        // Print serial numbers of the first 20 instances only. Later pages are never requested, and closing the stream
+        // releases the pages already requested.
+        String urlSegment = "/v1/loyalty/instance";
+        try (Stream<JSONObject> instances = serverApiService.iterateInstances(urlSegment, modelId, 5).stream()) {
+            instances.limit(20)
+                .forEach(instance -> System.out.println("Instance: " + instance.getString("serialNumber")));
+        }
+    }
+
     /**
      * Overwrite a loyalty instance.
      * Run the "createLoyaltyInstance" test before running this test.
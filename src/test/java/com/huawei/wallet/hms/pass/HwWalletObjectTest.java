@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.hms.pass;
+
+import static org.junit.Assert.assertEquals;
+
+import com.huawei.wallet.util.ConfigUtil;
+import com.huawei.wallet.util.json.JsonCodec;
+import com.huawei.wallet.util.json.JsonCodecs;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Typed pass object tests.
+ *
+ * @since 2020-12-04
+ */
+public class HwWalletObjectTest {
+    /**
+     * Every model and instance of the data files is parsed into a typed object and serialized back unchanged.
+     */
+    @Test
+    public void roundTripDataFiles() {
+        System.out.println("roundTripDataFiles begin.");
+
+        File[] files = Objects.requireNonNull(new File("src/test/resources/data").listFiles());
+        int count = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.contains("Model") && !name.contains("Instance") || name.startsWith("LinkedOffer")) {
+                continue;
+            }
+            String json = ConfigUtil.readFile(name);
+            HwWalletObject object = HwWalletObject.parse(json);
+            assertEquals(name, JSON.parse(json), JSON.parse(object.toJsonBytes()));
+            count++;
+        }
+        assertEquals(42, count);
+    }
+
+    /**
+     * Attributes the classes don't declare, at any level, are kept when an instance is read, modified and written
+     * back by every codec.
+     */
+    @Test
+    public void keepUnknownAttributes() {
+        System.out.println("keepUnknownAttributes begin.");
+
+        JSONObject instance = JSON.parseObject(ConfigUtil.readFile("LoyaltyInstance.json"));
+        instance.put("newAttribute", JSON.parse("{\"list\":[1,2.5,\"text\"]}"));
+        instance.getJSONObject("fields").put("newField", "value");
+        instance.getJSONObject("fields").getJSONObject("status").put("newStatus", true);
+        for (String name : new String[] {"fastjson", "jackson", "streaming"}) {
+            JsonCodec codec = JsonCodecs.get(name);
+            HwWalletObject object = codec.parseObject(instance.toJSONString().getBytes(StandardCharsets.UTF_8),
+                HwWalletObject.class);
+            object.getFields().getStatus().setState("expired");
+            JSONObject written = JSON.parseObject(new String(codec.toJsonBytes(object), StandardCharsets.UTF_8));
+            JSONObject expected = (JSONObject) JSON.parse(instance.toJSONString());
+            expected.getJSONObject("fields").getJSONObject("status").put("state", "expired");
+            assertEquals(name, expected, written);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.nsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adaptive rate limiter tests.
+ *
+ * @since 2020-11-16
+ */
+public class AdaptiveRateLimiterTest {
+    /**
+     * After the burst is used up, permits are handed out at the configured rate.
+     */
+    @Test
+    public void limitRate() {
+        System.out.println("limitRate begin.");
+
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter(50, 1, 1, 0.5, 1000);
+        long start = System.nanoTime();
+        // 50 permits of burst, then 25 permits at 50 per second.
+        for (int i = 0; i < 75; i++) {
+            rateLimiter.acquire();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.out.println("Elapsed millis: " + elapsedMillis);
+        assertTrue(elapsedMillis >= 400);
+    }
+
+    /**
+     * Throttling halves the rate once per interval, and successes raise it step by step.
+     */
+    @Test
+    public void adaptRate() throws Exception {
+        System.out.println("adaptRate begin.");
+
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter(100, 10, 5, 0.5, 50);
+        Thread.sleep(60);
+        rateLimiter.onThrottle();
+        // Throttled responses of requests in flight at the same time do not cut the rate again.
+        rateLimiter.onThrottle();
+        assertEquals(50, rateLimiter.getRate(), 0.001);
+
+        Thread.sleep(60);
+        rateLimiter.onSuccess();
+        rateLimiter.onSuccess();
+        assertEquals(55, rateLimiter.getRate(), 0.001);
+
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(60);
+            rateLimiter.onThrottle();
+        }
+        assertEquals(10, rateLimiter.getRate(), 0.001);
+    }
+
+    /**
+     * Under mixed successes and throttles, a throttle right after an increase still cuts the rate, and the rate
+     * doesn't grow again until an interval after the cut.
+     */
+    @Test
+    public void backOffUnderMixedTraffic() throws Exception {
+        System.out.println("backOffUnderMixedTraffic begin.");
+
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter(100, 10, 5, 0.5, 50);
+        rateLimiter.onThrottle();
+        assertEquals(50, rateLimiter.getRate(), 0.001);
+        Thread.sleep(60);
+        rateLimiter.onSuccess();
+        assertEquals(55, rateLimiter.getRate(), 0.001);
+        rateLimiter.onThrottle();
+        assertEquals(27.5, rateLimiter.getRate(), 0.001);
+        rateLimiter.onSuccess();
+        assertEquals(27.5, rateLimiter.getRate(), 0.001);
+    }
+
+    /**
+     * A limiter without a rate never waits.
+     */
+    @Test
+    public void unlimited() {
+        System.out.println("unlimited begin.");
+
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter(0, 1, 1, 0.5, 1000);
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(0L, rateLimiter.reserve());
+        }
+    }
+}
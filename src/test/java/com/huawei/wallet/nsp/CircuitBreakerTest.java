@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.nsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker tests.
+ *
+ * @since 2020-11-19
+ */
+public class CircuitBreakerTest {
+    /**
+     * The breaker opens on server errors, rejects calls while open, and closes after successful probes.
+     */
+    @Test
+    public void openAndRecover() throws Exception {
+        System.out.println("openAndRecover begin.");
+
+        CircuitBreaker breaker = new CircuitBreaker("test", 10, 5, 50, 100, 1000, 100, 2);
+        List<String> transitions = new CopyOnWriteArrayList<>();
+        breaker.addStateListener((source, from, to) -> transitions.add(from + "->" + to));
+        // Client errors do not count against the server.
+        for (int i = 0; i < 10; i++) {
+            breaker.onError(new HttpClientErrorException(HttpStatus.NOT_FOUND), 0);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        for (int i = 0; i < 5; i++) {
+            breaker.acquirePermission();
+            breaker.onError(new HttpServerErrorException(HttpStatus.BAD_GATEWAY), 0);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        try {
+            breaker.execute(() -> "not called");
+            fail("An open breaker should reject calls.");
+        } catch (CircuitBreakerOpenException e) {
+            assertEquals(1, breaker.getRejectedCalls());
+        }
+
+        Thread.sleep(150);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.acquirePermission();
+        breaker.acquirePermission();
+        try {
+            breaker.acquirePermission();
+            fail("Only two probes should be permitted.");
+        } catch (CircuitBreakerOpenException e) {
+            assertEquals(2, breaker.getRejectedCalls());
+        }
+        breaker.onSuccess(0);
+        breaker.onSuccess(0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailureRate(), 0);
+        assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->CLOSED]", transitions.toString());
+        assertEquals(3, breaker.getTransitions());
+    }
+
+    /**
+     * Slow calls open the breaker, and a failed probe opens it again.
+     */
+    @Test
+    public void openOnSlowCalls() throws Exception {
+        System.out.println("openOnSlowCalls begin.");
+
+        CircuitBreaker breaker = new CircuitBreaker("test", 4, 4, 50, 50, 1000, 50, 1);
+        long slow = TimeUnit.SECONDS.toNanos(2);
+        breaker.onSuccess(0);
+        breaker.onSuccess(slow);
+        breaker.onSuccess(0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onSuccess(slow);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(80);
+        breaker.acquirePermission();
+        breaker.onSuccess(slow);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.nsp;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hedged request tests.
+ *
+ * @since 2020-11-23
+ */
+public class HedgerTest {
+    /**
+     * A slow call is hedged and the faster response wins, until the hedge cap is reached.
+     */
+    @Test
+    public void hedgeSlowCalls() {
+        System.out.println("hedgeSlowCalls begin.");
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            Hedger hedger = new Hedger(executor, 95, 50, 100, 1);
+            AtomicInteger calls = new AtomicInteger();
+            // Every odd call is slow, so each primary call is slow and each hedge is fast.
+            String result = hedger.execute(() -> slowIfOdd(calls.incrementAndGet()));
+            assertEquals("call 2", result);
+            assertEquals(1, hedger.getHedges());
+            assertEquals(1, hedger.getHedgeWins());
+
+            // The cap of one hedge per second is used up, so the slow call is awaited.
+            result = hedger.execute(() -> slowIfOdd(calls.incrementAndGet()));
+            assertEquals("call 3", result);
+            assertEquals(1, hedger.getHedges());
+            assertEquals(1, hedger.getBudgetExhausted());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A full executor runs the call on the caller or skips the hedge, without failing the read.
+     */
+    @Test
+    public void skipHedgesWhenExecutorIsFull() {
+        System.out.println("skipHedgesWhenExecutorIsFull begin.");
+
+        ExecutorService executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<>());
+        try {
+            Hedger hedger = new Hedger(executor, 95, 50, 100, 10);
+            AtomicInteger calls = new AtomicInteger();
+            // The slow primary call takes the only thread, so its hedge is rejected.
+            String result = hedger.execute(() -> slowIfOdd(calls.incrementAndGet()));
+            assertEquals("call 1", result);
+            assertEquals(0, hedger.getHedges());
+            assertEquals(1, hedger.getHedgesRejected());
+
+            // With the thread busy, a read runs on the calling thread.
+            CountDownLatch release = new CountDownLatch(1);
+            occupy(executor, release);
+            result = hedger.execute(() -> Thread.currentThread().getName());
+            release.countDown();
+            assertEquals(Thread.currentThread().getName(), result);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Occupy the only thread of the executor, waiting for the thread of the previous call to become idle.
+     */
+    private static void occupy(ExecutorService executor, CountDownLatch release) {
+        while (true) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                Thread.yield();
+            }
+        }
+    }
+
+    private static String slowIfOdd(int call) {
+        if (call % 2 == 1) {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return "call " + call;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.nsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Retry policy tests.
+ *
+ * @since 2020-11-18
+ */
+public class RetryPolicyTest {
+    private static RetryPolicy newPolicy(double minRetriesPerSecond) {
+        return new RetryPolicy(3, 1, 10, EnumSet.of(HttpMethod.GET, HttpMethod.PUT, HttpMethod.PATCH), 0.1,
+            minRetriesPerSecond);
+    }
+
+    /**
+     * Idempotent requests are retried on transient failures, but not on client errors.
+     */
+    @Test
+    public void retryIdempotentRequests() {
+        System.out.println("retryIdempotentRequests begin.");
+
+        RetryPolicy policy = newPolicy(5);
+        AtomicInteger calls = new AtomicInteger();
+        String result = policy.execute(HttpMethod.GET, () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            return "ok";
+        });
+        assertEquals("ok", result);
+        assertEquals(2, policy.getRetries());
+
+        calls.set(0);
+        try {
+            policy.execute(HttpMethod.PUT, () -> {
+                calls.incrementAndGet();
+                throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+            });
+            fail("A client error should not be retried.");
+        } catch (HttpClientErrorException e) {
+            assertEquals(1, calls.get());
+        }
+    }
+
+    /**
+     * A create is retried only when a lookup shows it has not taken effect.
+     */
+    @Test
+    public void retryCreateAfterLookup() {
+        System.out.println("retryCreateAfterLookup begin.");
+
+        RetryPolicy policy = newPolicy(5);
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            policy.execute(HttpMethod.POST, () -> {
+                calls.incrementAndGet();
+                throw new HttpServerErrorException(HttpStatus.GATEWAY_TIMEOUT);
+            });
+            fail("A create without lookup should not be retried.");
+        } catch (HttpServerErrorException e) {
+            assertEquals(1, calls.get());
+        }
+
+        // The first attempt created the object although its response was lost.
+        calls.set(0);
+        String result = policy.execute(HttpMethod.POST, () -> {
+            calls.incrementAndGet();
+            throw new HttpServerErrorException(HttpStatus.GATEWAY_TIMEOUT);
+        }, () -> "created");
+        assertEquals("created", result);
+        assertEquals(1, calls.get());
+        assertEquals(1, policy.getResolvedByLookup());
+
+        // The first attempt did not create the object, so it's posted again.
+        calls.set(0);
+        result = policy.execute(HttpMethod.POST, () -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new HttpServerErrorException(HttpStatus.BAD_GATEWAY);
+            }
+            return "posted";
+        }, () -> null);
+        assertEquals("posted", result);
+        assertEquals(2, calls.get());
+    }
+
+    /**
+     * Retries stop when the budget is used up.
+     */
+    @Test
+    public void limitRetriesByBudget() {
+        System.out.println("limitRetriesByBudget begin.");
+
+        RetryPolicy policy = newPolicy(0.001);
+        int failures = 0;
+        for (int i = 0; i < 20; i++) {
+            try {
+                policy.execute(HttpMethod.GET, () -> {
+                    throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+                });
+            } catch (HttpServerErrorException e) {
+                failures++;
+            }
+        }
+        System.out.println("Retries: " + policy.getRetries() + ", budget exhausted: " + policy.getBudgetExhausted());
+        assertEquals(20, failures);
+        // The initial balance of 10 retries plus 0.1 per request.
+        assertTrue(policy.getRetries() >= 10 && policy.getRetries() <= 12);
+        assertTrue(policy.getBudgetExhausted() >= 10);
+    }
+
+    /**
+     * Asynchronous calls are retried like synchronous ones, with scheduled backoff.
+     */
+    @Test
+    public void retryAsyncCalls() {
+        System.out.println("retryAsyncCalls begin.");
+
+        RetryPolicy policy = newPolicy(5);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            AtomicInteger calls = new AtomicInteger();
+            String result = policy.executeAsync(HttpMethod.GET, () -> {
+                CompletableFuture<String> future = new CompletableFuture<>();
+                if (calls.incrementAndGet() < 3) {
+                    future.completeExceptionally(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE));
+                } else {
+                    future.complete("ok");
+                }
+                return future;
+            }, scheduler).join();
+            assertEquals("ok", result);
+            assertEquals(2, policy.getRetries());
+
+            calls.set(0);
+            try {
+                policy.executeAsync(HttpMethod.POST, () -> {
+                    calls.incrementAndGet();
+                    throw new HttpServerErrorException(HttpStatus.GATEWAY_TIMEOUT);
+                }, scheduler).join();
+                fail("A create should not be retried.");
+            } catch (CompletionException e) {
+                assertTrue(e.getCause() instanceof HttpServerErrorException);
+                assertEquals(1, calls.get());
+            }
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.nsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Single-flight tests.
+ *
+ * @since 2020-11-24
+ */
+public class SingleFlightTest {
+    /**
+     * A burst of identical calls makes one call and shares its result.
+     */
+    @Test
+    public void shareOutstandingCall() throws Exception {
+        System.out.println("shareOutstandingCall begin.");
+
+        SingleFlight<String, Object> singleFlight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("/v1/eventticket/instance/1", () -> {
+                    calls.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return new Object();
+                })));
+            }
+            // Let every caller join before the call completes.
+            while (singleFlight.getSharedCalls() < 7) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            Object first = results.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<Object> result : results) {
+                assertSame(first, result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, calls.get());
+
+            // A later call is not served from the completed one.
+            Object later = singleFlight.execute("/v1/eventticket/instance/1", Object::new);
+            assertEquals(2, singleFlight.getCalls());
+            assertEquals(Object.class, later.getClass());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * An Error thrown by the call is rethrown to the callers that joined it, instead of leaving them waiting.
+     */
+    @Test
+    public void shareErrors() throws Exception {
+        System.out.println("shareErrors begin.");
+
+        SingleFlight<String, Object> singleFlight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("/v1/eventticket/instance/1", () -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new AssertionError("Call failed.");
+                })));
+            }
+            while (singleFlight.getSharedCalls() < 1) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            for (Future<Object> result : results) {
+                try {
+                    result.get(5, TimeUnit.SECONDS);
+                    fail();
+                } catch (ExecutionException e) {
+                    assertEquals(AssertionError.class, e.getCause().getClass());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.nsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Token manager tests.
+ *
+ * @since 2020-11-02
+ */
+public class TokenManagerTest {
+    /**
+     * A cold start under load sends only one token request.
+     */
+    @Test
+    public void concurrentCallersShareOneRequest() throws Exception {
+        System.out.println("concurrentCallersShareOneRequest begin.");
+
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        TokenManager tokenManager = new TokenManager(() -> {
+            requests.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new AccessToken("token", System.currentTimeMillis() + 3600000L);
+        }, 300000L);
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            results.add(executor.submit(tokenManager::getAccessToken));
+        }
+        Thread.sleep(200);
+        release.countDown();
+        for (Future<String> result : results) {
+            assertEquals("token", result.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        // Later callers are served from the cache.
+        assertEquals("token", tokenManager.getAccessToken());
+        assertEquals(1, requests.get());
+    }
+
+    /**
+     * A token is refreshed in the background before it expires.
+     */
+    @Test
+    public void tokenIsRefreshedAhead() throws Exception {
+        System.out.println("tokenIsRefreshedAhead begin.");
+
+        AtomicInteger requests = new AtomicInteger();
+        TokenManager tokenManager = new TokenManager(() -> new AccessToken("token" + requests.incrementAndGet(),
+            System.currentTimeMillis() + 1000L), 800L);
+
+        assertEquals("token1", tokenManager.getAccessToken());
+        // The refresh is due 500ms after the first token was issued, long before it expires.
+        Thread.sleep(700);
+        assertTrue(requests.get() >= 2);
+        assertEquals("token" + requests.get(), tokenManager.getAccessToken());
+    }
+
+    /**
+     * A failed background refresh is tried again, and a rejected token is replaced.
+     */
+    @Test
+    public void failedRefreshIsRetried() throws Exception {
+        System.out.println("failedRefreshIsRetried begin.");
+
+        AtomicInteger requests = new AtomicInteger();
+        TokenManager tokenManager = new TokenManager(() -> {
+            int request = requests.incrementAndGet();
+            if (request == 2) {
+                throw new IllegalStateException("Token endpoint unavailable.");
+            }
+            return new AccessToken("token" + request, System.currentTimeMillis() + 1000L);
+        }, 800L);
+
+        assertEquals("token1", tokenManager.getAccessToken());
+        // The refresh 500ms after issue fails and is retried 1s later.
+        Thread.sleep(1800);
+        assertTrue(requests.get() >= 3);
+        String refreshed = tokenManager.getAccessToken();
+        assertTrue(!"token1".equals(refreshed));
+
+        tokenManager.invalidate("token1");
+        assertEquals(refreshed, tokenManager.getAccessToken());
+        tokenManager.invalidate(refreshed);
+        assertTrue(!refreshed.equals(tokenManager.getAccessToken()));
+    }
+
+    /**
+     * Without a valid token, callers fail fast after a failed request until the retry delay has passed, and an
+     * expired token is not refreshed in the background.
+     */
+    @Test
+    public void failFastWithoutToken() throws Exception {
+        System.out.println("failFastWithoutToken begin.");
+
+        AtomicInteger requests = new AtomicInteger();
+        TokenManager tokenManager = new TokenManager(() -> {
+            if (requests.incrementAndGet() < 3) {
+                throw new IllegalStateException("Token endpoint unavailable.");
+            }
+            return new AccessToken("token", System.currentTimeMillis() + 3600000L);
+        }, 300000L);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                tokenManager.getAccessToken();
+                fail();
+            } catch (IllegalStateException e) {
+                assertEquals(1, requests.get());
+            }
+        }
+        // The retry delay after the first failure is 1s.
+        Thread.sleep(1100);
+        try {
+            tokenManager.getAccessToken();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(2, requests.get());
+        }
+        Thread.sleep(2100);
+        assertEquals(2, requests.get());
+        assertEquals("token", tokenManager.getAccessToken());
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Timing wheel tests.
+ *
+ * @since 2020-12-03
+ */
+public class TimingWheelTest {
+    /**
+     * Timers spread over all levels of the wheel fire in the tick of their deadline, except cancelled ones.
+     */
+    @Test
+    public void fireTimersOnTime() {
+        System.out.println("fireTimersOnTime begin.");
+
+        long start = 1_000_000L;
+        TimingWheel<Long> wheel = new TimingWheel<>(10, 8, start);
+        Random random = new Random(42);
+        List<TimingWheel.Timeout<Long>> timeouts = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            long deadline = start + random.nextInt(100_000);
+            timeouts.add(wheel.schedule(deadline, deadline));
+        }
+        int cancelled = 0;
+        for (int i = 0; i < timeouts.size(); i += 10) {
+            assertTrue(timeouts.get(i).cancel());
+            cancelled++;
+        }
+        int[] fired = new int[1];
+        for (long now = start; now <= start + 100_000; now += 10) {
+            long tickStart = now;
+            wheel.advance(now, batch -> {
+                for (Long deadline : batch) {
+                    assertTrue(deadline <= tickStart && deadline > tickStart - 10);
+                }
+                fired[0] += batch.size();
+            });
+        }
+        assertEquals(timeouts.size() - cancelled, fired[0]);
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.huawei.wallet.util.json;
+
+import static org.junit.Assert.assertEquals;
+
+import com.huawei.wallet.hms.pass.HwWalletObject;
+import com.huawei.wallet.util.ConfigUtil;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * JSON codec tests and benchmark over the model and instance files of src/test/resources/data.
+ *
+ * @since 2020-12-08
+ */
+public class JsonCodecBenchmarkTest {
+    private static final List<String> CODECS = Arrays.asList("fastjson", "jackson", "streaming");
+
+    private static final int WARM_UP_ROUNDS = 100;
+
+    private static final int TRIALS = 5;
+
+    private static final int ROUNDS = 30;
+
+    /**
+     * Every codec reads the same trees and typed objects, and writes JSON that reads back to the same tree, leaving out
+     * null attributes.
+     */
+    @Test
+    public void codecsAgree() {
+        System.out.println("codecsAgree begin.");
+
+        for (byte[] json : readDataFiles()) {
+            Object expected = JSON.parse(json);
+            for (String name : CODECS) {
+                JsonCodec codec = JsonCodecs.get(name);
+                JSONObject tree = codec.parseObject(json);
+                assertEquals(name, expected, tree);
+                assertEquals(name, expected, JSON.parse(codec.toJsonBytes(tree)));
+                HwWalletObject object = codec.parseObject(json, HwWalletObject.class);
+                assertEquals(name, expected, JSON.parse(codec.toJsonBytes(object)));
+            }
+        }
+
+        JSONObject withNulls = JSON.parseObject("{\"serialNumber\":\"a\",\"none\":null,\"fields\":{\"none\":null,"
+            + "\"list\":[1,null]}}");
+        Object expected = JSON.parse("{\"serialNumber\":\"a\",\"fields\":{\"list\":[1,null]}}");
+        for (String name : CODECS) {
+            assertEquals(name, expected, JSON.parse(JsonCodecs.get(name).toJsonBytes(withNulls)));
+        }
+    }
+
+    /**
+     * Compare the time to read and write the data files as trees and as typed objects. The results back the choice of
+     * the default codec in JsonCodecs. It takes about 10 seconds, so it only runs with -Dbenchmark=true.
+     */
+    @Test
+    public void benchmarkCodecs() {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+        System.out.println("benchmarkCodecs begin.");
+
+        List<byte[]> files = readDataFiles();
+        long bytes = 0;
+        for (byte[] json : files) {
+            bytes += json.length;
+        }
+        System.out.println(String.format("%d files, %d bytes, best of %d trials of %d rounds", files.size(), bytes,
+            TRIALS, ROUNDS));
+        List<JsonCodec> codecs = new ArrayList<>();
+        for (String name : CODECS) {
+            codecs.add(JsonCodecs.get(name));
+            measure(codecs.get(codecs.size() - 1), files, WARM_UP_ROUNDS);
+        }
+        // Interleave the trials of the codecs, and keep the best time of each codec and operation.
+        long[][] best = new long[codecs.size()][];
+        for (int trial = 0; trial < TRIALS; trial++) {
+            for (int i = 0; i < codecs.size(); i++) {
+                long[] micros = measure(codecs.get(i), files, ROUNDS);
+                for (int op = 0; best[i] != null && op < micros.length; op++) {
+                    micros[op] = Math.min(micros[op], best[i][op]);
+                }
+                best[i] = micros;
+            }
+        }
+        System.out.println(String.format("%-10s %12s %12s %12s %12s", "codec", "read tree", "write tree", "read typed",
+            "write typed"));
+        for (int i = 0; i < codecs.size(); i++) {
+            System.out.println(String.format("%-10s %10dus %10dus %10dus %10dus", codecs.get(i).getName(), best[i][0],
+                best[i][1], best[i][2], best[i][3]));
+        }
+    }
+
+    private static long[] measure(JsonCodec codec, List<byte[]> files, int rounds) {
+        List<JSONObject> trees = new ArrayList<>();
+        List<HwWalletObject> objects = new ArrayList<>();
+        for (byte[] json : files) {
+            trees.add(codec.parseObject(json));
+            objects.add(codec.parseObject(json, HwWalletObject.class));
+        }
+        long[] nanos = new long[4];
+        int sink = 0;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            for (byte[] json : files) {
+                sink += codec.parseObject(json).size();
+            }
+            long readTree = System.nanoTime();
+            for (JSONObject tree : trees) {
+                sink += codec.toJsonBytes(tree).length;
+            }
+            long writeTree = System.nanoTime();
+            for (byte[] json : files) {
+                sink += codec.parseObject(json, HwWalletObject.class).hashCode() & 1;
+            }
+            long readTyped = System.nanoTime();
+            for (HwWalletObject object : objects) {
+                sink += codec.toJsonBytes(object).length;
+            }
+            long writeTyped = System.nanoTime();
+            nanos[0] += readTree - start;
+            nanos[1] += writeTree - readTree;
+            nanos[2] += readTyped - writeTree;
+            nanos[3] += writeTyped - readTyped;
+        }
+        long[] micros = new long[4];
+        for (int i = 0; i < 4; i++) {
+            micros[i] = nanos[i] / rounds / 1000;
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+        return micros;
+    }
+
+    private static List<byte[]> readDataFiles() {
+        List<byte[]> files = new ArrayList<>();
+        for (File file : Objects.requireNonNull(new File("src/test/resources/data").listFiles())) {
+            String name = file.getName();
+            if ((name.contains("Model") || name.contains("Instance")) && !name.startsWith("LinkedOffer")) {
+                files.add(ConfigUtil.readFile(name).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return files;
+    }
+}
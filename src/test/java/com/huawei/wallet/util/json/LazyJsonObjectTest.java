@@ -0,0 +1,179 @@
+/*
+ * Copyright 2020. Huawei Technologies Co., Ltd. All rights reserved.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.huawei.wallet.util.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.huawei.wallet.util.ConfigUtil;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Lazy JSON view tests and a comparison with full parsing for a crawl reading a few attributes.
+ *
+ * @since 2020-12-10
+ */
+public class LazyJsonObjectTest {
+    private static final int ROUNDS = 50;
+
+    /**
+     * Every attribute of every data file reads the same from a view as from a parsed tree, and escapes are decoded.
+     */
+    @Test
+    public void viewsMatchTrees() {
+        System.out.println("viewsMatchTrees begin.");
+
+        int files = 0;
+        for (File file : Objects.requireNonNull(new File("src/test/resources/data").listFiles())) {
+            String json = ConfigUtil.readFile(file.getName());
+            if (json.trim().startsWith("{")) {
+                assertSameObject(JSON.parseObject(json), LazyJsonObject.of(json.getBytes(StandardCharsets.UTF_8)));
+                files++;
+            }
+        }
+        assertTrue(files > 40);
+
+        String json = "{ \"text\" : \"a\\\"b\\\\c\\u00e9\\n中文\", \"amount\": 12.50, \"count\": 3, \"none\": null,"
+            + " \"flag\": true, \"list\": [{\"key\": \"balance\"}, null, {\"key\": \"points\"}], \"empty\": {} }";
+        LazyJsonObject view = LazyJsonObject.of(json.getBytes(StandardCharsets.UTF_8));
+        assertEquals("a\"b\\cé\n中文", view.getString("text"));
+        assertEquals(new BigDecimal("12.50"), view.getBigDecimal("amount"));
+        assertEquals(Integer.valueOf(3), view.getInteger("count"));
+        assertTrue(view.containsKey("none"));
+        assertNull(view.getString("none"));
+        assertFalse(view.containsKey("missing"));
+        assertEquals(Boolean.TRUE, view.getBoolean("flag"));
+        assertEquals(2, view.getObjectList("list").size());
+        assertEquals("points", view.getObjectList("list").get(1).getString("key"));
+        assertTrue(view.getObject("empty").keySet().isEmpty());
+        assertEquals(JSON.parseObject(json), view.toJSONObject());
+    }
+
+    /**
+     * Reading serialNumber, state and balance of each instance of a large page from views gives the values of a tree
+     * parse by fastjson or jackson, with far less garbage.
+     */
+    @Test
+    public void readFewFieldsOfPage() {
+        System.out.println("readFewFieldsOfPage begin.");
+
+        JSONObject instance = JSON.parseObject(ConfigUtil.readFile("LoyaltyInstance.json"));
+        StringBuilder page = new StringBuilder("{\"data\":[");
+        for (int i = 0; i < 2000; i++) {
+            instance.put("serialNumber", "pass" + i);
+            page.append(i == 0 ? "" : ",").append(instance.toJSONString());
+        }
+        byte[] body = page.append("],\"pageInfo\":{\"pageSize\":2000}}").toString().getBytes(StandardCharsets.UTF_8);
+
+        // Trees are parsed by each tree codec, and the cheapest one is compared with the views.
+        List<JsonCodec> codecs = Arrays.asList(JsonCodecs.get("fastjson"), JsonCodecs.get("jackson"));
+        String expected = readWithTrees(codecs.get(0), body);
+        assertEquals(expected, readWithTrees(codecs.get(1), body));
+        assertEquals(expected, readWithViews(body));
+        long treeNanos = Long.MAX_VALUE;
+        long viewNanos = Long.MAX_VALUE;
+        long treeBytes = Long.MAX_VALUE;
+        long viewBytes = Long.MAX_VALUE;
+        // Each reader runs its own rounds, so the best round of each is measured on compiled code.
+        for (int round = 0; round < ROUNDS; round++) {
+            long startBytes = allocatedBytes();
+            long startNanos = System.nanoTime();
+            readWithViews(body);
+            viewNanos = Math.min(viewNanos, System.nanoTime() - startNanos);
+            viewBytes = Math.min(viewBytes, allocatedBytes() - startBytes);
+        }
+        for (JsonCodec codec : codecs) {
+            for (int round = 0; round < ROUNDS; round++) {
+                long startBytes = allocatedBytes();
+                long startNanos = System.nanoTime();
+                readWithTrees(codec, body);
+                treeNanos = Math.min(treeNanos, System.nanoTime() - startNanos);
+                treeBytes = Math.min(treeBytes, allocatedBytes() - startBytes);
+            }
+        }
+        System.out.println(String.format("%d bytes: trees %dus %dKB, views %dus %dKB", body.length,
+            treeNanos / 1000, treeBytes / 1024, viewNanos / 1000, viewBytes / 1024));
+        // Views build no tree, so they allocate less than half as much. Times are printed only, they depend on the
+        // load of the machine.
+        assertTrue(viewBytes * 5 / 2 < treeBytes);
+    }
+
+    /**
+     * Return the bytes allocated by the current thread so far.
+     */
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(
+            Thread.currentThread().getId());
+    }
+
+    private static String readWithTrees(JsonCodec codec, byte[] body) {
+        StringBuilder result = new StringBuilder();
+        JSONObject batchQueryResult = codec.parseObject(body);
+        for (Object item : batchQueryResult.getJSONArray("data")) {
+            JSONObject instance = (JSONObject) item;
+            JSONObject fields = instance.getJSONObject("fields");
+            result.append(instance.getString("serialNumber"))
+                .append(fields.getJSONObject("status").getString("state"));
+            for (Object commonField : fields.getJSONArray("commonFields")) {
+                if ("balance".equals(((JSONObject) commonField).getString("key"))) {
+                    result.append(((JSONObject) commonField).getString("value"));
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    private static String readWithViews(byte[] body) {
+        StringBuilder result = new StringBuilder();
+        for (LazyJsonObject instance : LazyJsonObject.of(body).getObjectList("data")) {
+            LazyJsonObject fields = instance.getObject("fields");
+            result.append(instance.getString("serialNumber")).append(fields.getObject("status").getString("state"));
+            for (LazyJsonObject commonField : fields.getObjectList("commonFields")) {
+                if ("balance".equals(commonField.getString("key"))) {
+                    result.append(commonField.getString("value"));
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    private static void assertSameObject(JSONObject tree, LazyJsonObject view) {
+        assertEquals(tree.keySet(), view.keySet());
+        for (String name : tree.keySet()) {
+            Object value = tree.get(name);
+            if (value instanceof JSONObject) {
+                assertSameObject((JSONObject) value, view.getObject(name));
+            } else {
+                assertEquals(value, view.get(name));
+            }
+        }
+    }
+}